@@ -1,7 +1,6 @@
 package cn.nekocode.camerafilter;
 
 import android.Manifest;
-import android.app.ProgressDialog;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
@@ -13,6 +12,9 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.TextureView;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
 
 import java.io.File;
 
@@ -26,11 +28,23 @@ public class CameraActivity extends AppCompatActivity implements CameraContract.
             Manifest.permission.CAMERA
     };
 
+    /*
+        벤치마크 모드 실행용 intent extra
+        adb shell am start -n cn.nekocode.camerafilter/.CameraActivity --ez benchmark true
+     */
+    public static final String EXTRA_BENCHMARK = "benchmark";
+    public static final String EXTRA_BENCHMARK_WARMUP_FRAMES = "benchmark_warmup_frames";
+    public static final String EXTRA_BENCHMARK_MEASURED_FRAMES = "benchmark_measured_frames";
+    public static final String EXTRA_BENCHMARK_CANVAS_SIZES = "benchmark_canvas_sizes";
+
     @BindView(R.id.cameraView)
     TextureView cameraView;
 
+    @BindView(R.id.perfHud)
+    TextView perfHud;
+
     CameraPresenter presenter;
-    private ProgressDialog progressDialog;
+    MenuItem recordItem;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -45,15 +59,29 @@ public class CameraActivity extends AppCompatActivity implements CameraContract.
         presenter = new CameraPresenter(getBaseContext());
         presenter.setView(this);
         presenter.setCameraView();
+
+        Intent intent = getIntent();
+        if (intent.getBooleanExtra(EXTRA_BENCHMARK, false)) {
+            presenter.startBenchmark(
+                    intent.getIntExtra(EXTRA_BENCHMARK_WARMUP_FRAMES, FilterBenchmark.DEFAULT_WARMUP_FRAMES),
+                    intent.getIntExtra(EXTRA_BENCHMARK_MEASURED_FRAMES, FilterBenchmark.DEFAULT_MEASURED_FRAMES),
+                    intent.getStringExtra(EXTRA_BENCHMARK_CANVAS_SIZES));
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        presenter.release();
+        super.onDestroy();
     }
 
     /*
         캡쳐 버튼 클릭시 동작함수
-        현재 화면에 표시되고 있는 뷰 이미지를 읽어 저장
+        현재 필터가 적용된 이미지를 카메라 사진 크기로 저장
      */
     @OnClick(R.id.captureBtn)
     public void capture() {
-        presenter.capture(cameraView.getBitmap());
+        presenter.capture();
     }
 
     /*
@@ -74,27 +102,85 @@ public class CameraActivity extends AppCompatActivity implements CameraContract.
     }
 
     /*
-        카메라 촬영 후 로딩 다이알로그 띄움
+        사진 저장 완료 후 갤러리에 반영
+     */
+    @Override
+    public void onCaptureSaved(File file) {
+        refreshGallery(file);
+    }
+
+    @Override
+    public void onCaptureFailed() {
+        Toast.makeText(this, R.string.capture_failed, Toast.LENGTH_SHORT).show();
+    }
+
+    /*
+        이전 사진들을 아직 저장 중이어서 캡쳐가 거절됨
      */
     @Override
-    public void showLoadingDialog() {
-        progressDialog = new ProgressDialog(this);
-        progressDialog.setProgressStyle(ProgressDialog.STYLE_SPINNER);
-        progressDialog.setMessage(getString(R.string.wait));
-        progressDialog.setCancelable(false);
-        progressDialog.show();
+    public void onCaptureRejected() {
+        Toast.makeText(this, R.string.capture_busy, Toast.LENGTH_SHORT).show();
     }
 
     /*
-        사진 저장 완료 후 다이알로그 취소
+        프레임 시간 통계 표시
      */
     @Override
-    public void dismissLoadingDialog() {
-        progressDialog.dismiss();
+    public void showPerfHud(String text) {
+        perfHud.setText(text);
+        perfHud.setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    public void hidePerfHud() {
+        perfHud.setVisibility(View.GONE);
+    }
+
+    @Override
+    public void onFrameStatsDumped(File summaryFile) {
+        Toast.makeText(this, getString(R.string.frame_stats_dumped, summaryFile.getName()),
+                Toast.LENGTH_SHORT).show();
     }
 
     @Override
-    public void refreshGallery(File file) {
+    public void onFrameStatsDumpFailed() {
+        Toast.makeText(this, R.string.frame_stats_dump_failed, Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    public void onBenchmarkFinished(File report) {
+        Toast.makeText(this, getString(R.string.benchmark_finished, report.getName()),
+                Toast.LENGTH_LONG).show();
+    }
+
+    @Override
+    public void onBenchmarkFailed() {
+        Toast.makeText(this, R.string.benchmark_failed, Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    public void onRecordingStarted() {
+        Toast.makeText(this, R.string.recording_started, Toast.LENGTH_SHORT).show();
+    }
+
+    /*
+        녹화 완료 후 갤러리에 반영
+     */
+    @Override
+    public void onRecordingSaved(File file) {
+        if (recordItem != null)
+            recordItem.setChecked(false);
+        refreshGallery(file);
+    }
+
+    @Override
+    public void onRecordingFailed() {
+        if (recordItem != null)
+            recordItem.setChecked(false);
+        Toast.makeText(this, R.string.recording_failed, Toast.LENGTH_SHORT).show();
+    }
+
+    private void refreshGallery(File file) {
         Intent mediaScanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
         mediaScanIntent.setData(Uri.fromFile(file));
         sendBroadcast(mediaScanIntent);
@@ -106,6 +192,8 @@ public class CameraActivity extends AppCompatActivity implements CameraContract.
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_filter, menu);
+        recordItem = menu.findItem(R.id.action_record);
+        recordItem.setVisible(CameraRenderer.isRecordingSupported());
         return true;
     }
 
@@ -116,6 +204,26 @@ public class CameraActivity extends AppCompatActivity implements CameraContract.
     public boolean onOptionsItemSelected(MenuItem item) {
         int filterId = item.getItemId();
 
+        if (filterId == R.id.action_perf_hud) {
+            item.setChecked(!item.isChecked());
+            presenter.setPerfHudEnabled(item.isChecked());
+            return true;
+        }
+        if (filterId == R.id.action_quality_governor) {
+            item.setChecked(!item.isChecked());
+            presenter.setQualityGovernorEnabled(item.isChecked());
+            return true;
+        }
+        if (filterId == R.id.action_record) {
+            item.setChecked(!item.isChecked());
+            presenter.setRecording(item.isChecked());
+            return true;
+        }
+        if (filterId == R.id.action_dump_frame_stats) {
+            presenter.dumpFrameStats();
+            return true;
+        }
+
         presenter.setFilter(filterId);
 
         return true;
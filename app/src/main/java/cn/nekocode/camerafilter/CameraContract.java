@@ -1,7 +1,6 @@
 package cn.nekocode.camerafilter;
 
 import android.app.Activity;
-import android.graphics.Bitmap;
 
 import java.io.File;
 
@@ -14,9 +13,18 @@ public interface CameraContract {
     //화면에 필요한 함수 정의
     interface View {
         void setCameraView(CameraRenderer renderer);
-        void showLoadingDialog();
-        void dismissLoadingDialog();
-        void refreshGallery(File file);
+        void onCaptureSaved(File file);
+        void onCaptureFailed();
+        void onCaptureRejected();
+        void showPerfHud(String text);
+        void hidePerfHud();
+        void onFrameStatsDumped(File summaryFile);
+        void onFrameStatsDumpFailed();
+        void onBenchmarkFinished(File report);
+        void onBenchmarkFailed();
+        void onRecordingStarted();
+        void onRecordingSaved(File file);
+        void onRecordingFailed();
     }
 
     //데이터와 함께 필요한 함수 정의
@@ -24,7 +32,13 @@ public interface CameraContract {
         void setView(View view);
         void setCameraView();
         void focusing();
-        void capture(Bitmap bitmap);
+        void capture();
+        void setRecording(boolean recording);
         void setFilter(int filterId);
+        void setPerfHudEnabled(boolean enabled);
+        void setQualityGovernorEnabled(boolean enabled);
+        void dumpFrameStats();
+        void startBenchmark(int warmupFrames, int measuredFrames, String canvasSizes);
+        void release();
     }
 }
@@ -3,14 +3,18 @@ package cn.nekocode.camerafilter;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Created by yebonkim on 2017. 10. 30..
@@ -19,11 +23,34 @@ import java.util.Calendar;
 public class CameraPresenter implements CameraContract.Presenter {
     private CameraContract.View view;
     private static final String FOLDER_NAME = "/filter_camera";
+    private static final int CAPTURE_WORKER_COUNT = 2;
+    private static final int CAPTURE_QUEUE_SIZE = 4;
+    private static final long PERF_HUD_INTERVAL_MILLIS = 500;
+    private static final int QUALITY_HUD_LINES = 3;
 
     CameraRenderer renderer;
+    private final CaptureQueue captureQueue;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean perfHudEnabled = false;
+    // Latest quality governor decisions, newest first, only touched on the main thread
+    private final ArrayDeque<String> qualityChanges = new ArrayDeque<>();
 
     public CameraPresenter(Context context) {
+        this(context, CAPTURE_WORKER_COUNT, CAPTURE_QUEUE_SIZE);
+    }
+
+    /*
+        captureWorkerCount: 동시에 사진을 저장하는 스레드 수
+        captureQueueSize: 저장을 기다릴 수 있는 사진 수, 넘치면 캡쳐를 거절한다.
+     */
+    public CameraPresenter(Context context, int captureWorkerCount, int captureQueueSize) {
         this.renderer = new CameraRenderer(context);
+        this.captureQueue = new CaptureQueue(captureWorkerCount, captureQueueSize,
+                Bitmap.CompressFormat.PNG, 100);
+
+        // On by default, matching the checked menu item
+        renderer.setQualityListener(qualityListener);
+        renderer.setQualityGovernorEnabled(true);
     }
 
     /*
@@ -50,6 +77,188 @@ public class CameraPresenter implements CameraContract.Presenter {
         renderer.setSelectedFilter(filterId);
     }
 
+    /*
+        현재 필터의 프레임 시간 통계를 화면에 주기적으로 표시
+     */
+    @Override
+    public void setPerfHudEnabled(boolean enabled) {
+        perfHudEnabled = enabled;
+        mainHandler.removeCallbacks(perfHudUpdater);
+        if (enabled) {
+            perfHudUpdater.run();
+        } else if (view != null) {
+            view.hidePerfHud();
+        }
+    }
+
+    private final Runnable perfHudUpdater = new Runnable() {
+        @Override
+        public void run() {
+            if (!perfHudEnabled || view == null)
+                return;
+
+            int filterId = renderer.getSelectedFilterId();
+            FrameScheduler scheduler = renderer.getFrameScheduler();
+            String text = renderer.getFilterName(filterId) + "\n"
+                    + renderer.getFrameStats().summarize(filterId).toDisplayString() + "\n"
+                    + String.format(Locale.US, "dropped %d, missed %d",
+                    scheduler.getDroppedCameraFrames(), scheduler.getMissedDeadlines());
+            for (String change : qualityChanges) {
+                text += "\n" + change;
+            }
+            view.showPerfHud(text);
+            mainHandler.postDelayed(this, PERF_HUD_INTERVAL_MILLIS);
+        }
+    };
+
+    /*
+        프레임 시간에 맞춰 내부 렌더링 배율, JFA 단계 수, 목표 fps를 자동으로 조절할지 설정
+        조절 내역은 HUD에 표시된다.
+     */
+    @Override
+    public void setQualityGovernorEnabled(boolean enabled) {
+        renderer.setQualityGovernorEnabled(enabled);
+        if (!enabled) {
+            qualityChanges.clear();
+        }
+    }
+
+    private final QualityGovernor.Listener qualityListener = new QualityGovernor.Listener() {
+        @Override
+        public void onQualityChanged(int knob, boolean degraded, float oldValue, float newValue,
+                                     long averageFrameNanos, long budgetNanos) {
+            final String change = String.format(Locale.US, "quality %s: %s %s -> %s (%.1f / %.1f ms)",
+                    degraded ? "down" : "up", knobName(knob),
+                    formatKnobValue(knob, oldValue), formatKnobValue(knob, newValue),
+                    averageFrameNanos / 1e6, budgetNanos / 1e6);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    qualityChanges.addFirst(change);
+                    if (qualityChanges.size() > QUALITY_HUD_LINES)
+                        qualityChanges.removeLast();
+                }
+            });
+        }
+    };
+
+    private static String knobName(int knob) {
+        switch (knob) {
+            case QualityGovernor.KNOB_RENDER_SCALE:
+                return "scale";
+            case QualityGovernor.KNOB_JFA_STEPS:
+                return "JFA steps";
+            default:
+                return "fps";
+        }
+    }
+
+    private static String formatKnobValue(int knob, float value) {
+        if (knob == QualityGovernor.KNOB_RENDER_SCALE)
+            return String.format(Locale.US, "%.2f", value);
+        if (knob == QualityGovernor.KNOB_TARGET_FPS && value == FrameScheduler.FPS_UNCAPPED)
+            return "uncapped";
+        return String.valueOf((int) value);
+    }
+
+    /*
+        프레임별 기록과 필터별 요약을 저장 폴더에 CSV로 저장
+        파일 출력은 별도 스레드에서 하고 결과는 view로 전달된다.
+     */
+    @Override
+    public void dumpFrameStats() {
+        String name = getNowTimeStr();
+        name = name.substring(0, name.lastIndexOf('.'));
+        final File framesFile = new File(getOutputDir(), "frames_" + name + ".csv");
+        final File summaryFile = new File(getOutputDir(), "summary_" + name + ".csv");
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean dumped = true;
+                try {
+                    renderer.dumpFrameStats(framesFile, summaryFile);
+                } catch (IOException e) {
+                    dumped = false;
+                }
+
+                final boolean result = dumped;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (view == null)
+                            return;
+                        if (result)
+                            view.onFrameStatsDumped(summaryFile);
+                        else
+                            view.onFrameStatsDumpFailed();
+                    }
+                });
+            }
+        }, "FrameStatsDump").start();
+    }
+
+    /*
+        등록된 모든 필터를 캔버스 크기별로 그려 프레임 시간 보고서를 저장 폴더에 남긴다.
+        canvasSizes는 "720x1280,1080x1920" 형식이며 null이면 기본 크기들을 사용한다.
+        진행 상황은 HUD에 표시된다.
+     */
+    @Override
+    public void startBenchmark(int warmupFrames, int measuredFrames, String canvasSizes) {
+        List<Integer> filterIds = renderer.getFilterRegistry().getFilterIds();
+        List<String> filterNames = new ArrayList<>();
+        for (int filterId : filterIds) {
+            filterNames.add(renderer.getFilterName(filterId));
+        }
+
+        renderer.startBenchmark(new FilterBenchmark(filterIds, filterNames,
+                FilterBenchmark.parseCanvasSizes(canvasSizes), warmupFrames, measuredFrames,
+                getOutputDir(), benchmarkListener));
+    }
+
+    private final FilterBenchmark.Listener benchmarkListener = new FilterBenchmark.Listener() {
+        @Override
+        public void onProgress(final int filterIndex, final int filterCount,
+                               final int sizeIndex, final int sizeCount) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (view != null)
+                        view.showPerfHud(String.format(Locale.US, "benchmark size %d/%d, filter %d/%d",
+                                sizeIndex + 1, sizeCount, filterIndex + 1, filterCount));
+                }
+            });
+        }
+
+        @Override
+        public void onFinished(final File csvReport, final File jsonReport) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (view == null)
+                        return;
+                    if (!perfHudEnabled)
+                        view.hidePerfHud();
+                    view.onBenchmarkFinished(jsonReport);
+                }
+            });
+        }
+
+        @Override
+        public void onFailed(IOException e) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (view == null)
+                        return;
+                    if (!perfHudEnabled)
+                        view.hidePerfHud();
+                    view.onBenchmarkFailed();
+                }
+            });
+        }
+    };
+
     /*
         화면 focusing
      */
@@ -59,57 +268,127 @@ public class CameraPresenter implements CameraContract.Presenter {
     }
 
     /*
-        bitmap 이미지 파일을 png 형식의 byte 배열로 압축하여 변환후
-        다이알로그를 띄운 사이에 파일 출력 함수 호출
+        renderer에 현재 필터를 카메라 사진 크기로 그려 읽도록 요청하고
+        읽은 픽셀을 저장 큐에 넣는다.
+        png 압축과 파일 출력은 백그라운드 스레드에서 이루어지고 결과는 view로 전달된다.
      */
     @Override
-    public void capture(Bitmap bitmap) {
-        byte[] imgData;
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-        imgData = stream.toByteArray();
-
-        view.showLoadingDialog();
+    public void capture() {
+        if (captureQueue.isFull()) {
+            // Still busy with earlier shots, don't bother the GPU
+            view.onCaptureRejected();
+            return;
+        }
 
-        saveImage(imgData);
-        view.dismissLoadingDialog();
+        renderer.capture(new CameraRenderer.CaptureCallback() {
+            @Override
+            public void onCaptured(ByteBuffer pixels, int width, int height) {
+                File outFile = new File(getOutputDir(), getNowTimeStr());
+                boolean accepted = captureQueue.submit(pixels, width, height, outFile, saveCallback);
+                if (!accepted) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (view != null)
+                                view.onCaptureRejected();
+                        }
+                    });
+                }
+            }
+        });
     }
 
     /*
-        filter_camera라는 하위 폴더 아래 이미지를 파일 출력
+        필터가 적용된 화면을 mp4로 녹화하거나 녹화를 끝낸다.
+        저장 위치는 사진과 같은 폴더이다.
      */
-    protected void saveImage(byte[] imgData) {
-        FileOutputStream outStream = null;
-        File outFile = null;
+    @Override
+    public void setRecording(boolean recording) {
+        if (!recording) {
+            renderer.stopRecording();
+            return;
+        }
 
-        File sdCard = Environment.getExternalStorageDirectory();
-        File dir = new File(sdCard.getAbsolutePath() + FOLDER_NAME);
-        dir.mkdirs();
+        String name = getNowTimeStr();
+        File file = new File(getOutputDir(), name.substring(0, name.lastIndexOf('.')) + ".mp4");
+        renderer.startRecording(file, new CameraRenderer.RecordingListener() {
+            @Override
+            public void onRecordingStarted(File file) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (view != null)
+                            view.onRecordingStarted();
+                    }
+                });
+            }
 
-        String fileName = getNowTimeStr();
-        outFile = new File(dir, fileName);
+            @Override
+            public void onRecordingFinished(final File file) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (view != null)
+                            view.onRecordingSaved(file);
+                    }
+                });
+            }
 
-        try {
-            outStream = new FileOutputStream(outFile);
-            outStream.write(imgData);
-            outStream.flush();
-            outStream.close();
-            view.refreshGallery(outFile);
+            @Override
+            public void onRecordingFailed(File file, IOException e) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (view != null)
+                            view.onRecordingFailed();
+                    }
+                });
+            }
+        });
+    }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+    private final CaptureQueue.Callback saveCallback = new CaptureQueue.Callback() {
+        @Override
+        public void onSaved(File file) {
+            if (view != null)
+                view.onCaptureSaved(file);
         }
+
+        @Override
+        public void onFailed(File file, IOException e) {
+            if (view != null)
+                view.onCaptureFailed();
+        }
+    };
+
+    /*
+        저장 중인 사진은 마저 저장하고 새 캡쳐는 받지 않는다.
+     */
+    @Override
+    public void release() {
+        captureQueue.shutdown();
+        mainHandler.removeCallbacks(perfHudUpdater);
+        view = null;
+    }
+
+    /*
+        filter_camera라는 하위 폴더
+     */
+    protected File getOutputDir() {
+        File sdCard = Environment.getExternalStorageDirectory();
+        File dir = new File(sdCard.getAbsolutePath() + FOLDER_NAME);
+        dir.mkdirs();
+        return dir;
     }
 
     /*
-        사진 중복 저장을 피하기 위한 초단위 파일 이름 생성 함수
+        사진 중복 저장을 피하기 위한 밀리초 단위 파일 이름 생성 함수
+        연속 촬영시 같은 초에 여러 장이 저장될 수 있다.
      */
     protected String getNowTimeStr() {
         Calendar calendar = Calendar.getInstance();
         java.util.Date date = calendar.getTime();
-        final String pattern = "yyyyMMddHHmmss";
+        final String pattern = "yyyyMMddHHmmssSSS";
         final String ext = ".png";
 
         String today = new SimpleDateFormat(pattern).format(date);
@@ -16,16 +16,22 @@
 package cn.nekocode.camerafilter;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
+import android.os.Build;
 import android.util.Log;
 import android.util.Pair;
-import android.util.SparseArray;
 import android.view.TextureView;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -33,32 +39,14 @@ import javax.microedition.khronos.egl.EGLContext;
 import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.egl.EGLSurface;
 
-import cn.nekocode.camerafilter.filter.AsciiArtFilter;
-import cn.nekocode.camerafilter.filter.BasicDeformFilter;
-import cn.nekocode.camerafilter.filter.BlackWhiteBrightFilter;
-import cn.nekocode.camerafilter.filter.BlackWhiteDarkFilter;
-import cn.nekocode.camerafilter.filter.BlackWhiteFilter;
-import cn.nekocode.camerafilter.filter.BlueorangeFilter;
 import cn.nekocode.camerafilter.filter.CameraFilter;
-import cn.nekocode.camerafilter.filter.ChromaticAberrationFilter;
-import cn.nekocode.camerafilter.filter.ContrastFilter;
-import cn.nekocode.camerafilter.filter.CrackedFilter;
-import cn.nekocode.camerafilter.filter.CrosshatchFilter;
-import cn.nekocode.camerafilter.filter.EMInterferenceFilter;
-import cn.nekocode.camerafilter.filter.EdgeDetectionFilter;
-import cn.nekocode.camerafilter.filter.JFAVoronoiFilter;
-import cn.nekocode.camerafilter.filter.LegofiedFilter;
-import cn.nekocode.camerafilter.filter.LichtensteinEsqueFilter;
-import cn.nekocode.camerafilter.filter.MappingFilter;
-import cn.nekocode.camerafilter.filter.MoneyFilter;
-import cn.nekocode.camerafilter.filter.NoiseWarpFilter;
-import cn.nekocode.camerafilter.filter.OriginalFilter;
-import cn.nekocode.camerafilter.filter.PixelizeFilter;
-import cn.nekocode.camerafilter.filter.PolygonizationFilter;
-import cn.nekocode.camerafilter.filter.RefractionFilter;
-import cn.nekocode.camerafilter.filter.TileMosaicFilter;
-import cn.nekocode.camerafilter.filter.TrianglesMosaicFilter;
+import cn.nekocode.camerafilter.filter.DerivedTextureCache;
+import cn.nekocode.camerafilter.filter.RenderBuffer;
+import cn.nekocode.camerafilter.filter.RenderBufferPool;
+import cn.nekocode.camerafilter.record.VideoRecorder;
+import cn.nekocode.camerafilter.util.GpuTimer;
 import cn.nekocode.camerafilter.util.MyGLUtils;
+import cn.nekocode.camerafilter.util.PixelReader;
 
 /**
  * @author nekocode (nekocode.cn@gmail.com)
@@ -66,8 +54,31 @@ import cn.nekocode.camerafilter.util.MyGLUtils;
 public class CameraRenderer implements Runnable, TextureView.SurfaceTextureListener {
     private static final String TAG = "CameraRenderer";
     private static final int EGL_OPENGL_ES2_BIT = 4;
+    private static final int EGL_OPENGL_ES3_BIT_KHR = 0x40;
     private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
-    private static final int DRAW_INTERVAL = 1000 / 30;
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+    private static final int PREWARM_COUNT = 2;
+    private static final long PREWARM_BUDGET_NANOS = 8000000L;
+    private static final int CAPTURE_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE11;
+    private static final int RECORD_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE13;
+
+    /*
+        캡쳐 결과를 받는 callback
+        render thread에서 호출되며 pixels는 RGBA 순서로 아래 줄부터 저장되어 있다.
+     */
+    public interface CaptureCallback {
+        void onCaptured(ByteBuffer pixels, int width, int height);
+    }
+
+    /*
+        녹화 상태를 받는 listener
+        render thread에서 호출된다.
+     */
+    public interface RecordingListener {
+        void onRecordingStarted(File file);
+        void onRecordingFinished(File file);
+        void onRecordingFailed(File file, IOException e);
+    }
 
     private Thread renderThread;
     private Context context;
@@ -83,12 +94,34 @@ public class CameraRenderer implements Runnable, TextureView.SurfaceTextureListe
     private Camera camera;
     private SurfaceTexture cameraSurfaceTexture;
     private int cameraTextureId;
+    private final float[] cameraTextureMatrix = new float[16];
     private CameraFilter selectedFilter;
-    private int selectedFilterId = R.id.filter_original;
-    private SparseArray<CameraFilter> cameraFilterMap = new SparseArray<>();
+    private int attachedFilterId;
+    private volatile int selectedFilterId = R.id.filter_original;
+    private final FilterRegistry filterRegistry;
+    private volatile boolean prewarmEnabled = true;
+    private final FrameScheduler frameScheduler = new FrameScheduler();
+    private final QualityGovernor qualityGovernor = new QualityGovernor(frameScheduler);
+
+    private final ConcurrentLinkedQueue<CaptureCallback> captureRequests = new ConcurrentLinkedQueue<>();
+    private PixelReader pixelReader;
+    private RenderBuffer captureBuffer;
+    private int captureWidth, captureHeight;
+
+    private final FrameStats frameStats = new FrameStats();
+    private GpuTimer gpuTimer;
+    private volatile FilterBenchmark pendingBenchmark;
+    private volatile File pendingRecordingFile;
+    private volatile RecordingListener recordingListener;
+    private volatile boolean stopRecordingRequested = false;
+    private VideoRecorder recorder;
+    private File recordingFile;
+    private RenderBuffer recordFrameBuffer;
+    private FilterBenchmark benchmark;
 
     public CameraRenderer(Context context) {
         this.context = context;
+        this.filterRegistry = FilterRegistry.createDefault(context);
     }
 
     @Override
@@ -99,10 +132,12 @@ public class CameraRenderer implements Runnable, TextureView.SurfaceTextureListe
     public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
         gwidth = -width;
         gheight = -height;
+        frameScheduler.requestRedraw();
     }
 
     @Override
     public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+        frameScheduler.stop();
         if (camera != null) {
             camera.stopPreview();
             camera.release();
@@ -110,7 +145,6 @@ public class CameraRenderer implements Runnable, TextureView.SurfaceTextureListe
         if (renderThread != null && renderThread.isAlive()) {
             renderThread.interrupt();
         }
-        CameraFilter.release();
 
         return true;
     }
@@ -132,6 +166,8 @@ public class CameraRenderer implements Runnable, TextureView.SurfaceTextureListe
         camera = Camera.open(backCameraId);
 
         // Start rendering
+        frameScheduler.start();
+        frameScheduler.requestRedraw();
         renderThread.start();
     }
 
@@ -153,47 +189,156 @@ public class CameraRenderer implements Runnable, TextureView.SurfaceTextureListe
         mCameraFacing = cameraFacing;
     }
 
+    /*
+        선택된 필터 id만 기록한다.
+        실제 필터 생성과 onAttach는 GL context가 있는 render thread에서 이루어진다.
+     */
     public void setSelectedFilter(int id) {
-        selectedFilterId = id;
-        selectedFilter = cameraFilterMap.get(id);
-        if (selectedFilter != null)
-            selectedFilter.onAttach();
+        if (filterRegistry.contains(id)) {
+            selectedFilterId = id;
+            frameScheduler.requestRedraw();
+        }
+    }
+
+    /*
+        목표 fps 설정 (FrameScheduler.FPS_24, FPS_30, FPS_60, FPS_UNCAPPED)
+        quality governor는 이 값을 상한으로 fps를 낮춘다.
+     */
+    public void setTargetFps(int fps) {
+        frameScheduler.setTargetFps(fps);
+    }
+
+    /*
+        프레임 시간에 맞춰 내부 렌더링 배율, JFA 단계 수, 목표 fps를 자동으로 조절할지 설정
+        끄면 모두 원래 값으로 돌아간다.
+     */
+    public void setQualityGovernorEnabled(boolean enabled) {
+        qualityGovernor.setEnabled(enabled);
+    }
+
+    /*
+        governor가 화질을 바꿀 때마다 호출될 listener (render thread에서 호출)
+     */
+    public void setQualityListener(QualityGovernor.Listener listener) {
+        qualityGovernor.setListener(listener);
+    }
+
+    /*
+        카메라 프레임이 없을 때 시간에 따라 변하는 필터만 다시 그릴지 설정
+     */
+    public void setIdleRedrawAnimatedOnly(boolean animatedOnly) {
+        frameScheduler.setIdleRedrawAnimatedOnly(animatedOnly);
+    }
+
+    public FrameScheduler getFrameScheduler() {
+        return frameScheduler;
+    }
+
+    /*
+        현재 필터를 화면이 아닌 카메라 사진 크기의 offscreen buffer에 한 번 더 그려 읽어온다.
+        그리기와 읽기는 render thread에서 preview 프레임을 내보낸 뒤에 이루어진다.
+     */
+    public void capture(CaptureCallback callback) {
+        captureRequests.add(callback);
+        frameScheduler.requestRedraw();
+    }
+
+    /*
+        MediaCodec 입력 surface를 사용한 녹화 지원 여부 (API 18 이상)
+     */
+    public static boolean isRecordingSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /*
+        필터가 적용된 화면을 file에 mp4로 녹화 시작
+        시작과 종료는 render thread에서 이루어지며 결과는 listener로 전달된다.
+     */
+    public void startRecording(File file, RecordingListener listener) {
+        recordingListener = listener;
+        stopRecordingRequested = false;
+        pendingRecordingFile = file;
+        frameScheduler.requestRedraw();
+    }
+
+    public void stopRecording() {
+        pendingRecordingFile = null;
+        stopRecordingRequested = true;
+        frameScheduler.requestRedraw();
+    }
+
+    /*
+        프레임별 시간 측정 기록
+        render thread가 기록하며 다른 스레드에서 읽어도 된다.
+     */
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    /*
+        현재 화면에 그려지고 있는 필터 id
+     */
+    public int getSelectedFilterId() {
+        return selectedFilterId;
+    }
+
+    /*
+        필터 id의 resource 이름 (예: filter_jfa_voronoi)
+     */
+    public String getFilterName(int filterId) {
+        try {
+            return context.getResources().getResourceEntryName(filterId);
+        } catch (Resources.NotFoundException e) {
+            return Integer.toString(filterId);
+        }
+    }
+
+    /*
+        프레임별 기록과 필터별 요약을 CSV 파일로 저장
+        어느 스레드에서 호출해도 되며 필터는 이름으로 기록된다.
+     */
+    public void dumpFrameStats(File framesFile, File summaryFile) throws IOException {
+        Map<Integer, String> names = new HashMap<>();
+        for (int filterId : filterRegistry.getFilterIds()) {
+            names.put(filterId, getFilterName(filterId));
+        }
+
+        frameStats.writeCsv(framesFile, names);
+        frameStats.writeSummaryCsv(summaryFile, names);
+    }
+
+    /*
+        등록된 모든 필터의 벤치마크 시작
+        끝날 때까지 화면은 갱신되지 않고, render thread가 쉬지 않고 offscreen으로 그린다.
+     */
+    public void startBenchmark(FilterBenchmark benchmark) {
+        pendingBenchmark = benchmark;
+        frameScheduler.requestRedraw();
+    }
+
+    /*
+        프레임 사이 유휴 시간에 다음 필터들을 미리 생성할지 설정
+     */
+    public void setPrewarmEnabled(boolean enabled) {
+        prewarmEnabled = enabled;
+    }
+
+    public FilterRegistry getFilterRegistry() {
+        return filterRegistry;
     }
 
     @Override
     public void run() {
         initGL(surfaceTexture);
 
-        // Setup camera filters map
-        cameraFilterMap.append(R.id.filter_original, new OriginalFilter(context));
-        cameraFilterMap.append(R.id.black_white_default, new BlackWhiteFilter(context));
-        cameraFilterMap.append(R.id.black_white_bright, new BlackWhiteBrightFilter(context));
-        cameraFilterMap.append(R.id.black_white_dark, new BlackWhiteDarkFilter(context));
-        cameraFilterMap.append(R.id.filter_blue_orange, new BlueorangeFilter(context));
-        cameraFilterMap.append(R.id.filter_edge_detection, new EdgeDetectionFilter(context));
-        cameraFilterMap.append(R.id.filter_pixelize, new PixelizeFilter(context));
-        cameraFilterMap.append(R.id.filter_em_interference, new EMInterferenceFilter(context));
-        cameraFilterMap.append(R.id.filter_triangles_mosaic, new TrianglesMosaicFilter(context));
-        cameraFilterMap.append(R.id.filter_legofied, new LegofiedFilter(context));
-        cameraFilterMap.append(R.id.filter_tile_mosaic, new TileMosaicFilter(context));
-        cameraFilterMap.append(R.id.filter_chromatic_aberration, new ChromaticAberrationFilter(context));
-        cameraFilterMap.append(R.id.filter_basic_deform, new BasicDeformFilter(context));
-        cameraFilterMap.append(R.id.filter_contrast, new ContrastFilter(context));
-        cameraFilterMap.append(R.id.filter_noise_warp, new NoiseWarpFilter(context));
-        cameraFilterMap.append(R.id.filter_refraction, new RefractionFilter(context));
-        cameraFilterMap.append(R.id.filter_mapping, new MappingFilter(context));
-        cameraFilterMap.append(R.id.filter_crosshatch, new CrosshatchFilter(context));
-        cameraFilterMap.append(R.id.filter_lichtenstein_esque, new LichtensteinEsqueFilter(context));
-        cameraFilterMap.append(R.id.filter_ascii_art, new AsciiArtFilter(context));
-        cameraFilterMap.append(R.id.filter_money_filter, new MoneyFilter(context));
-        cameraFilterMap.append(R.id.filter_cracked, new CrackedFilter(context));
-        cameraFilterMap.append(R.id.filter_polygonization, new PolygonizationFilter(context));
-        cameraFilterMap.append(R.id.filter_jfa_voronoi, new JFAVoronoiFilter(context));
-        setSelectedFilter(selectedFilterId);
+        // Filters are built lazily, drop the ones built for a previous GL context
+        filterRegistry.clear();
+        selectedFilter = null;
 
         // Create texture for camera preview
         cameraTextureId = MyGLUtils.genTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES);
         cameraSurfaceTexture = new SurfaceTexture(cameraTextureId);
+        cameraSurfaceTexture.setOnFrameAvailableListener(frameScheduler);
 
         // Start camera preview
         try {
@@ -202,39 +347,266 @@ public class CameraRenderer implements Runnable, TextureView.SurfaceTextureListe
         } catch (IOException ioe) {
             // Something bad happened
         }
+        setupCaptureSize(camera.getParameters().getPictureSize());
+        pixelReader = new PixelReader();
+        gpuTimer = new GpuTimer();
 
         // Render loop
         while (!Thread.currentThread().isInterrupted()) {
             try {
+                // Benchmark sweeps draw back to back, bypassing the scheduler and the window
+                if (benchmark != null || pendingBenchmark != null) {
+                    drawBenchmarkFrame();
+                    continue;
+                }
+
+                // Wait for a new camera frame (or an animated filter) and the next vsync
+                boolean animated = selectedFilter != null && selectedFilter.isTimeAnimated();
+                boolean newCameraFrame = frameScheduler.awaitNextFrame(animated);
+                long frameStart = System.nanoTime();
+                frameScheduler.onFrameStarted(frameStart);
+
                 if (gwidth < 0 && gheight < 0)
                     GLES20.glViewport(0, 0, gwidth = -gwidth, gheight = -gheight);
 
                 GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
                 // Update the camera preview texture
-                synchronized (this) {
-                    cameraSurfaceTexture.updateTexImage();
+                long updateTime = 0;
+                if (newCameraFrame) {
+                    long updateStart = System.nanoTime();
+                    updateCameraTexture();
+                    updateTime = System.nanoTime() - updateStart;
+                }
+
+                // Build or switch the selected filter
+                if (selectedFilter == null || attachedFilterId != selectedFilterId) {
+                    if (selectedFilter != null)
+                        selectedFilter.onDetach();
+                    attachedFilterId = selectedFilterId;
+                    selectedFilter = filterRegistry.get(attachedFilterId);
+                    selectedFilter.onAttach();
+                    filterRegistry.prewarm(attachedFilterId, PREWARM_COUNT);
                 }
 
+                updateRecording();
+
                 // Draw camera preview
                 boolean isFacingFront = mCameraFacing == Camera.CameraInfo.CAMERA_FACING_FRONT;
-                selectedFilter.draw(cameraTextureId, gwidth, gheight, isFacingFront);
+                long frameIndex = frameStats.nextFrameIndex();
+                long drawStart = System.nanoTime();
+                gpuTimer.begin(frameIndex);
+                if (recorder != null) {
+                    // Draw once, then copy to the preview here and to the encoder after the swap
+                    drawRecordFrame(isFacingFront);
+                } else {
+                    selectedFilter.draw(cameraTextureId, gwidth, gheight, isFacingFront);
+                }
+                gpuTimer.end();
+                long drawEnd = System.nanoTime();
 
                 // Flush
                 GLES20.glFlush();
                 egl10.eglSwapBuffers(eglDisplay, eglSurface);
+                long swapEnd = System.nanoTime();
+
+                frameStats.record(attachedFilterId, frameStart, swapEnd - frameStart, updateTime,
+                        drawEnd - drawStart, swapEnd - drawEnd);
+                gpuTimer.poll(frameStats);
+                qualityGovernor.onFrame(selectedFilter, swapEnd - frameStart);
+
+                if (recorder != null && newCameraFrame)
+                    recorder.drawFrame(recordFrameBuffer, cameraSurfaceTexture.getTimestamp());
+
+                // Captures are drawn after the preview frame is out so the preview doesn't hitch
+                CaptureCallback captureRequest = captureRequests.poll();
+                if (captureRequest != null)
+                    drawCapture(captureRequest, isFacingFront);
+                pixelReader.poll();
+                if (pixelReader.hasPending() || !captureRequests.isEmpty())
+                    frameScheduler.requestRedraw();
 
-                Thread.sleep(DRAW_INTERVAL);
+                // Use the idle time before the next frame to build the next likely filters
+                if (prewarmEnabled && filterRegistry.hasPendingPrewarm()
+                        && frameScheduler.hasIdleTime(PREWARM_BUDGET_NANOS))
+                    filterRegistry.prewarmNext();
 
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }
 
+        if (benchmark != null) {
+            benchmark.cancel();
+            benchmark = null;
+        }
+        stopRecording();
+        updateRecording();
+        pixelReader.release();
+        gpuTimer.release();
+        captureBuffer = null;
+
+        // Filters may still point at pooled buffers, drop both before the context goes away
+        CameraFilter.release();
+        RenderBufferPool.getInstance().clear();
+        cameraSurfaceTexture.setOnFrameAvailableListener(null);
         cameraSurfaceTexture.release();
         GLES20.glDeleteTextures(1, new int[]{cameraTextureId}, 0);
     }
 
+    /*
+        카메라 프레임을 texture로 가져오고 변환 행렬을 필터에 전달
+     */
+    private void updateCameraTexture() {
+        synchronized (this) {
+            cameraSurfaceTexture.updateTexImage();
+        }
+        cameraSurfaceTexture.getTransformMatrix(cameraTextureMatrix);
+        CameraFilter.setCameraTextureMatrix(cameraTextureMatrix);
+        DerivedTextureCache.getInstance().setCameraFrame(cameraSurfaceTexture.getTimestamp());
+    }
+
+    /*
+        요청된 녹화 시작, 종료 처리 (render thread)
+     */
+    private void updateRecording() {
+        if (recorder != null && stopRecordingRequested) {
+            stopRecordingRequested = false;
+            VideoRecorder finished = recorder;
+            recorder = null;
+            RenderBufferPool.getInstance().release(recordFrameBuffer);
+            recordFrameBuffer = null;
+
+            try {
+                finished.finish();
+                recordingListener.onRecordingFinished(recordingFile);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to finish recording", e);
+                recordingListener.onRecordingFailed(recordingFile, e);
+            }
+        }
+
+        File file = pendingRecordingFile;
+        if (recorder != null || file == null) {
+            return;
+        }
+        pendingRecordingFile = null;
+        recordingFile = file;
+        if (!isRecordingSupported()) {
+            recordingListener.onRecordingFailed(file, new IOException("Recording needs API 18"));
+            return;
+        }
+
+        int[] size = VideoRecorder.encoderSize(gwidth, gheight);
+        VideoRecorder newRecorder = null;
+        try {
+            newRecorder = new VideoRecorder(file, size[0], size[1]);
+            newRecorder.attach();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start recording", e);
+            if (newRecorder != null)
+                newRecorder.abort();
+            recordingListener.onRecordingFailed(file, e);
+            return;
+        }
+        recorder = newRecorder;
+        recordingListener.onRecordingStarted(file);
+    }
+
+    private void drawRecordFrame(boolean isFacingFront) {
+        if (recordFrameBuffer == null || recordFrameBuffer.getWidth() != gwidth
+                || recordFrameBuffer.getHeight() != gheight) {
+            RenderBufferPool pool = RenderBufferPool.getInstance();
+            pool.release(recordFrameBuffer);
+            recordFrameBuffer = pool.acquire(gwidth, gheight, RECORD_ACTIVE_TEX_UNIT);
+        }
+
+        selectedFilter.draw(cameraTextureId, gwidth, gheight, isFacingFront, recordFrameBuffer);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, gwidth, gheight);
+        CameraFilter.blit(recordFrameBuffer);
+    }
+
+    private void drawBenchmarkFrame() {
+        if (benchmark == null) {
+            benchmark = pendingBenchmark;
+            pendingBenchmark = null;
+
+            // The sweep measures every filter at its default quality
+            qualityGovernor.reset();
+
+            // The sweep attaches filters itself, the selected one is attached again afterwards
+            if (selectedFilter != null) {
+                selectedFilter.onDetach();
+                selectedFilter = null;
+            }
+        }
+
+        long updateTime = 0;
+        if (frameScheduler.takeCameraFrame()) {
+            long updateStart = System.nanoTime();
+            updateCameraTexture();
+            updateTime = System.nanoTime() - updateStart;
+        }
+
+        boolean isFacingFront = mCameraFacing == Camera.CameraInfo.CAMERA_FACING_FRONT;
+        if (!benchmark.step(filterRegistry, cameraTextureId, isFacingFront, updateTime)) {
+            benchmark = null;
+            GLES20.glViewport(0, 0, Math.abs(gwidth), Math.abs(gheight));
+            frameScheduler.requestRedraw();
+        }
+    }
+
+    /*
+        카메라 사진 크기로 캡쳐 크기 결정
+        카메라 크기는 가로 방향이고 필터는 세로 방향으로 그리므로 가로, 세로를 바꾸며
+        GL이 만들 수 있는 최대 크기를 넘으면 비율을 유지하며 줄인다.
+     */
+    private void setupCaptureSize(Camera.Size pictureSize) {
+        int[] maxSize = new int[2];
+        GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, maxSize, 0);
+        GLES20.glGetIntegerv(GLES20.GL_MAX_RENDERBUFFER_SIZE, maxSize, 1);
+        int limit = Math.min(maxSize[0], maxSize[1]);
+
+        int width = pictureSize.height;
+        int height = pictureSize.width;
+        int longer = Math.max(width, height);
+        if (longer > limit) {
+            width = width * limit / longer;
+            height = height * limit / longer;
+        }
+
+        captureWidth = width;
+        captureHeight = height;
+    }
+
+    private void drawCapture(final CaptureCallback callback, boolean isFacingFront) {
+        if (captureBuffer == null)
+            captureBuffer = RenderBufferPool.getInstance().acquire(captureWidth, captureHeight, CAPTURE_ACTIVE_TEX_UNIT);
+
+        // Photos are always drawn at full resolution, the preview keeps its own scale
+        selectedFilter.draw(cameraTextureId, captureWidth, captureHeight, isFacingFront, captureBuffer, 1f);
+
+        captureBuffer.bind();
+        pixelReader.read(captureWidth, captureHeight, new PixelReader.Callback() {
+            @Override
+            public void onPixelsRead(ByteBuffer pixels, int width, int height) {
+                callback.onCaptured(pixels, width, height);
+            }
+        });
+        captureBuffer.unbind();
+
+        // Restore the preview viewport
+        GLES20.glViewport(0, 0, gwidth, gheight);
+
+        // Hold on to the buffer only while a burst is going on, the pool decides whether to keep it
+        if (captureRequests.isEmpty()) {
+            RenderBufferPool.getInstance().release(captureBuffer);
+            captureBuffer = null;
+        }
+    }
+
     private void initGL(SurfaceTexture texture) {
         egl10 = (EGL10) EGLContext.getEGL();
 
@@ -250,33 +622,26 @@ public class CameraRenderer implements Runnable, TextureView.SurfaceTextureListe
                     android.opengl.GLUtils.getEGLErrorString(egl10.eglGetError()));
         }
 
-        int[] configsCount = new int[1];
-        EGLConfig[] configs = new EGLConfig[1];
-        int[] configSpec = {
-                EGL10.EGL_RENDERABLE_TYPE,
-                EGL_OPENGL_ES2_BIT,
-                EGL10.EGL_RED_SIZE, 8,
-                EGL10.EGL_GREEN_SIZE, 8,
-                EGL10.EGL_BLUE_SIZE, 8,
-                EGL10.EGL_ALPHA_SIZE, 8,
-                EGL10.EGL_DEPTH_SIZE, 0,
-                EGL10.EGL_STENCIL_SIZE, 0,
-                EGL10.EGL_NONE
-        };
-
-        EGLConfig eglConfig = null;
-        if (!egl10.eglChooseConfig(eglDisplay, configSpec, configs, 1, configsCount)) {
-            throw new IllegalArgumentException("eglChooseConfig failed " +
-                    android.opengl.GLUtils.getEGLErrorString(egl10.eglGetError()));
-        } else if (configsCount[0] > 0) {
-            eglConfig = configs[0];
+        // Prefer an OpenGL ES 3 context (program binaries, PBOs), fall back to ES 2
+        EGLConfig eglConfig = chooseConfig(EGL_OPENGL_ES3_BIT_KHR);
+        int clientVersion = 3;
+        if (eglConfig != null) {
+            int[] attrib_list = {EGL_CONTEXT_CLIENT_VERSION, clientVersion, EGL10.EGL_NONE};
+            eglContext = egl10.eglCreateContext(eglDisplay, eglConfig, EGL10.EGL_NO_CONTEXT, attrib_list);
         }
-        if (eglConfig == null) {
-            throw new RuntimeException("eglConfig not initialized");
+        if (eglConfig == null || eglContext == null || eglContext == EGL10.EGL_NO_CONTEXT) {
+            eglConfig = chooseConfig(EGL_OPENGL_ES2_BIT);
+            if (eglConfig == null) {
+                // The EGL error, if any, was logged by chooseConfig
+                throw new RuntimeException("No EGL config for OpenGL ES 2");
+            }
+
+            clientVersion = 2;
+            int[] attrib_list = {EGL_CONTEXT_CLIENT_VERSION, clientVersion, EGL10.EGL_NONE};
+            eglContext = egl10.eglCreateContext(eglDisplay, eglConfig, EGL10.EGL_NO_CONTEXT, attrib_list);
         }
+        Log.d(TAG, "Created OpenGL ES " + clientVersion + " context");
 
-        int[] attrib_list = {EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE};
-        eglContext = egl10.eglCreateContext(eglDisplay, eglConfig, EGL10.EGL_NO_CONTEXT, attrib_list);
         eglSurface = egl10.eglCreateWindowSurface(eglDisplay, eglConfig, texture, null);
 
         if (eglSurface == null || eglSurface == EGL10.EGL_NO_SURFACE) {
@@ -295,6 +660,46 @@ public class CameraRenderer implements Runnable, TextureView.SurfaceTextureListe
         }
     }
 
+    /*
+        VideoRecorder가 같은 config로 encoder surface를 만들 수 있도록 recordable config를 먼저 찾고,
+        없으면 녹화 없이 쓸 수 있는 config를 찾는다.
+     */
+    private EGLConfig chooseConfig(int renderableType) {
+        EGLConfig config = chooseConfig(renderableType, true);
+        if (config == null) {
+            Log.w(TAG, "No recordable EGL config for renderable type " + renderableType);
+            config = chooseConfig(renderableType, false);
+        }
+        return config;
+    }
+
+    private EGLConfig chooseConfig(int renderableType, boolean recordable) {
+        int[] configsCount = new int[1];
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configSpec = {
+                EGL10.EGL_RENDERABLE_TYPE,
+                renderableType,
+                EGL10.EGL_RED_SIZE, 8,
+                EGL10.EGL_GREEN_SIZE, 8,
+                EGL10.EGL_BLUE_SIZE, 8,
+                EGL10.EGL_ALPHA_SIZE, 8,
+                EGL10.EGL_DEPTH_SIZE, 0,
+                EGL10.EGL_STENCIL_SIZE, 0,
+                recordable ? EGL_RECORDABLE_ANDROID : EGL10.EGL_NONE, 1,
+                EGL10.EGL_NONE
+        };
+
+        if (!egl10.eglChooseConfig(eglDisplay, configSpec, configs, 1, configsCount)) {
+            // ES 2 only drivers reject the ES 3 renderable type with EGL_BAD_ATTRIBUTE
+            Log.w(TAG, "eglChooseConfig failed for renderable type " + renderableType + ": " +
+                    android.opengl.GLUtils.getEGLErrorString(egl10.eglGetError()));
+            return null;
+        } else if (configsCount[0] > 0) {
+            return configs[0];
+        }
+        return null;
+    }
+
     private Pair<Camera.CameraInfo, Integer> getCamera(int facing) {
         Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
         final int numberOfCameras = Camera.getNumberOfCameras();
@@ -0,0 +1,171 @@
+package cn.nekocode.camerafilter;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 캡쳐한 픽셀을 백그라운드 스레드에서 bitmap으로 만들고 압축하여 파일로 저장하는 큐
+ * 대기열 크기가 정해져 있어 가득 차면 새 캡쳐를 거절(backpressure)하며
+ * 결과는 main 스레드의 Callback으로 전달된다.
+ */
+public class CaptureQueue {
+    private static final String TAG = "CaptureQueue";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public interface Callback {
+        void onSaved(File file);
+        void onFailed(File file, IOException e);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Bitmap.CompressFormat format;
+    private final int quality;
+    private final int workerCount;
+    private final int capacity;
+
+    /*
+        workerCount: 동시에 압축, 저장하는 스레드 수
+        capacity: 처리 중인 것을 제외하고 대기할 수 있는 캡쳐 수
+     */
+    public CaptureQueue(int workerCount, int capacity, Bitmap.CompressFormat format, int quality) {
+        this.format = format;
+        this.quality = quality;
+        this.workerCount = workerCount;
+        this.capacity = capacity;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workerCount, workerCount, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG + "-" + threadCount.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /*
+        저장 작업 추가
+        pixels는 PixelReader가 읽은 RGBA 픽셀(아래 줄부터)이며 뒤집기는 작업 스레드에서 한다.
+        큐가 가득 찼거나 종료된 경우 false를 반환한다.
+     */
+    public boolean submit(final ByteBuffer pixels, final int width, final int height,
+                          final File outFile, final Callback callback) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flipVertically(pixels, width, height);
+                    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                    bitmap.copyPixelsFromBuffer(pixels);
+                    save(bitmap, outFile, callback);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /*
+        대기 중이거나 처리 중인 캡쳐 수
+     */
+    public int getPendingCount() {
+        return executor.getQueue().size() + executor.getActiveCount();
+    }
+
+    /*
+        모든 작업 스레드가 바쁘고 대기열도 가득 차서 submit이 거절될 상태인지 여부
+     */
+    public boolean isFull() {
+        return getPendingCount() >= workerCount + capacity;
+    }
+
+    /*
+        새 작업은 받지 않고, 이미 받은 작업은 끝까지 저장한다.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /*
+        GL은 아래 줄부터 읽으므로 위아래를 바꾼다.
+     */
+    private static void flipVertically(ByteBuffer pixels, int width, int height) {
+        int stride = width * 4;
+        byte[] top = new byte[stride];
+        byte[] bottom = new byte[stride];
+        for (int y = 0; y < height / 2; y++) {
+            int topOffset = y * stride;
+            int bottomOffset = (height - 1 - y) * stride;
+
+            pixels.position(topOffset);
+            pixels.get(top);
+            pixels.position(bottomOffset);
+            pixels.get(bottom);
+
+            pixels.position(topOffset);
+            pixels.put(bottom);
+            pixels.position(bottomOffset);
+            pixels.put(top);
+        }
+        pixels.rewind();
+    }
+
+    private void save(Bitmap bitmap, final File outFile, final Callback callback) {
+        IOException error = null;
+        OutputStream out = null;
+        try {
+            // Compress straight into the file, no intermediate byte array
+            out = new BufferedOutputStream(new FileOutputStream(outFile), BUFFER_SIZE);
+            if (!bitmap.compress(format, quality, out)) {
+                throw new IOException("Bitmap compression failed");
+            }
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save " + outFile, e);
+            error = e;
+            outFile.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+            bitmap.recycle();
+        }
+
+        final IOException result = error;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (result == null) {
+                    callback.onSaved(outFile);
+                } else {
+                    callback.onFailed(outFile, result);
+                }
+            }
+        });
+    }
+}
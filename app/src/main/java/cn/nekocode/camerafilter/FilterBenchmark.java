@@ -0,0 +1,329 @@
+package cn.nekocode.camerafilter;
+
+import android.opengl.GLES20;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import cn.nekocode.camerafilter.filter.CameraFilter;
+import cn.nekocode.camerafilter.filter.DerivedTextureCache;
+import cn.nekocode.camerafilter.filter.RenderBuffer;
+import cn.nekocode.camerafilter.filter.RenderBufferPool;
+import cn.nekocode.camerafilter.util.GpuTimer;
+
+/**
+ * 등록된 모든 필터를 여러 캔버스 크기로 돌아가며 그려 프레임 시간을 재는 벤치마크
+ * CameraRenderer가 render thread에서 step()을 반복 호출하며, 화면 대신 캔버스 크기의 offscreen buffer에 그린다.
+ * 필터마다 warm-up 프레임을 버린 뒤 측정 프레임을 기록하고, 끝나면 CSV와 JSON 보고서를 저장한다.
+ * 매 프레임 glFinish로 GPU 작업이 끝날 때까지 기다리므로 swap 시간 자리에는 그 대기 시간이 기록된다.
+ */
+public class FilterBenchmark {
+    private static final String TAG = "FilterBenchmark";
+    private static final int BENCHMARK_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE12;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final int DEFAULT_WARMUP_FRAMES = 30;
+    public static final int DEFAULT_MEASURED_FRAMES = 120;
+    public static final int[][] DEFAULT_CANVAS_SIZES = {
+            {360, 640},
+            {720, 1280},
+            {1080, 1920},
+    };
+
+    /*
+        render thread에서 호출된다.
+     */
+    public interface Listener {
+        void onProgress(int filterIndex, int filterCount, int sizeIndex, int sizeCount);
+        void onFinished(File csvReport, File jsonReport);
+        void onFailed(IOException e);
+    }
+
+    private final List<Integer> filterIds = new ArrayList<>();
+    private final List<String> filterNames = new ArrayList<>();
+    private final int[][] canvasSizes;
+    private final int warmupFrames;
+    private final int measuredFrames;
+    private final File outputDir;
+    private final Listener listener;
+
+    private final FrameStats[] results;
+    private GpuTimer gpuTimer;
+    private RenderBuffer canvas;
+    private CameraFilter filter;
+    private int sizeIndex = 0;
+    private int filterIndex = 0;
+    private int frame = 0;
+
+    /*
+        canvasSizes: {width, height} 목록
+        보고서는 outputDir에 benchmark_<시각>.csv, .json으로 저장된다.
+     */
+    public FilterBenchmark(List<Integer> filterIds, List<String> filterNames, int[][] canvasSizes,
+                           int warmupFrames, int measuredFrames, File outputDir, Listener listener) {
+        this.filterIds.addAll(filterIds);
+        this.filterNames.addAll(filterNames);
+        this.canvasSizes = canvasSizes;
+        this.warmupFrames = warmupFrames;
+        this.measuredFrames = measuredFrames;
+        this.outputDir = outputDir;
+        this.listener = listener;
+
+        results = new FrameStats[canvasSizes.length];
+        for (int i = 0; i < canvasSizes.length; i++) {
+            results[i] = new FrameStats(filterIds.size() * measuredFrames);
+        }
+    }
+
+    /*
+        "720x1280,1080x1920" 형식의 크기 목록 해석
+        잘못된 항목은 무시하고, 남는 것이 없으면 DEFAULT_CANVAS_SIZES를 반환한다.
+     */
+    public static int[][] parseCanvasSizes(String sizes) {
+        if (sizes == null) {
+            return DEFAULT_CANVAS_SIZES;
+        }
+
+        List<int[]> parsed = new ArrayList<>();
+        for (String size : sizes.split(",")) {
+            String[] parts = size.trim().toLowerCase(Locale.US).split("x");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                int width = Integer.parseInt(parts[0].trim());
+                int height = Integer.parseInt(parts[1].trim());
+                if (width > 0 && height > 0) {
+                    parsed.add(new int[]{width, height});
+                }
+            } catch (NumberFormatException e) {
+                // Skip
+            }
+        }
+        return parsed.isEmpty() ? DEFAULT_CANVAS_SIZES : parsed.toArray(new int[parsed.size()][]);
+    }
+
+    /*
+        한 프레임 진행 (render thread 전용)
+        모든 크기와 필터를 다 돌았으면 보고서를 저장하고 false를 반환한다.
+     */
+    boolean step(FilterRegistry registry, int cameraTextureId, boolean isFacingFront, long updateTime) {
+        if (gpuTimer == null) {
+            gpuTimer = new GpuTimer();
+        }
+
+        if (filter == null) {
+            if (sizeIndex >= canvasSizes.length) {
+                finish();
+                return false;
+            }
+            begin(registry);
+        }
+
+        int width = canvasSizes[sizeIndex][0];
+        int height = canvasSizes[sizeIndex][1];
+        int filterId = filterIds.get(filterIndex);
+        FrameStats stats = results[sizeIndex];
+        boolean measured = frame >= warmupFrames;
+
+        long frameIndex = stats.nextFrameIndex();
+        long drawStart = System.nanoTime();
+        if (measured)
+            gpuTimer.begin(frameIndex);
+        // Measure every frame as a new camera frame, not as a redraw that reuses the derived textures
+        DerivedTextureCache.getInstance().invalidate();
+        filter.draw(cameraTextureId, width, height, isFacingFront, canvas);
+        gpuTimer.end();
+        long drawEnd = System.nanoTime();
+
+        // Wait for the GPU so every frame is measured on its own
+        GLES20.glFinish();
+        long finishEnd = System.nanoTime();
+
+        if (measured) {
+            stats.record(filterId, drawStart, finishEnd - drawStart, updateTime,
+                    drawEnd - drawStart, finishEnd - drawEnd);
+        }
+        gpuTimer.poll(stats);
+
+        frame++;
+        if (frame >= warmupFrames + measuredFrames) {
+            end();
+        }
+        return true;
+    }
+
+    /*
+        중간에 멈출 때 (render thread 전용)
+     */
+    void cancel() {
+        if (filter != null) {
+            end();
+        }
+        releaseGpuTimer();
+    }
+
+    private void begin(FilterRegistry registry) {
+        int width = canvasSizes[sizeIndex][0];
+        int height = canvasSizes[sizeIndex][1];
+        listener.onProgress(filterIndex, filterIds.size(), sizeIndex, canvasSizes.length);
+
+        if (canvas == null || canvas.getWidth() != width || canvas.getHeight() != height) {
+            RenderBufferPool pool = RenderBufferPool.getInstance();
+            pool.release(canvas);
+            canvas = pool.acquire(width, height, BENCHMARK_ACTIVE_TEX_UNIT);
+        }
+
+        filter = registry.get(filterIds.get(filterIndex));
+        filter.onAttach();
+        frame = 0;
+    }
+
+    private void end() {
+        filter.onDetach();
+        filter = null;
+
+        filterIndex++;
+        if (filterIndex >= filterIds.size()) {
+            filterIndex = 0;
+            sizeIndex++;
+        }
+    }
+
+    private void finish() {
+        // Every frame was finished and polled in step(), no query is left in flight
+        releaseGpuTimer();
+
+        RenderBufferPool.getInstance().release(canvas);
+        canvas = null;
+
+        String name = "benchmark_" + System.currentTimeMillis();
+        File csvFile = new File(outputDir, name + ".csv");
+        File jsonFile = new File(outputDir, name + ".json");
+        try {
+            writeCsv(csvFile);
+            writeJson(jsonFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write the report", e);
+            listener.onFailed(e);
+            return;
+        }
+        listener.onFinished(csvFile, jsonFile);
+    }
+
+    private void releaseGpuTimer() {
+        if (gpuTimer != null) {
+            gpuTimer.release();
+            gpuTimer = null;
+        }
+    }
+
+    private void writeCsv(File file) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            writer.write("width,height,");
+            writer.write(FrameStats.Summary.CSV_HEADER);
+            writer.write('\n');
+            for (int s = 0; s < canvasSizes.length; s++) {
+                FrameStats.Snapshot snapshot = results[s].snapshot();
+                for (int f = 0; f < filterIds.size(); f++) {
+                    FrameStats.Summary summary = snapshot.summarize(filterIds.get(f));
+                    writer.write(canvasSizes[s][0] + "," + canvasSizes[s][1] + ",");
+                    writer.write(summary.toCsv(filterNames.get(f)));
+                    writer.write('\n');
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /*
+        요약과 함께 측정 프레임별 시간(ms)도 기록하여 분포를 다시 그릴 수 있게 한다.
+     */
+    private void writeJson(File file) throws IOException {
+        String json;
+        try {
+            JSONObject root = new JSONObject();
+            JSONObject device = new JSONObject();
+            device.put("manufacturer", Build.MANUFACTURER);
+            device.put("model", Build.MODEL);
+            device.put("sdk", Build.VERSION.SDK_INT);
+            device.put("gl_renderer", GLES20.glGetString(GLES20.GL_RENDERER));
+            device.put("gl_version", GLES20.glGetString(GLES20.GL_VERSION));
+            root.put("device", device);
+            root.put("warmup_frames", warmupFrames);
+            root.put("measured_frames", measuredFrames);
+
+            JSONArray runs = new JSONArray();
+            for (int s = 0; s < canvasSizes.length; s++) {
+                FrameStats.Snapshot snapshot = results[s].snapshot();
+                for (int f = 0; f < filterIds.size(); f++) {
+                    int filterId = filterIds.get(f);
+                    FrameStats.Summary summary = snapshot.summarize(filterId);
+
+                    JSONObject run = new JSONObject();
+                    run.put("filter", filterNames.get(f));
+                    run.put("width", canvasSizes[s][0]);
+                    run.put("height", canvasSizes[s][1]);
+                    run.put("frames", summary.frameCount);
+                    run.put("fps", summary.fps);
+                    run.put("cpu", toJson(summary.cpu));
+                    run.put("draw", toJson(summary.draw));
+                    run.put("finish", toJson(summary.swap));
+                    run.put("gpu", toJson(summary.gpu));
+
+                    JSONArray frameTimes = new JSONArray();
+                    JSONArray gpuTimes = new JSONArray();
+                    for (int i = snapshot.offset; i < snapshot.filterIds.length; i++) {
+                        if (snapshot.filterIds[i] != filterId) {
+                            continue;
+                        }
+                        frameTimes.put(toMillis(snapshot.cpuTimes[i]));
+                        gpuTimes.put(toMillis(snapshot.gpuTimes[i]));
+                    }
+                    run.put("frame_ms", frameTimes);
+                    run.put("gpu_ms", gpuTimes);
+                    runs.put(run);
+                }
+            }
+            root.put("runs", runs);
+            json = root.toString(2);
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static JSONObject toJson(FrameStats.Percentiles percentiles) throws JSONException {
+        JSONObject object = new JSONObject();
+        object.put("p50_ms", toMillis(percentiles.p50));
+        object.put("p95_ms", toMillis(percentiles.p95));
+        object.put("p99_ms", toMillis(percentiles.p99));
+        return object;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1e6;
+    }
+}
@@ -0,0 +1,298 @@
+package cn.nekocode.camerafilter;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import cn.nekocode.camerafilter.filter.AsciiArtFilter;
+import cn.nekocode.camerafilter.filter.BasicDeformFilter;
+import cn.nekocode.camerafilter.filter.BlackWhiteBrightFilter;
+import cn.nekocode.camerafilter.filter.BlackWhiteDarkFilter;
+import cn.nekocode.camerafilter.filter.BlackWhiteFilter;
+import cn.nekocode.camerafilter.filter.BlueorangeFilter;
+import cn.nekocode.camerafilter.filter.CameraFilter;
+import cn.nekocode.camerafilter.filter.ChromaticAberrationFilter;
+import cn.nekocode.camerafilter.filter.ContrastFilter;
+import cn.nekocode.camerafilter.filter.CrackedFilter;
+import cn.nekocode.camerafilter.filter.CrosshatchFilter;
+import cn.nekocode.camerafilter.filter.EMInterferenceFilter;
+import cn.nekocode.camerafilter.filter.EdgeDetectionFilter;
+import cn.nekocode.camerafilter.filter.FilterChain;
+import cn.nekocode.camerafilter.filter.JFAVoronoiFilter;
+import cn.nekocode.camerafilter.filter.LegofiedFilter;
+import cn.nekocode.camerafilter.filter.LichtensteinEsqueFilter;
+import cn.nekocode.camerafilter.filter.LutFilter;
+import cn.nekocode.camerafilter.filter.MappingFilter;
+import cn.nekocode.camerafilter.filter.MoneyFilter;
+import cn.nekocode.camerafilter.filter.NoiseWarpFilter;
+import cn.nekocode.camerafilter.filter.OriginalFilter;
+import cn.nekocode.camerafilter.filter.PixelizeFilter;
+import cn.nekocode.camerafilter.filter.PolygonizationFilter;
+import cn.nekocode.camerafilter.filter.RefractionFilter;
+import cn.nekocode.camerafilter.filter.TileMosaicFilter;
+import cn.nekocode.camerafilter.filter.TrianglesMosaicFilter;
+
+/**
+ * 메뉴 id와 필터 생성 팩토리를 연결하는 레지스트리
+ * 필터는 처음 선택될 때 render thread에서 생성되며 생성에 걸린 시간을 기록한다.
+ */
+public class FilterRegistry {
+    private static final String TAG = "FilterRegistry";
+
+    /*
+        필터 생성 함수
+        GL context가 현재 스레드에 연결된 상태에서만 호출된다.
+     */
+    public interface Factory {
+        CameraFilter create(Context context);
+    }
+
+    private final Context context;
+    private final SparseArray<Factory> factories = new SparseArray<>();
+    private final List<Integer> menuOrder = new ArrayList<>();
+    private final SparseArray<CameraFilter> filters = new SparseArray<>();
+    private final SparseArray<Long> buildTimes = new SparseArray<>();
+    private final ArrayDeque<Integer> prewarmQueue = new ArrayDeque<>();
+
+    public FilterRegistry(Context context) {
+        this.context = context;
+    }
+
+    /*
+        필터 팩토리 등록
+        등록 순서가 메뉴 순서가 되며 prewarm 대상 선정에 사용된다.
+     */
+    public void register(int id, Factory factory) {
+        if (factories.get(id) == null) {
+            menuOrder.add(id);
+        }
+        factories.put(id, factory);
+    }
+
+    public boolean contains(int id) {
+        return factories.get(id) != null;
+    }
+
+    /*
+        등록된 필터 id (메뉴 순서)
+     */
+    public List<Integer> getFilterIds() {
+        return new ArrayList<>(menuOrder);
+    }
+
+    public boolean isBuilt(int id) {
+        return filters.get(id) != null;
+    }
+
+    /*
+        id에 해당하는 필터를 반환
+        아직 생성되지 않았다면 이 시점에 생성한다.
+     */
+    public CameraFilter get(int id) {
+        CameraFilter filter = filters.get(id);
+        if (filter == null) {
+            filter = build(id);
+        }
+        return filter;
+    }
+
+    /*
+        선택된 필터 다음에 올 가능성이 높은 필터(메뉴상 다음 필터)들을 prewarm 대기열에 추가
+     */
+    public void prewarm(int id, int count) {
+        prewarmQueue.clear();
+
+        int index = menuOrder.indexOf(id);
+        if (index < 0) {
+            return;
+        }
+
+        for (int i = 1; i <= count && i < menuOrder.size(); i++) {
+            int nextId = menuOrder.get((index + i) % menuOrder.size());
+            if (!isBuilt(nextId)) {
+                prewarmQueue.add(nextId);
+            }
+        }
+    }
+
+    /*
+        prewarm 대기열에서 필터 하나를 생성
+        프레임 사이 유휴 시간에 호출하며, 생성한 필터가 있으면 true를 반환한다.
+     */
+    public boolean prewarmNext() {
+        while (!prewarmQueue.isEmpty()) {
+            int id = prewarmQueue.poll();
+            if (!isBuilt(id)) {
+                build(id);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasPendingPrewarm() {
+        return !prewarmQueue.isEmpty();
+    }
+
+    /*
+        필터 생성에 걸린 시간(ns), 생성되지 않았다면 -1
+     */
+    public synchronized long getBuildTimeNanos(int id) {
+        Long time = buildTimes.get(id);
+        return time != null ? time : -1;
+    }
+
+    /*
+        지금까지 생성된 모든 필터의 생성 시간 합(ns)
+     */
+    public synchronized long getTotalBuildTimeNanos() {
+        long total = 0;
+        for (int i = 0; i < buildTimes.size(); i++) {
+            total += buildTimes.valueAt(i);
+        }
+        return total;
+    }
+
+    /*
+        생성된 필터들을 버린다.
+        GL context가 새로 만들어지면 이전 context의 program은 사용할 수 없으므로 호출해야 한다.
+     */
+    public void clear() {
+        filters.clear();
+        prewarmQueue.clear();
+    }
+
+    private CameraFilter build(int id) {
+        Factory factory = factories.get(id);
+        if (factory == null) {
+            throw new IllegalArgumentException("No filter registered for id " + id);
+        }
+
+        long start = System.nanoTime();
+        CameraFilter filter = factory.create(context);
+        long elapsed = System.nanoTime() - start;
+
+        filters.put(id, filter);
+        synchronized (this) {
+            buildTimes.put(id, elapsed);
+        }
+        Log.d(TAG, filter.getClass().getSimpleName() + " built in " + (elapsed / 1000000f) + "ms");
+
+        return filter;
+    }
+
+    /*
+        menu_filter.xml의 모든 필터를 등록한 레지스트리 생성
+     */
+    public static FilterRegistry createDefault(Context context) {
+        FilterRegistry registry = new FilterRegistry(context);
+
+        registry.register(R.id.filter_original, new Factory() {
+            public CameraFilter create(Context context) { return new OriginalFilter(context); }
+        });
+        registry.register(R.id.black_white_default, new Factory() {
+            public CameraFilter create(Context context) { return new BlackWhiteFilter(context); }
+        });
+        registry.register(R.id.black_white_bright, new Factory() {
+            public CameraFilter create(Context context) { return new BlackWhiteBrightFilter(context); }
+        });
+        registry.register(R.id.black_white_dark, new Factory() {
+            public CameraFilter create(Context context) { return new BlackWhiteDarkFilter(context); }
+        });
+        registry.register(R.id.filter_blue_orange, new Factory() {
+            public CameraFilter create(Context context) { return new BlueorangeFilter(context); }
+        });
+        registry.register(R.id.filter_edge_detection, new Factory() {
+            public CameraFilter create(Context context) { return new EdgeDetectionFilter(context); }
+        });
+        registry.register(R.id.filter_pixelize, new Factory() {
+            public CameraFilter create(Context context) { return new PixelizeFilter(context); }
+        });
+        registry.register(R.id.filter_em_interference, new Factory() {
+            public CameraFilter create(Context context) { return new EMInterferenceFilter(context); }
+        });
+        registry.register(R.id.filter_triangles_mosaic, new Factory() {
+            public CameraFilter create(Context context) { return new TrianglesMosaicFilter(context); }
+        });
+        registry.register(R.id.filter_legofied, new Factory() {
+            public CameraFilter create(Context context) { return new LegofiedFilter(context); }
+        });
+        registry.register(R.id.filter_tile_mosaic, new Factory() {
+            public CameraFilter create(Context context) { return new TileMosaicFilter(context); }
+        });
+        registry.register(R.id.filter_chromatic_aberration, new Factory() {
+            public CameraFilter create(Context context) { return new ChromaticAberrationFilter(context); }
+        });
+        registry.register(R.id.filter_basic_deform, new Factory() {
+            public CameraFilter create(Context context) { return new BasicDeformFilter(context); }
+        });
+        registry.register(R.id.filter_contrast, new Factory() {
+            public CameraFilter create(Context context) { return new ContrastFilter(context); }
+        });
+        registry.register(R.id.filter_noise_warp, new Factory() {
+            public CameraFilter create(Context context) { return new NoiseWarpFilter(context); }
+        });
+        registry.register(R.id.filter_refraction, new Factory() {
+            public CameraFilter create(Context context) { return new RefractionFilter(context); }
+        });
+        registry.register(R.id.filter_mapping, new Factory() {
+            public CameraFilter create(Context context) { return new MappingFilter(context); }
+        });
+        registry.register(R.id.filter_crosshatch, new Factory() {
+            public CameraFilter create(Context context) { return new CrosshatchFilter(context); }
+        });
+        registry.register(R.id.filter_lichtenstein_esque, new Factory() {
+            public CameraFilter create(Context context) { return new LichtensteinEsqueFilter(context); }
+        });
+        registry.register(R.id.filter_ascii_art, new Factory() {
+            public CameraFilter create(Context context) { return new AsciiArtFilter(context); }
+        });
+        registry.register(R.id.filter_money_filter, new Factory() {
+            public CameraFilter create(Context context) { return new MoneyFilter(context); }
+        });
+        registry.register(R.id.filter_cracked, new Factory() {
+            public CameraFilter create(Context context) { return new CrackedFilter(context); }
+        });
+        registry.register(R.id.filter_polygonization, new Factory() {
+            public CameraFilter create(Context context) { return new PolygonizationFilter(context); }
+        });
+        registry.register(R.id.filter_jfa_voronoi, new Factory() {
+            public CameraFilter create(Context context) { return new JFAVoronoiFilter(context); }
+        });
+        registry.register(R.id.filter_jfa_voronoi_incremental, new Factory() {
+            public CameraFilter create(Context context) {
+                return new JFAVoronoiFilter(context, JFAVoronoiFilter.MODE_THROUGHPUT);
+            }
+        });
+        registry.register(R.id.filter_chain_contrast_edge, new Factory() {
+            public CameraFilter create(Context context) {
+                return new FilterChain(context,
+                        new ContrastFilter(context),
+                        new EdgeDetectionFilter(context),
+                        new ChromaticAberrationFilter(context));
+            }
+        });
+        registry.register(R.id.filter_chain_contrast_black_white, new Factory() {
+            public CameraFilter create(Context context) {
+                // Point-wise stages, drawn as a single fused pass
+                return new FilterChain(context,
+                        new ContrastFilter(context),
+                        new BlackWhiteBrightFilter(context));
+            }
+        });
+        registry.register(R.id.filter_lut_contrast_blue_orange, new Factory() {
+            public CameraFilter create(Context context) {
+                // CPU ports baked into one LUT, drawn with the program shared by every LUT filter
+                return LutFilter.bake(context, "contrast_blue_orange",
+                        new cn.nekocode.camerafilter.cpu.ContrastFilter(0.3f),
+                        new cn.nekocode.camerafilter.cpu.BlueorangeFilter());
+            }
+        });
+
+        return registry;
+    }
+}
@@ -0,0 +1,278 @@
+package cn.nekocode.camerafilter;
+
+import android.annotation.TargetApi;
+import android.graphics.SurfaceTexture;
+import android.os.Build;
+import android.view.Choreographer;
+
+/**
+ * render loop의 프레임 시점을 결정하는 스케줄러
+ * 카메라 새 프레임 도착(OnFrameAvailableListener)과 디스플레이 vsync를 기준으로 그리며
+ * 목표 fps(24/30/60/제한 없음)를 넘지 않도록 대기한다.
+ * 새 카메라 프레임이 없을 때는 시간에 따라 변하는 필터(iGlobalTime, iFrame 사용)만 다시 그릴 수 있다.
+ */
+public class FrameScheduler implements SurfaceTexture.OnFrameAvailableListener {
+    public static final int FPS_24 = 24;
+    public static final int FPS_30 = 30;
+    public static final int FPS_60 = 60;
+    public static final int FPS_UNCAPPED = 0;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long DEADLINE_SLACK_NANOS = 2000000L;
+    private static final long IDLE_WAIT_MILLIS = 100;
+
+    private final Object lock = new Object();
+
+    private int targetFps = FPS_30;
+    private long frameIntervalNanos = NANOS_PER_SECOND / FPS_30;
+    private boolean idleRedrawAnimatedOnly = true;
+    private boolean redrawRequested = true;
+
+    private int pendingCameraFrames = 0;
+    private long lastFrameStartNanos = 0;
+    // When work showed up after an idle wait, 0 if the next frame didn't wait for work
+    private long workReadyNanos = 0;
+    private long lastVsyncNanos = 0;
+    private long vsyncPeriodNanos = 0;
+
+    private long renderedFrames = 0;
+    private long droppedCameraFrames = 0;
+    private long missedDeadlines = 0;
+
+    private VsyncSource vsyncSource;
+
+    /*
+        UI 스레드에서 호출하여 vsync 수신 시작
+        Choreographer가 없는 (API 16 미만) 기기에서는 시간만으로 스케줄링한다.
+     */
+    public void start() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && vsyncSource == null) {
+            vsyncSource = new VsyncSource(this);
+            vsyncSource.start();
+        }
+    }
+
+    /*
+        UI 스레드에서 호출하여 vsync 수신 중지
+     */
+    public void stop() {
+        if (vsyncSource != null) {
+            vsyncSource.stop();
+            vsyncSource = null;
+        }
+    }
+
+    /*
+        목표 fps 설정 (FPS_24, FPS_30, FPS_60, FPS_UNCAPPED)
+     */
+    public void setTargetFps(int fps) {
+        synchronized (lock) {
+            targetFps = fps;
+            frameIntervalNanos = fps > 0 ? NANOS_PER_SECOND / fps : 0;
+            lock.notifyAll();
+        }
+    }
+
+    public int getTargetFps() {
+        synchronized (lock) {
+            return targetFps;
+        }
+    }
+
+    /*
+        true이면 새 카메라 프레임이 없을 때 시간에 따라 변하는 필터만 다시 그리고,
+        false이면 목표 fps로 항상 다시 그린다.
+     */
+    public void setIdleRedrawAnimatedOnly(boolean animatedOnly) {
+        synchronized (lock) {
+            idleRedrawAnimatedOnly = animatedOnly;
+            lock.notifyAll();
+        }
+    }
+
+    /*
+        필터 변경, 화면 크기 변경 등으로 새 카메라 프레임이 없어도 한 번 다시 그려야 할 때 호출
+     */
+    public void requestRedraw() {
+        synchronized (lock) {
+            redrawRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+        synchronized (lock) {
+            pendingCameraFrames++;
+            lock.notifyAll();
+        }
+    }
+
+    void onVsync(long frameTimeNanos) {
+        synchronized (lock) {
+            if (lastVsyncNanos != 0 && frameTimeNanos > lastVsyncNanos) {
+                long period = frameTimeNanos - lastVsyncNanos;
+                // Ignore skipped vsyncs when estimating the refresh period
+                if (vsyncPeriodNanos == 0 || period < vsyncPeriodNanos * 3 / 2) {
+                    vsyncPeriodNanos = vsyncPeriodNanos == 0 ? period : (vsyncPeriodNanos * 7 + period) / 8;
+                }
+            }
+            lastVsyncNanos = frameTimeNanos;
+        }
+    }
+
+    /*
+        다음 프레임을 그릴 시점까지 render thread를 대기시킨다.
+        새 카메라 프레임이 있으면 true를 반환하며 이 때만 updateTexImage가 필요하다.
+     */
+    public boolean awaitNextFrame(boolean filterAnimated) throws InterruptedException {
+        synchronized (lock) {
+            boolean idle = false;
+            workReadyNanos = 0;
+            while (true) {
+                boolean hasWork = pendingCameraFrames > 0 || redrawRequested
+                        || filterAnimated || !idleRedrawAnimatedOnly;
+
+                if (!hasWork) {
+                    idle = true;
+                    lock.wait(IDLE_WAIT_MILLIS);
+                    continue;
+                }
+
+                long now = System.nanoTime();
+                if (idle && workReadyNanos == 0) {
+                    workReadyNanos = now;
+                }
+                long due = nextDeadline();
+                if (now >= due) {
+                    break;
+                }
+
+                long waitNanos = due - now;
+                lock.wait(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            }
+
+            boolean newCameraFrame = pendingCameraFrames > 0;
+            if (pendingCameraFrames > 1) {
+                // updateTexImage only latches the latest one
+                droppedCameraFrames += pendingCameraFrames - 1;
+            }
+            pendingCameraFrames = 0;
+            redrawRequested = false;
+
+            return newCameraFrame;
+        }
+    }
+
+    /*
+        기다리지 않고 새 카메라 프레임이 있는지만 확인
+        벤치마크처럼 vsync와 목표 fps에 맞추지 않고 연속으로 그릴 때 사용한다.
+     */
+    public boolean takeCameraFrame() {
+        synchronized (lock) {
+            boolean newCameraFrame = pendingCameraFrames > 0;
+            pendingCameraFrames = 0;
+            return newCameraFrame;
+        }
+    }
+
+    /*
+        한 프레임을 그리기 시작한 시점(System.nanoTime) 기록
+        그릴 것이 없어 쉬던 시간은 놓친 프레임으로 세지 않고, 그릴 것이 생긴 뒤부터 늦은 만큼만 센다.
+     */
+    public void onFrameStarted(long frameStartNanos) {
+        synchronized (lock) {
+            if (lastFrameStartNanos != 0 && frameIntervalNanos > 0) {
+                long due = Math.max(lastFrameStartNanos + frameIntervalNanos, workReadyNanos);
+                long missed = (frameStartNanos - due) / frameIntervalNanos;
+                if (missed > 0) {
+                    missedDeadlines += missed;
+                }
+            }
+            lastFrameStartNanos = frameStartNanos;
+            workReadyNanos = 0;
+            renderedFrames++;
+        }
+    }
+
+    /*
+        다음 프레임까지 남은 시간이 있는지 여부
+        filter prewarm 등 유휴 작업을 할지 판단할 때 쓴다.
+     */
+    public boolean hasIdleTime(long budgetNanos) {
+        synchronized (lock) {
+            if (pendingCameraFrames > 0 && frameIntervalNanos == 0) {
+                return false;
+            }
+            return nextDeadline() - System.nanoTime() > budgetNanos;
+        }
+    }
+
+    public long getRenderedFrames() {
+        synchronized (lock) {
+            return renderedFrames;
+        }
+    }
+
+    /*
+        그리기 전에 다음 카메라 프레임으로 덮어써진 프레임 수
+     */
+    public long getDroppedCameraFrames() {
+        synchronized (lock) {
+            return droppedCameraFrames;
+        }
+    }
+
+    /*
+        프레임이 늦어서 목표 fps 간격을 놓친 횟수
+     */
+    public long getMissedDeadlines() {
+        synchronized (lock) {
+            return missedDeadlines;
+        }
+    }
+
+    /*
+        목표 간격이 지난 뒤 첫 vsync 시점
+     */
+    private long nextDeadline() {
+        if (lastFrameStartNanos == 0 || frameIntervalNanos == 0) {
+            return 0;
+        }
+
+        long due = lastFrameStartNanos + frameIntervalNanos - DEADLINE_SLACK_NANOS;
+        if (vsyncPeriodNanos > 0 && lastVsyncNanos > 0 && due > lastVsyncNanos) {
+            long periods = (due - lastVsyncNanos + vsyncPeriodNanos - 1) / vsyncPeriodNanos;
+            due = lastVsyncNanos + periods * vsyncPeriodNanos - DEADLINE_SLACK_NANOS;
+        }
+        return due;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class VsyncSource implements Choreographer.FrameCallback {
+        private final FrameScheduler scheduler;
+        private boolean running;
+
+        VsyncSource(FrameScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        void start() {
+            running = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            running = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            scheduler.onVsync(frameTimeNanos);
+            if (running) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package cn.nekocode.camerafilter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 프레임별 시간 측정값을 보관하는 ring buffer
+ * 쓰기는 render thread 하나에서만 하며 잠금 없이 기록한다.
+ * 읽는 쪽(HUD, 파일 저장)은 스냅샷을 복사한 뒤 복사하는 동안 덮어써진 프레임을 버린다.
+ * 모든 시간은 나노초이며, 측정하지 못한 GPU 시간은 -1이다.
+ */
+public class FrameStats {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int capacity;
+    private final int mask;
+    private final int[] filterIds;
+    private final long[] timestamps;
+    private final long[] cpuTimes;
+    private final long[] updateTimes;
+    private final long[] drawTimes;
+    private final long[] swapTimes;
+    private final long[] gpuTimes;
+    private final AtomicLong writeCount = new AtomicLong();
+
+    public FrameStats() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /*
+        capacity는 2의 거듭제곱으로 올림된다.
+     */
+    public FrameStats(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        filterIds = new int[size];
+        timestamps = new long[size];
+        cpuTimes = new long[size];
+        updateTimes = new long[size];
+        drawTimes = new long[size];
+        swapTimes = new long[size];
+        gpuTimes = new long[size];
+    }
+
+    /*
+        다음에 record될 프레임 번호
+        GPU timer query 결과를 나중에 같은 프레임에 붙일 때 사용한다.
+     */
+    public long nextFrameIndex() {
+        return writeCount.get();
+    }
+
+    /*
+        한 프레임 기록 (render thread 전용)
+        timestamp: 프레임 시작 시각
+        cpuTime: 프레임 시작부터 swap 완료까지
+     */
+    public void record(int filterId, long timestamp, long cpuTime, long updateTime, long drawTime, long swapTime) {
+        long index = writeCount.get();
+        int slot = (int) (index & mask);
+        filterIds[slot] = filterId;
+        timestamps[slot] = timestamp;
+        cpuTimes[slot] = cpuTime;
+        updateTimes[slot] = updateTime;
+        drawTimes[slot] = drawTime;
+        swapTimes[slot] = swapTime;
+        gpuTimes[slot] = -1;
+        // Publishes the slot to readers
+        writeCount.lazySet(index + 1);
+    }
+
+    /*
+        몇 프레임 뒤에 나온 GPU 시간을 해당 프레임에 기록 (render thread 전용)
+        이미 덮어써진 프레임이면 무시한다.
+     */
+    public void recordGpuTime(long frameIndex, long gpuTime) {
+        long count = writeCount.get();
+        if (frameIndex < count && frameIndex >= count - capacity) {
+            gpuTimes[(int) (frameIndex & mask)] = gpuTime;
+        }
+    }
+
+    public void clear() {
+        writeCount.set(0);
+    }
+
+    /*
+        현재 보관 중인 프레임들의 복사본
+     */
+    public Snapshot snapshot() {
+        long end = writeCount.get();
+        long start = Math.max(0, end - capacity);
+        int count = (int) (end - start);
+
+        Snapshot snapshot = new Snapshot(count);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((start + i) & mask);
+            snapshot.filterIds[i] = filterIds[slot];
+            snapshot.timestamps[i] = timestamps[slot];
+            snapshot.cpuTimes[i] = cpuTimes[slot];
+            snapshot.updateTimes[i] = updateTimes[slot];
+            snapshot.drawTimes[i] = drawTimes[slot];
+            snapshot.swapTimes[i] = swapTimes[slot];
+            snapshot.gpuTimes[i] = gpuTimes[slot];
+        }
+
+        // Drop whatever the writer overwrote while we were copying, including the slot
+        // it may be writing right now, which is only published after it is filled
+        long overwritten = writeCount.get() + 1 - capacity - start;
+        snapshot.offset = (int) Math.min(count, Math.max(0, overwritten));
+        return snapshot;
+    }
+
+    /*
+        필터별 요약
+     */
+    public Summary summarize(int filterId) {
+        return snapshot().summarize(filterId);
+    }
+
+    /*
+        보관 중인 모든 프레임을 CSV로 저장
+        names가 있으면 필터 id 대신 이름을 쓴다.
+     */
+    public void writeCsv(File file, Map<Integer, String> names) throws IOException {
+        Snapshot snapshot = snapshot();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            writer.write("filter,timestamp_ns,cpu_ns,update_tex_image_ns,draw_ns,swap_ns,gpu_ns\n");
+            for (int i = snapshot.offset; i < snapshot.filterIds.length; i++) {
+                writer.write(nameOf(snapshot.filterIds[i], names));
+                writer.write(',');
+                writer.write(Long.toString(snapshot.timestamps[i]));
+                writer.write(',');
+                writer.write(Long.toString(snapshot.cpuTimes[i]));
+                writer.write(',');
+                writer.write(Long.toString(snapshot.updateTimes[i]));
+                writer.write(',');
+                writer.write(Long.toString(snapshot.drawTimes[i]));
+                writer.write(',');
+                writer.write(Long.toString(snapshot.swapTimes[i]));
+                writer.write(',');
+                writer.write(Long.toString(snapshot.gpuTimes[i]));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /*
+        필터별 요약을 CSV로 저장
+     */
+    public void writeSummaryCsv(File file, Map<Integer, String> names) throws IOException {
+        Snapshot snapshot = snapshot();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            writer.write(Summary.CSV_HEADER);
+            writer.write('\n');
+            for (int filterId : snapshot.getFilterIds()) {
+                writer.write(snapshot.summarize(filterId).toCsv(nameOf(filterId, names)));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    static String nameOf(int filterId, Map<Integer, String> names) {
+        String name = (names != null) ? names.get(filterId) : null;
+        return (name != null) ? name : Integer.toString(filterId);
+    }
+
+    /*
+        특정 시점의 프레임 기록 복사본
+     */
+    public static class Snapshot {
+        final int[] filterIds;
+        final long[] timestamps;
+        final long[] cpuTimes;
+        final long[] updateTimes;
+        final long[] drawTimes;
+        final long[] swapTimes;
+        final long[] gpuTimes;
+        int offset = 0;
+
+        Snapshot(int count) {
+            filterIds = new int[count];
+            timestamps = new long[count];
+            cpuTimes = new long[count];
+            updateTimes = new long[count];
+            drawTimes = new long[count];
+            swapTimes = new long[count];
+            gpuTimes = new long[count];
+        }
+
+        /*
+            기록에 나온 필터 id (처음 나온 순서)
+         */
+        public List<Integer> getFilterIds() {
+            Set<Integer> ids = new LinkedHashSet<>();
+            for (int i = offset; i < filterIds.length; i++) {
+                ids.add(filterIds[i]);
+            }
+            return new ArrayList<>(ids);
+        }
+
+        public Summary summarize(int filterId) {
+            int count = 0;
+            for (int i = offset; i < filterIds.length; i++) {
+                if (filterIds[i] == filterId) {
+                    count++;
+                }
+            }
+
+            long[] cpu = new long[count];
+            long[] update = new long[count];
+            long[] draw = new long[count];
+            long[] swap = new long[count];
+            long[] gpu = new long[count];
+            int gpuCount = 0;
+            int n = 0;
+
+            // fps only counts intervals between consecutive frames of this filter
+            long intervalSum = 0;
+            int intervals = 0;
+
+            for (int i = offset; i < filterIds.length; i++) {
+                if (filterIds[i] != filterId) {
+                    continue;
+                }
+                cpu[n] = cpuTimes[i];
+                update[n] = updateTimes[i];
+                draw[n] = drawTimes[i];
+                swap[n] = swapTimes[i];
+                if (gpuTimes[i] >= 0) {
+                    gpu[gpuCount++] = gpuTimes[i];
+                }
+                n++;
+
+                if (i > offset && filterIds[i - 1] == filterId) {
+                    intervalSum += timestamps[i] - timestamps[i - 1];
+                    intervals++;
+                }
+            }
+
+            float fps = (intervalSum > 0) ? intervals * 1e9f / intervalSum : 0;
+            return new Summary(filterId, count, fps,
+                    Percentiles.of(cpu, count), Percentiles.of(update, count),
+                    Percentiles.of(draw, count), Percentiles.of(swap, count),
+                    Percentiles.of(gpu, gpuCount));
+        }
+    }
+
+    /*
+        p50, p95, p99 (나노초)
+     */
+    public static class Percentiles {
+        public final long p50, p95, p99;
+
+        Percentiles(long p50, long p95, long p99) {
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+        }
+
+        /*
+            values 앞 count개의 백분위수, 값이 없으면 모두 -1
+         */
+        static Percentiles of(long[] values, int count) {
+            if (count == 0) {
+                return new Percentiles(-1, -1, -1);
+            }
+            Arrays.sort(values, 0, count);
+            return new Percentiles(at(values, count, 0.50), at(values, count, 0.95), at(values, count, 0.99));
+        }
+
+        // Nearest rank
+        private static long at(long[] sorted, int count, double percentile) {
+            int rank = (int) Math.ceil(percentile * count);
+            return sorted[Math.max(0, Math.min(count, rank) - 1)];
+        }
+    }
+
+    /*
+        한 필터의 프레임 시간 요약
+     */
+    public static class Summary {
+        static final String CSV_HEADER = "filter,frames,fps,"
+                + "cpu_p50_ms,cpu_p95_ms,cpu_p99_ms,"
+                + "update_p50_ms,update_p95_ms,update_p99_ms,"
+                + "draw_p50_ms,draw_p95_ms,draw_p99_ms,"
+                + "swap_p50_ms,swap_p95_ms,swap_p99_ms,"
+                + "gpu_p50_ms,gpu_p95_ms,gpu_p99_ms";
+
+        public final int filterId;
+        public final int frameCount;
+        public final float fps;
+        public final Percentiles cpu;
+        public final Percentiles update;
+        public final Percentiles draw;
+        public final Percentiles swap;
+        public final Percentiles gpu;
+
+        Summary(int filterId, int frameCount, float fps, Percentiles cpu, Percentiles update,
+                Percentiles draw, Percentiles swap, Percentiles gpu) {
+            this.filterId = filterId;
+            this.frameCount = frameCount;
+            this.fps = fps;
+            this.cpu = cpu;
+            this.update = update;
+            this.draw = draw;
+            this.swap = swap;
+            this.gpu = gpu;
+        }
+
+        String toCsv(String name) {
+            return String.format(Locale.US, "%s,%d,%.2f,%s,%s,%s,%s,%s",
+                    name, frameCount, fps, csv(cpu), csv(update), csv(draw), csv(swap), csv(gpu));
+        }
+
+        /*
+            HUD에 표시할 여러 줄 문자열
+         */
+        public String toDisplayString() {
+            return String.format(Locale.US,
+                    "%.1f fps (%d frames)\n"
+                            + "cpu    %s\n"
+                            + "update %s\n"
+                            + "draw   %s\n"
+                            + "swap   %s\n"
+                            + "gpu    %s",
+                    fps, frameCount, display(cpu), display(update), display(draw), display(swap), display(gpu));
+        }
+
+        private static String csv(Percentiles p) {
+            return String.format(Locale.US, "%.3f,%.3f,%.3f", toMillis(p.p50), toMillis(p.p95), toMillis(p.p99));
+        }
+
+        private static String display(Percentiles p) {
+            if (p.p50 < 0) {
+                return "n/a";
+            }
+            return String.format(Locale.US, "%5.2f %5.2f %5.2f ms", toMillis(p.p50), toMillis(p.p95), toMillis(p.p99));
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos < 0 ? -1 : nanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package cn.nekocode.camerafilter;
+
+import android.util.Log;
+
+import cn.nekocode.camerafilter.filter.CameraFilter;
+import cn.nekocode.camerafilter.filter.JFAVoronoiFilter;
+
+/**
+ * 프레임 시간이 예산을 넘지 않도록 화질을 조절하는 클래스
+ * 장시간 사용으로 기기가 발열 제한(thermal throttling)에 걸리면 WINDOW_FRAMES 프레임의 평균 시간이 늘어나므로
+ * 내부 렌더링 배율, JFA 단계 수, 목표 fps 순서로 한 단계씩 낮추고, 여유가 생기면 반대 순서로 되돌린다.
+ * fps는 FrameScheduler에 설정된 목표 fps보다 높이지 않는다.
+ * 낮출 때와 올릴 때의 기준과 필요한 연속 구간 수를 다르게 하고(hysteresis) 바꾼 직후 구간은 건너뛰어 흔들리지 않게 한다.
+ * onFrame은 render thread에서만 호출하며, 바꾼 내용은 Listener로 알린다.
+ */
+public class QualityGovernor {
+    private static final String TAG = "QualityGovernor";
+
+    public static final int KNOB_RENDER_SCALE = 0;
+    public static final int KNOB_JFA_STEPS = 1;
+    public static final int KNOB_TARGET_FPS = 2;
+
+    /*
+        render thread에서 호출된다.
+        degraded: 화질을 낮춘 경우 true, 되돌린 경우 false
+        averageFrameNanos: 결정의 근거가 된 구간의 평균 프레임 시간
+        budgetNanos: 그 때의 목표 프레임 간격
+     */
+    public interface Listener {
+        void onQualityChanged(int knob, boolean degraded, float oldValue, float newValue, long averageFrameNanos, long budgetNanos);
+    }
+
+    static final float[] SCALE_STEPS = {1f, 0.75f, 0.5f, 0.35f};
+    static final int[] JFA_STEPS = {JFAVoronoiFilter.DEFAULT_MAX_STEPS, 9, 8};
+    private static final int[] FPS_STEPS = {FrameScheduler.FPS_60, FrameScheduler.FPS_30, FrameScheduler.FPS_24};
+    private static final int UNCAPPED_BUDGET_FPS = 60;
+
+    private static final int WINDOW_FRAMES = 30;
+    // Fractions of the frame budget
+    private static final float DEGRADE_THRESHOLD = 0.9f;
+    private static final float UPGRADE_THRESHOLD = 0.7f;
+    // Consecutive windows needed before acting, upgrades are deliberately slower
+    private static final int DEGRADE_WINDOWS = 2;
+    private static final int UPGRADE_WINDOWS = 6;
+    // Windows skipped after a change so the new setting is measured on its own
+    private static final int SETTLE_WINDOWS = 1;
+
+    private final FrameScheduler frameScheduler;
+    private Listener listener;
+
+    private volatile boolean enabled = false;
+    private volatile boolean resetRequested = false;
+
+    private CameraFilter filter;
+    // fpsLevels[0] is the scheduler's target when the governor took over
+    private int[] fpsLevels;
+    private int fpsStep = 0;
+    private int baseScaleStep = 0;
+    private int scaleStep = 0;
+    private int jfaStep = 0;
+
+    private long frameTimeSum = 0;
+    private int frameCount = 0;
+    private int overBudgetWindows = 0;
+    private int underBudgetWindows = 0;
+    private int settleWindows = 0;
+
+    public QualityGovernor(FrameScheduler frameScheduler) {
+        this.frameScheduler = frameScheduler;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /*
+        끄면 다음 프레임에 모든 조절 값을 원래대로 되돌린다.
+     */
+    public void setEnabled(boolean enabled) {
+        if (this.enabled && !enabled) {
+            resetRequested = true;
+        }
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+        한 프레임을 그리는 데 걸린 시간(프레임 시작부터 swap 완료까지) 전달
+     */
+    public void onFrame(CameraFilter filter, long frameNanos) {
+        if (resetRequested) {
+            resetRequested = false;
+            restore();
+        }
+        if (!enabled) {
+            return;
+        }
+
+        int schedulerFps = frameScheduler.getTargetFps();
+        if (fpsLevels == null || schedulerFps != fpsLevels[fpsStep]) {
+            // First frame, or the target was changed from outside since the governor last set it
+            setupFpsLevels(schedulerFps);
+        }
+        if (filter != this.filter) {
+            attach(filter);
+        }
+
+        frameTimeSum += frameNanos;
+        frameCount++;
+        if (frameCount < WINDOW_FRAMES) {
+            return;
+        }
+        long average = frameTimeSum / frameCount;
+        frameTimeSum = 0;
+        frameCount = 0;
+
+        if (settleWindows > 0) {
+            settleWindows--;
+            return;
+        }
+
+        long budget = budgetFor(fpsLevels[fpsStep]);
+        if (average > budget * DEGRADE_THRESHOLD) {
+            underBudgetWindows = 0;
+            if (++overBudgetWindows >= DEGRADE_WINDOWS) {
+                overBudgetWindows = 0;
+                degrade(average, budget);
+            }
+        } else if (canUpgrade(average)) {
+            overBudgetWindows = 0;
+            if (++underBudgetWindows >= UPGRADE_WINDOWS) {
+                underBudgetWindows = 0;
+                upgrade(average, budget);
+            }
+        } else {
+            overBudgetWindows = 0;
+            underBudgetWindows = 0;
+        }
+    }
+
+    /*
+        이전 필터는 원래 화질로 돌려놓는다.
+        새 필터는 자기 기본 배율과 JFA 단계에서 시작하고, fps 단계는 기기 상태이므로 유지한다.
+     */
+    private void attach(CameraFilter filter) {
+        restoreFilter();
+        this.filter = filter;
+        baseScaleStep = nearestScaleStep(filter.getRenderScale());
+        scaleStep = baseScaleStep;
+        jfaStep = 0;
+        frameTimeSum = 0;
+        frameCount = 0;
+        overBudgetWindows = 0;
+        underBudgetWindows = 0;
+        settleWindows = SETTLE_WINDOWS;
+    }
+
+    /*
+        설정된 목표 fps와 그보다 낮은 fps 단계들
+        제한 없음이면 제한 없음부터 시작한다.
+     */
+    private void setupFpsLevels(int targetFps) {
+        int count = 0;
+        int[] levels = new int[FPS_STEPS.length + 1];
+        levels[count++] = targetFps;
+        for (int fps : FPS_STEPS) {
+            if (targetFps == FrameScheduler.FPS_UNCAPPED || fps < targetFps) {
+                levels[count++] = fps;
+            }
+        }
+
+        fpsLevels = new int[count];
+        System.arraycopy(levels, 0, fpsLevels, 0, count);
+        fpsStep = 0;
+    }
+
+    /*
+        배율을 먼저 낮추고(효과가 가장 크다), 그 다음 JFA 단계, 마지막으로 fps를 낮춘다.
+     */
+    private void degrade(long average, long budget) {
+        if (scaleStep < SCALE_STEPS.length - 1) {
+            setScaleStep(scaleStep + 1, average, budget);
+        } else if (isJfa() && jfaStep < JFA_STEPS.length - 1) {
+            setJfaStep(jfaStep + 1, average, budget);
+        } else if (fpsStep < fpsLevels.length - 1) {
+            setFpsStep(fpsStep + 1, average, budget);
+        }
+    }
+
+    /*
+        낮춘 반대 순서로 되돌린다. 배율은 필터 기본값보다 높이지 않는다.
+     */
+    private void upgrade(long average, long budget) {
+        if (fpsStep > 0) {
+            setFpsStep(fpsStep - 1, average, budget);
+        } else if (isJfa() && jfaStep > 0) {
+            setJfaStep(jfaStep - 1, average, budget);
+        } else if (scaleStep > baseScaleStep) {
+            setScaleStep(scaleStep - 1, average, budget);
+        }
+    }
+
+    /*
+        한 단계 올린 뒤의 예상 프레임 시간이 그 때의 예산에 충분히 들어가는지 여부
+        배율은 픽셀 수에 비례한다고 보고, fps는 더 짧아질 예산과 비교한다.
+     */
+    private boolean canUpgrade(long average) {
+        long budget = budgetFor(fpsLevels[fpsStep]);
+        if (fpsStep > 0) {
+            return average < budgetFor(fpsLevels[fpsStep - 1]) * UPGRADE_THRESHOLD;
+        } else if (isJfa() && jfaStep > 0) {
+            return average < budget * UPGRADE_THRESHOLD;
+        } else if (scaleStep > baseScaleStep) {
+            float ratio = SCALE_STEPS[scaleStep - 1] / SCALE_STEPS[scaleStep];
+            return average * ratio * ratio < budget * UPGRADE_THRESHOLD;
+        }
+        return false;
+    }
+
+    private void setScaleStep(int step, long average, long budget) {
+        float oldScale = filter.getRenderScale();
+        int oldStep = scaleStep;
+        scaleStep = step;
+        filter.setRenderScale(SCALE_STEPS[step]);
+        changed(KNOB_RENDER_SCALE, step > oldStep, oldScale, SCALE_STEPS[step], average, budget);
+    }
+
+    private void setJfaStep(int step, long average, long budget) {
+        JFAVoronoiFilter jfa = (JFAVoronoiFilter) filter;
+        int oldSteps = jfa.getMaxSteps();
+        boolean degraded = step > jfaStep;
+        jfaStep = step;
+        jfa.setMaxSteps(JFA_STEPS[step]);
+        changed(KNOB_JFA_STEPS, degraded, oldSteps, JFA_STEPS[step], average, budget);
+    }
+
+    private void setFpsStep(int step, long average, long budget) {
+        int oldFps = fpsLevels[fpsStep];
+        boolean degraded = step > fpsStep;
+        fpsStep = step;
+        frameScheduler.setTargetFps(fpsLevels[step]);
+        changed(KNOB_TARGET_FPS, degraded, oldFps, fpsLevels[step], average, budget);
+    }
+
+    private void changed(int knob, boolean degraded, float oldValue, float newValue, long average, long budget) {
+        settleWindows = SETTLE_WINDOWS;
+        Log.d(TAG, (degraded ? "degrade" : "upgrade") + " knob " + knob + ": " + oldValue + " -> " + newValue
+                + " (average " + (average / 1000) + "us, budget " + (budget / 1000) + "us)");
+        if (listener != null) {
+            listener.onQualityChanged(knob, degraded, oldValue, newValue, average, budget);
+        }
+    }
+
+    /*
+        governor가 바꾼 값을 모두 즉시 원래대로 되돌리고 다음 프레임부터 처음부터 다시 잰다.
+        render thread에서만 호출한다. (벤치마크처럼 기본 화질로 그려야 할 때)
+     */
+    public void reset() {
+        resetRequested = false;
+        restore();
+    }
+
+    /*
+        governor가 바꾼 값을 모두 원래대로
+        그 사이 목표 fps가 밖에서 바뀌었으면 그 값을 그대로 둔다.
+     */
+    private void restore() {
+        restoreFilter();
+        if (fpsLevels != null && fpsStep > 0 && frameScheduler.getTargetFps() == fpsLevels[fpsStep]) {
+            frameScheduler.setTargetFps(fpsLevels[0]);
+        }
+        filter = null;
+        fpsLevels = null;
+    }
+
+    private void restoreFilter() {
+        if (filter == null) {
+            return;
+        }
+        if (scaleStep != baseScaleStep) {
+            filter.resetRenderScale();
+        }
+        if (isJfa()) {
+            ((JFAVoronoiFilter) filter).setMaxSteps(JFAVoronoiFilter.DEFAULT_MAX_STEPS);
+        }
+    }
+
+    private boolean isJfa() {
+        return filter instanceof JFAVoronoiFilter;
+    }
+
+    private static long budgetFor(int fps) {
+        return 1000000000L / (fps > 0 ? fps : UNCAPPED_BUDGET_FPS);
+    }
+
+    static int nearestScaleStep(float scale) {
+        int nearest = 0;
+        for (int i = 1; i < SCALE_STEPS.length; i++) {
+            if (Math.abs(SCALE_STEPS[i] - scale) < Math.abs(SCALE_STEPS[nearest] - scale)) {
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+}
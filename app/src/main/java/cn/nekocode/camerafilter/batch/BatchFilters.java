@@ -0,0 +1,94 @@
+package cn.nekocode.camerafilter.batch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.nekocode.camerafilter.cpu.BlackWhiteFilter;
+import cn.nekocode.camerafilter.cpu.BlueorangeFilter;
+import cn.nekocode.camerafilter.cpu.ContrastFilter;
+import cn.nekocode.camerafilter.cpu.CpuFilter;
+import cn.nekocode.camerafilter.cpu.EdgeDetectionFilter;
+import cn.nekocode.camerafilter.cpu.PixelizeFilter;
+import cn.nekocode.camerafilter.cpu.TileMosaicFilter;
+
+/**
+ * 배치 처리에서 쓰는 필터 id와 CPU 필터의 연결
+ * id는 menu_filter.xml의 메뉴 id 이름과 같으며, 필터 체인은 여러 CpuFilter로 나뉜다.
+ * GPU 없이 돌아가야 하므로 cpu 패키지로 옮겨진 필터만 사용할 수 있다.
+ */
+public final class BatchFilters {
+
+    interface Factory {
+        CpuFilter[] create();
+    }
+
+    private static final Map<String, Factory> FACTORIES = new LinkedHashMap<>();
+
+    static {
+        FACTORIES.put("filter_original", new Factory() {
+            public CpuFilter[] create() { return new CpuFilter[0]; }
+        });
+        FACTORIES.put("black_white_default", new Factory() {
+            public CpuFilter[] create() {
+                return new CpuFilter[]{new BlackWhiteFilter(BlackWhiteFilter.BRIGHTNESS_DEFAULT)};
+            }
+        });
+        FACTORIES.put("black_white_bright", new Factory() {
+            public CpuFilter[] create() {
+                return new CpuFilter[]{new BlackWhiteFilter(BlackWhiteFilter.BRIGHTNESS_BRIGHT)};
+            }
+        });
+        FACTORIES.put("black_white_dark", new Factory() {
+            public CpuFilter[] create() {
+                return new CpuFilter[]{new BlackWhiteFilter(BlackWhiteFilter.BRIGHTNESS_DARK)};
+            }
+        });
+        FACTORIES.put("filter_blue_orange", new Factory() {
+            public CpuFilter[] create() { return new CpuFilter[]{new BlueorangeFilter()}; }
+        });
+        FACTORIES.put("filter_edge_detection", new Factory() {
+            public CpuFilter[] create() { return new CpuFilter[]{new EdgeDetectionFilter()}; }
+        });
+        FACTORIES.put("filter_pixelize", new Factory() {
+            public CpuFilter[] create() { return new CpuFilter[]{new PixelizeFilter()}; }
+        });
+        FACTORIES.put("filter_tile_mosaic", new Factory() {
+            public CpuFilter[] create() { return new CpuFilter[]{new TileMosaicFilter()}; }
+        });
+        FACTORIES.put("filter_contrast", new Factory() {
+            public CpuFilter[] create() { return new CpuFilter[]{new ContrastFilter()}; }
+        });
+        FACTORIES.put("filter_chain_contrast_black_white", new Factory() {
+            public CpuFilter[] create() {
+                return new CpuFilter[]{
+                        new ContrastFilter(),
+                        new BlackWhiteFilter(BlackWhiteFilter.BRIGHTNESS_BRIGHT)
+                };
+            }
+        });
+    }
+
+    private BatchFilters() {
+    }
+
+    public static boolean contains(String filterId) {
+        return FACTORIES.containsKey(filterId);
+    }
+
+    /*
+        filterId의 필터 pipeline (앞에서부터 순서대로 적용)
+     */
+    public static CpuFilter[] create(String filterId) {
+        Factory factory = FACTORIES.get(filterId);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown filter " + filterId + ", supported: " + getFilterIds());
+        }
+        return factory.create();
+    }
+
+    public static List<String> getFilterIds() {
+        return new ArrayList<>(FACTORIES.keySet());
+    }
+}
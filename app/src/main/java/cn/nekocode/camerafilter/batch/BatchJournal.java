@@ -0,0 +1,107 @@
+package cn.nekocode.camerafilter.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 배치 처리 진행 기록
+ * 출력 파일을 다 쓴 뒤에 한 줄씩 덧붙이고 디스크에 sync하므로,
+ * 중간에 프로세스가 죽어도 다시 실행하면 기록된 파일을 건너뛰고 이어서 처리할 수 있다.
+ * 한 줄은 "필터 id \t 입력 파일 이름 \t 크기 \t 수정 시각"이며, 입력 파일이 바뀌었거나 필터가 다르면 다시 처리한다.
+ * 마지막 줄이 쓰다 만 상태일 수 있으므로 형식이 맞지 않는 줄은 무시한다.
+ */
+public class BatchJournal {
+    public static final String FILE_NAME = ".batch_journal";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SEPARATOR = "\t";
+    private static final int FIELD_COUNT = 4;
+
+    private final File file;
+    private final Set<String> entries = new HashSet<>();
+    private FileOutputStream out;
+
+    public BatchJournal(File file) {
+        this.file = file;
+    }
+
+    /*
+        기존 기록을 읽고 덧붙일 준비
+     */
+    public synchronized void open() throws IOException {
+        entries.clear();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.split(SEPARATOR, -1).length == FIELD_COUNT) {
+                        entries.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (FileNotFoundException e) {
+            // First run
+        }
+        boolean endsWithNewLine = endsWithNewLine();
+        out = new FileOutputStream(file, true);
+        if (!endsWithNewLine) {
+            // Keep a line left half written by a crash apart from the next entry
+            out.write('\n');
+        }
+    }
+
+    public synchronized boolean isDone(String filterId, File input) {
+        return entries.contains(entry(filterId, input));
+    }
+
+    /*
+        처리가 끝난 파일 기록
+     */
+    public synchronized void markDone(String filterId, File input) throws IOException {
+        String entry = entry(filterId, input);
+        out.write((entry + "\n").getBytes(UTF_8));
+        out.getFD().sync();
+        entries.add(entry);
+    }
+
+    public synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        out = null;
+    }
+
+    private boolean endsWithNewLine() throws IOException {
+        if (file.length() == 0) {
+            return true;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static String entry(String filterId, File input) {
+        return filterId + SEPARATOR + input.getName() + SEPARATOR + input.length() + SEPARATOR + input.lastModified();
+    }
+}
@@ -0,0 +1,232 @@
+package cn.nekocode.camerafilter.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.nekocode.camerafilter.cpu.CpuFilter;
+
+/**
+ * 입력 디렉토리의 모든 이미지에 필터를 적용하여 출력 디렉토리에 같은 이름으로 저장하는 배치 처리기
+ * GPU 없이 CPU 필터만 사용하고 Android API에 의존하지 않으므로 Linux 서버에서도 그대로 돌아간다.
+ * 파일 단위로 여러 스레드에서 동시에 처리하며, 파일 하나는 TileProcessor로 타일씩 처리하여 메모리 사용량을 제한한다.
+ * 끝난 파일은 BatchJournal에 기록되므로 중간에 멈춰도 다시 실행하면 이어서 처리한다.
+ */
+public class BatchProcessor {
+    private static final String TEMP_SUFFIX = ".part";
+
+    /*
+        작업 스레드에서 호출된다.
+     */
+    public interface Listener {
+        void onFileProcessed(File input, File output, BatchStats stats);
+        void onFileFailed(File input, Exception e, BatchStats stats);
+    }
+
+    private final String filterId;
+    private final File inputDir;
+    private final File outputDir;
+    private final ImageCodec codec;
+
+    private int fileParallelism = Runtime.getRuntime().availableProcessors();
+    private int tileWidth = TileProcessor.DEFAULT_TILE_WIDTH;
+    private int tileHeight = TileProcessor.DEFAULT_TILE_HEIGHT;
+    private Listener listener;
+
+    private volatile boolean cancelled = false;
+
+    /*
+        filterId: BatchFilters의 필터 id
+     */
+    public BatchProcessor(String filterId, File inputDir, File outputDir, ImageCodec codec) {
+        BatchFilters.create(filterId);
+        this.filterId = filterId;
+        this.inputDir = inputDir;
+        this.outputDir = outputDir;
+        this.codec = codec;
+    }
+
+    /*
+        동시에 처리할 파일 수
+        파일마다 출력 이미지 한 장과 타일 buffer 두 개만큼의 메모리를 쓴다.
+     */
+    public void setFileParallelism(int fileParallelism) {
+        this.fileParallelism = Math.max(1, fileParallelism);
+    }
+
+    /*
+        0이면 그 방향으로는 나누지 않는다.
+     */
+    public void setTileSize(int tileWidth, int tileHeight) {
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /*
+        다른 스레드에서 호출하면 처리 중인 파일까지만 끝내고 run이 반환된다.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /*
+        모든 파일을 처리할 때까지 호출한 스레드를 막는다.
+        실패한 파일은 journal에 기록하지 않으므로 다음 실행에서 다시 시도한다.
+     */
+    public BatchStats run() throws IOException, InterruptedException {
+        if (!inputDir.isDirectory()) {
+            throw new IOException(inputDir + " is not a directory");
+        }
+        if (inputDir.getCanonicalFile().equals(outputDir.getCanonicalFile())) {
+            throw new IOException("Output directory must differ from the input directory");
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Can't create " + outputDir);
+        }
+
+        final BatchStats stats = new BatchStats();
+        final BatchJournal journal = new BatchJournal(new File(outputDir, BatchJournal.FILE_NAME));
+        journal.open();
+
+        final ThreadLocal<TileProcessor> processors = new ThreadLocal<TileProcessor>() {
+            @Override
+            protected TileProcessor initialValue() {
+                return new TileProcessor(tileWidth, tileHeight);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(fileParallelism, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "BatchProcessor-" + count.incrementAndGet());
+            }
+        });
+
+        stats.start();
+        try {
+            for (final File input : listInputs()) {
+                if (journal.isDone(filterId, input) && new File(outputDir, input.getName()).exists()) {
+                    stats.addSkipped();
+                    continue;
+                }
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (cancelled) {
+                            return;
+                        }
+                        processFile(input, processors.get(), journal, stats);
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+            executor.shutdownNow();
+            throw e;
+        } finally {
+            stats.finish();
+            journal.close();
+        }
+        return stats;
+    }
+
+    /*
+        이름순으로 정렬하여 실행할 때마다 같은 순서로 처리한다.
+     */
+    private List<File> listInputs() {
+        List<File> inputs = new ArrayList<>();
+        File[] files = inputDir.listFiles();
+        if (files == null) {
+            return inputs;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isFile() && codec.canRead(file)) {
+                inputs.add(file);
+            }
+        }
+        return inputs;
+    }
+
+    /*
+        임시 파일에 다 쓴 뒤 이름을 바꾸므로 출력 디렉토리에 쓰다 만 이미지가 남지 않는다.
+     */
+    private void processFile(File input, TileProcessor processor, BatchJournal journal, BatchStats stats) {
+        File output = new File(outputDir, input.getName());
+        File temp = new File(outputDir, input.getName() + TEMP_SUFFIX);
+        try {
+            CpuFilter[] filters = BatchFilters.create(filterId);
+            long pixels;
+
+            long openStart = System.nanoTime();
+            ImageCodec.Reader reader = codec.openReader(input);
+            try {
+                pixels = (long) reader.getWidth() * reader.getHeight();
+                ImageCodec.Writer writer = codec.createWriter(output.getName(), reader.getWidth(), reader.getHeight());
+                stats.addTimes(System.nanoTime() - openStart, 0, 0);
+
+                boolean written = false;
+                try {
+                    processor.process(filters, reader, writer, stats);
+
+                    long encodeStart = System.nanoTime();
+                    OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+                    try {
+                        writer.finish(out);
+                    } finally {
+                        out.close();
+                    }
+                    stats.addTimes(0, 0, System.nanoTime() - encodeStart);
+                    written = true;
+                } finally {
+                    if (!written) {
+                        writer.abort();
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+
+            if (output.exists() && !output.delete()) {
+                throw new IOException("Can't replace " + output);
+            }
+            if (!temp.renameTo(output)) {
+                throw new IOException("Can't rename " + temp + " to " + output);
+            }
+            journal.markDone(filterId, input);
+
+            stats.addProcessed(pixels, input.length(), output.length());
+            if (listener != null) {
+                listener.onFileProcessed(input, output, stats);
+            }
+
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            stats.addFailed();
+            if (listener != null) {
+                listener.onFileFailed(input, e, stats);
+            }
+        }
+    }
+}
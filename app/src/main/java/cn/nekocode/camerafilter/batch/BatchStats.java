@@ -0,0 +1,125 @@
+package cn.nekocode.camerafilter.batch;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 배치 처리의 처리량 통계
+ * 여러 작업 스레드에서 동시에 더하므로 AtomicLong을 사용한다.
+ * 읽기, 필터, 쓰기 시간은 모든 스레드의 합이므로 경과 시간보다 클 수 있다.
+ */
+public class BatchStats {
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final AtomicLong processedFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong pixels = new AtomicLong();
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final AtomicLong outputBytes = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong filterNanos = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+
+    private volatile long startNanos = 0;
+    private volatile long endNanos = 0;
+
+    void start() {
+        startNanos = System.nanoTime();
+        endNanos = 0;
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    void addProcessed(long filePixels, long fileInputBytes, long fileOutputBytes) {
+        processedFiles.incrementAndGet();
+        pixels.addAndGet(filePixels);
+        inputBytes.addAndGet(fileInputBytes);
+        outputBytes.addAndGet(fileOutputBytes);
+    }
+
+    void addSkipped() {
+        skippedFiles.incrementAndGet();
+    }
+
+    void addFailed() {
+        failedFiles.incrementAndGet();
+    }
+
+    void addTimes(long decode, long filter, long encode) {
+        decodeNanos.addAndGet(decode);
+        filterNanos.addAndGet(filter);
+        encodeNanos.addAndGet(encode);
+    }
+
+    public long getProcessedFiles() {
+        return processedFiles.get();
+    }
+
+    /*
+        journal에 이미 끝난 것으로 기록되어 건너뛴 파일 수
+     */
+    public long getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    public long getFailedFiles() {
+        return failedFiles.get();
+    }
+
+    public long getPixels() {
+        return pixels.get();
+    }
+
+    public long getInputBytes() {
+        return inputBytes.get();
+    }
+
+    public long getOutputBytes() {
+        return outputBytes.get();
+    }
+
+    public long getDecodeNanos() {
+        return decodeNanos.get();
+    }
+
+    public long getFilterNanos() {
+        return filterNanos.get();
+    }
+
+    public long getEncodeNanos() {
+        return encodeNanos.get();
+    }
+
+    /*
+        시작부터 끝(진행 중이면 현재)까지의 시간
+     */
+    public long getElapsedNanos() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        return (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+    }
+
+    public double getFilesPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed > 0 ? getProcessedFiles() * NANOS_PER_SECOND / elapsed : 0;
+    }
+
+    public double getMegapixelsPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed > 0 ? getPixels() / 1e6 * NANOS_PER_SECOND / elapsed : 0;
+    }
+
+    public String toDisplayString() {
+        return String.format(Locale.US,
+                "%d done, %d skipped, %d failed in %.1fs (%.2f files/s, %.1f MP/s)\n"
+                        + "decode %.1fs, filter %.1fs, encode %.1fs (all threads)",
+                getProcessedFiles(), getSkippedFiles(), getFailedFiles(),
+                getElapsedNanos() / NANOS_PER_SECOND, getFilesPerSecond(), getMegapixelsPerSecond(),
+                getDecodeNanos() / NANOS_PER_SECOND, getFilterNanos() / NANOS_PER_SECOND,
+                getEncodeNanos() / NANOS_PER_SECOND);
+    }
+}
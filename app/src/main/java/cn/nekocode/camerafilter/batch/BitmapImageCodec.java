@@ -0,0 +1,119 @@
+package cn.nekocode.camerafilter.batch;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Android Bitmap으로 이미지를 읽고 쓰는 ImageCodec
+ * BitmapRegionDecoder로 필요한 영역만 압축을 풀기 때문에 큰 사진도 타일 크기만큼의 메모리로 읽을 수 있다.
+ * 출력은 이미지 전체 크기의 ARGB_8888 Bitmap에 모았다가 마지막에 압축한다.
+ */
+public class BitmapImageCodec implements ImageCodec {
+    private static final int JPEG_QUALITY = 95;
+
+    @Override
+    public boolean canRead(File file) {
+        return formatOf(file.getName()) != null;
+    }
+
+    @Override
+    public Reader openReader(File file) throws IOException {
+        return new RegionReader(BitmapRegionDecoder.newInstance(file.getAbsolutePath(), false));
+    }
+
+    @Override
+    public Writer createWriter(String fileName, int width, int height) throws IOException {
+        Bitmap.CompressFormat format = formatOf(fileName);
+        if (format == null) {
+            throw new IOException("Unsupported format " + fileName);
+        }
+        return new BitmapWriter(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888), format);
+    }
+
+    private static Bitmap.CompressFormat formatOf(String fileName) {
+        String name = fileName.toLowerCase(Locale.US);
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            return Bitmap.CompressFormat.JPEG;
+        } else if (name.endsWith(".png")) {
+            return Bitmap.CompressFormat.PNG;
+        } else if (name.endsWith(".webp")) {
+            return Bitmap.CompressFormat.WEBP;
+        }
+        return null;
+    }
+
+    private static class RegionReader implements Reader {
+        private final BitmapRegionDecoder decoder;
+        private final BitmapFactory.Options options = new BitmapFactory.Options();
+        private final Rect rect = new Rect();
+
+        RegionReader(BitmapRegionDecoder decoder) {
+            this.decoder = decoder;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        }
+
+        @Override
+        public int getWidth() {
+            return decoder.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return decoder.getHeight();
+        }
+
+        @Override
+        public void read(int x, int y, int width, int height, int[] pixels) throws IOException {
+            rect.set(x, y, x + width, y + height);
+            Bitmap region = decoder.decodeRegion(rect, options);
+            if (region == null) {
+                throw new IOException("Failed to decode " + rect);
+            }
+            region.getPixels(pixels, 0, width, 0, 0, width, height);
+            region.recycle();
+        }
+
+        @Override
+        public void close() {
+            decoder.recycle();
+        }
+    }
+
+    private static class BitmapWriter implements Writer {
+        private final Bitmap bitmap;
+        private final Bitmap.CompressFormat format;
+
+        BitmapWriter(Bitmap bitmap, Bitmap.CompressFormat format) {
+            this.bitmap = bitmap;
+            this.format = format;
+        }
+
+        @Override
+        public void write(int x, int y, int width, int height, int[] pixels, int offset, int stride) {
+            bitmap.setPixels(pixels, offset, stride, x, y, width, height);
+        }
+
+        @Override
+        public void finish(OutputStream out) throws IOException {
+            try {
+                if (!bitmap.compress(format, JPEG_QUALITY, out)) {
+                    throw new IOException("Failed to compress " + format);
+                }
+            } finally {
+                bitmap.recycle();
+            }
+        }
+
+        @Override
+        public void abort() {
+            bitmap.recycle();
+        }
+    }
+}
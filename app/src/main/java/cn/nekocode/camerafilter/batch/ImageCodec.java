@@ -0,0 +1,56 @@
+package cn.nekocode.camerafilter.batch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 배치 처리에서 이미지 파일을 읽고 쓰는 방법
+ * 큰 이미지를 한 번에 올리지 않도록 읽기는 영역 단위로 하며, 픽셀은 ARGB int 배열(위쪽 줄부터)이다.
+ * Android(BitmapImageCodec)와 JVM(ImageIOCodec) 구현이 있다.
+ * Reader와 Writer는 한 스레드에서만 사용하지만, 여러 파일을 동시에 열 수 있어야 한다.
+ */
+public interface ImageCodec {
+
+    /*
+        읽을 수 있는 형식의 파일인지 여부 (확장자로 판단)
+     */
+    boolean canRead(File file);
+
+    Reader openReader(File file) throws IOException;
+
+    /*
+        fileName의 확장자에 맞는 형식으로 저장하는 Writer
+     */
+    Writer createWriter(String fileName, int width, int height) throws IOException;
+
+    interface Reader extends Closeable {
+        int getWidth();
+
+        int getHeight();
+
+        /*
+            [x, x + width) x [y, y + height) 영역을 pixels에 위쪽 줄부터 채운다.
+         */
+        void read(int x, int y, int width, int height, int[] pixels) throws IOException;
+    }
+
+    interface Writer {
+
+        /*
+            pixels[offset]부터 한 줄에 stride개씩 있는 width x height 영역을 (x, y)에 쓴다.
+         */
+        void write(int x, int y, int width, int height, int[] pixels, int offset, int stride) throws IOException;
+
+        /*
+            모든 영역을 쓴 뒤 out에 압축하여 저장하고 자원을 해제한다.
+         */
+        void finish(OutputStream out) throws IOException;
+
+        /*
+            저장하지 않고 자원만 해제
+         */
+        void abort();
+    }
+}
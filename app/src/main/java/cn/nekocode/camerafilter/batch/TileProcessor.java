@@ -0,0 +1,99 @@
+package cn.nekocode.camerafilter.batch;
+
+import java.io.IOException;
+
+import cn.nekocode.camerafilter.cpu.CpuFilter;
+
+/**
+ * 이미지 한 장을 타일 단위로 읽어 필터 pipeline을 적용하고 Writer에 쓰는 클래스
+ * 타일마다 필터들이 읽는 이웃 픽셀(halo)까지 함께 읽으므로 타일 경계에서도 전체 이미지를 처리한 것과 결과가 같다.
+ * 앞쪽 필터는 뒤쪽 필터의 halo까지 넓혀 처리하고, 마지막 필터는 타일 영역만 처리한다.
+ * 타일 buffer를 재사용하므로 한 스레드에서만 사용해야 한다.
+ */
+public class TileProcessor {
+    public static final int DEFAULT_TILE_WIDTH = 1024;
+    public static final int DEFAULT_TILE_HEIGHT = 1024;
+
+    private final int tileWidth, tileHeight;
+    private int[] bufferA = new int[0];
+    private int[] bufferB = new int[0];
+
+    /*
+        tileWidth, tileHeight가 0이면 그 방향으로는 나누지 않는다.
+        (순서대로만 압축을 풀 수 있는 codec은 가로 전체 띠로 읽는 편이 빠르다)
+     */
+    public TileProcessor(int tileWidth, int tileHeight) {
+        if (tileWidth < 0 || tileHeight < 0) {
+            throw new IllegalArgumentException("Tile size must not be negative");
+        }
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /*
+        reader의 이미지 전체를 처리하여 writer에 쓴다.
+        stats가 null이 아니면 읽기, 필터, 쓰기 시간을 더한다.
+     */
+    public void process(CpuFilter[] filters, ImageCodec.Reader reader, ImageCodec.Writer writer,
+                        BatchStats stats) throws IOException {
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        int stepX = tileWidth > 0 ? tileWidth : width;
+        int stepY = tileHeight > 0 ? tileHeight : height;
+
+        // Halo still needed after filter i, the last filter needs none
+        int[] remainingHalo = new int[filters.length];
+        int totalHalo = 0;
+        for (int i = filters.length - 1; i >= 0; i--) {
+            remainingHalo[i] = totalHalo;
+            totalHalo += filters[i].getHalo(width, height);
+        }
+
+        ensureCapacity((Math.min(stepX, width) + totalHalo * 2) * (Math.min(stepY, height) + totalHalo * 2));
+
+        for (int tileY = 0; tileY < height; tileY += stepY) {
+            for (int tileX = 0; tileX < width; tileX += stepX) {
+                int endX = Math.min(tileX + stepX, width);
+                int endY = Math.min(tileY + stepY, height);
+
+                int windowX = Math.max(tileX - totalHalo, 0);
+                int windowY = Math.max(tileY - totalHalo, 0);
+                int windowWidth = Math.min(endX + totalHalo, width) - windowX;
+                int windowHeight = Math.min(endY + totalHalo, height) - windowY;
+
+                long readStart = System.nanoTime();
+                reader.read(windowX, windowY, windowWidth, windowHeight, bufferA);
+                long filterStart = System.nanoTime();
+
+                int[] input = bufferA;
+                int[] output = bufferB;
+                for (int i = 0; i < filters.length; i++) {
+                    int halo = remainingHalo[i];
+                    filters[i].filterWindow(input, output, width, height,
+                            windowX, windowY, windowWidth, windowHeight,
+                            Math.max(tileX - halo, windowX), Math.max(tileY - halo, windowY),
+                            Math.min(endX + halo, windowX + windowWidth), Math.min(endY + halo, windowY + windowHeight));
+                    int[] swap = input;
+                    input = output;
+                    output = swap;
+                }
+                long writeStart = System.nanoTime();
+
+                int offset = (tileY - windowY) * windowWidth + (tileX - windowX);
+                writer.write(tileX, tileY, endX - tileX, endY - tileY, input, offset, windowWidth);
+                long writeEnd = System.nanoTime();
+
+                if (stats != null) {
+                    stats.addTimes(filterStart - readStart, writeStart - filterStart, writeEnd - writeStart);
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (bufferA.length < size) {
+            bufferA = new int[size];
+            bufferB = new int[size];
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * 흑백 필터 (black_white, black_white_bright, black_white_dark)
+ * rgb와 (0.299, 0.587, 0.114)의 내적으로 밝기를 구하고 brightness를 곱한다.
+ */
+public class BlackWhiteFilter extends PointFilter {
+    public static final float BRIGHTNESS_DEFAULT = 1.0f;
+    public static final float BRIGHTNESS_BRIGHT = 1.3f;
+    public static final float BRIGHTNESS_DARK = 0.3f;
+
+    private final float brightness;
+
+    public BlackWhiteFilter() {
+        this(BRIGHTNESS_DEFAULT);
+    }
+
+    public BlackWhiteFilter(float brightness) {
+        this.brightness = brightness;
+    }
+
+    @Override
+    public int filterPixel(int argb) {
+        float gray = (red(argb) * 0.299f + green(argb) * 0.587f + blue(argb) * 0.114f) * brightness;
+        return toArgb(alpha(argb), gray, gray, gray);
+    }
+}
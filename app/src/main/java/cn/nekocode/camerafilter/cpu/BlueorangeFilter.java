@@ -0,0 +1,24 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * 파랑-주황 색조 필터 (blue_orange)
+ * 밝기에 따라 어두운 곳은 파랑, 밝은 곳은 주황으로 섞는다.
+ */
+public class BlueorangeFilter extends PointFilter {
+
+    @Override
+    public int filterPixel(int argb) {
+        float shade = (red(argb) + green(argb) + blue(argb)) * 0.333333f;
+        float blueWeight = 1.0f - 2.0f * Math.abs(shade - 0.5f);
+        float t = 1.0f - shade;
+
+        return toArgb(1.0f,
+                mix(0.1f * blueWeight, 1.06f, t),
+                mix(0.36f * blueWeight, 0.8f, t),
+                mix(0.8f * blueWeight, 0.55f, t));
+    }
+
+    private static float mix(float x, float y, float a) {
+        return x + (y - x) * a;
+    }
+}
@@ -0,0 +1,272 @@
+package cn.nekocode.camerafilter.cpu;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * 3D 색 LUT (size x size x size)
+ * 2D texture 한 장에 올릴 수 있게 blue 단면들을 가로로 이어 붙인 size^2 x size 띠(strip)로 보관한다.
+ * strip의 (x, y) = (blue * size + red, green)이며, GL에 아래쪽 줄부터 올라가도록 배열도 y = 0(green = 0)부터이다.
+ * filterPixel은 filter/LutFilter의 lut shader와 같이 각 blue 단면 안에서 bilinear, 두 단면 사이에서 선형 보간한다.
+ * PointFilter를 구워 만들거나(bake) .cube 파일에서 읽을 수 있다.
+ */
+public final class ColorLut extends PointFilter {
+    public static final int DEFAULT_SIZE = 33;
+    // The strip is size^2 texels wide, 45 keeps it within the 2048 texture size of every Android GPU
+    public static final int MAX_SIZE = 45;
+    // Larger .cube files (65 is common) are resampled to DEFAULT_SIZE
+    public static final int MAX_CUBE_SIZE = 65;
+
+    private final int size;
+    private final int[] strip;
+
+    /*
+        strip: getStripWidth() x getStripHeight()의 ARGB 배열
+     */
+    public ColorLut(int size, int[] strip) {
+        if (size < 2 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("LUT size must be 2.." + MAX_SIZE);
+        }
+        if (strip.length != size * size * size) {
+            throw new IllegalArgumentException("LUT strip must have " + size * size * size + " texels");
+        }
+        this.size = size;
+        this.strip = strip;
+    }
+
+    /*
+        point-wise 필터들을 순서대로 적용한 결과를 size 단계 격자에서 구워 LUT로 만든다.
+        격자점의 색은 8 bit로 반올림하여 필터에 넣으므로 필터 하나를 직접 적용할 때와 입력이 0.5/255 안에서 같다.
+     */
+    public static ColorLut bake(int size, PointFilter... filters) {
+        if (size < 2 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("LUT size must be 2.." + MAX_SIZE);
+        }
+        int[] strip = new int[size * size * size];
+        float step = 1f / (size - 1);
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    int argb = toArgb(1f, r * step, g * step, b * step);
+                    for (PointFilter filter : filters) {
+                        argb = filter.filterPixel(argb);
+                    }
+                    strip[g * size * size + b * size + r] = argb | 0xff000000;
+                }
+            }
+        }
+        return new ColorLut(size, strip);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getStripWidth() {
+        return size * size;
+    }
+
+    public int getStripHeight() {
+        return size;
+    }
+
+    /*
+        아래쪽 줄(green = 0)부터의 ARGB strip, 바꾸지 않아야 한다.
+     */
+    public int[] getStrip() {
+        return strip;
+    }
+
+    @Override
+    public int filterPixel(int argb) {
+        float scale = size - 1;
+        float r = red(argb) * scale;
+        float g = green(argb) * scale;
+        float b = blue(argb) * scale;
+
+        int r0 = Math.min((int) r, size - 2);
+        int g0 = Math.min((int) g, size - 2);
+        int b0 = (int) b;
+        int b1 = Math.min(b0 + 1, size - 1);
+        float fr = r - r0;
+        float fg = g - g0;
+        float fb = b - b0;
+
+        // Two bilinear slice lookups like the shader, each rounded as a texture fetch is
+        int low = sampleSlice(b0, r0, g0, fr, fg);
+        int high = sampleSlice(b1, r0, g0, fr, fg);
+        return toArgb(alpha(argb),
+                mix(red(low), red(high), fb),
+                mix(green(low), green(high), fb),
+                mix(blue(low), blue(high), fb));
+    }
+
+    private int sampleSlice(int b, int r0, int g0, float fr, float fg) {
+        int row0 = g0 * size * size + b * size + r0;
+        int row1 = row0 + size * size;
+        int c00 = strip[row0];
+        int c10 = strip[row0 + 1];
+        int c01 = strip[row1];
+        int c11 = strip[row1 + 1];
+        return 0xff000000
+                | lerp(c00, c10, c01, c11, fr, fg, 16) << 16
+                | lerp(c00, c10, c01, c11, fr, fg, 8) << 8
+                | lerp(c00, c10, c01, c11, fr, fg, 0);
+    }
+
+    private static int lerp(int c00, int c10, int c01, int c11, float fx, float fy, int shift) {
+        float a = (c00 >>> shift) & 0xff;
+        float b = (c10 >>> shift) & 0xff;
+        float c = (c01 >>> shift) & 0xff;
+        float d = (c11 >>> shift) & 0xff;
+        float top = a + (b - a) * fx;
+        float bottom = c + (d - c) * fx;
+        return (int) (top + (bottom - top) * fy + 0.5f);
+    }
+
+    private static float mix(float x, float y, float a) {
+        return x + (y - x) * a;
+    }
+
+    /*
+        .cube (Adobe/Resolve 3D LUT) 읽기
+        LUT_3D_SIZE와 red가 가장 빨리 바뀌는 순서의 "r g b" 줄들만 사용하며, 값은 0~1로 잘라 8 bit로 저장한다.
+        MAX_SIZE보다 큰 LUT는 DEFAULT_SIZE로 다시 샘플링하고, 1D LUT와 0~1이 아닌 DOMAIN은 IOException으로 거부한다.
+     */
+    public static ColorLut readCube(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        int size = 0;
+        float[] table = null;
+        int count = 0;
+        int lineNumber = 0;
+
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("TITLE")) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+");
+            if (fields[0].equals("LUT_3D_SIZE")) {
+                size = parseInt(fields, lineNumber);
+                if (size < 2 || size > MAX_CUBE_SIZE) {
+                    throw new IOException("Line " + lineNumber + ": LUT size " + size + " is not in 2.." + MAX_CUBE_SIZE);
+                }
+                table = new float[size * size * size * 3];
+            } else if (fields[0].equals("LUT_1D_SIZE")) {
+                throw new IOException("Line " + lineNumber + ": 1D LUTs are not supported");
+            } else if (fields[0].equals("DOMAIN_MIN") || fields[0].equals("DOMAIN_MAX")) {
+                float expected = fields[0].equals("DOMAIN_MIN") ? 0f : 1f;
+                float[] domain = parseColor(fields, lineNumber, 1);
+                if (domain[0] != expected || domain[1] != expected || domain[2] != expected) {
+                    throw new IOException("Line " + lineNumber + ": only the 0..1 domain is supported");
+                }
+            } else {
+                if (table == null) {
+                    throw new IOException("Line " + lineNumber + ": LUT_3D_SIZE must come before the table");
+                }
+                if (count * 3 >= table.length) {
+                    throw new IOException("Line " + lineNumber + ": more than " + table.length / 3 + " entries");
+                }
+                float[] color = parseColor(fields, lineNumber, 0);
+                System.arraycopy(color, 0, table, count * 3, 3);
+                count++;
+            }
+        }
+
+        if (table == null) {
+            throw new IOException("No LUT_3D_SIZE");
+        }
+        if (count * 3 != table.length) {
+            throw new IOException("Expected " + table.length / 3 + " entries, found " + count);
+        }
+        return fromTable(table, size, size > MAX_SIZE ? DEFAULT_SIZE : size);
+    }
+
+    /*
+        .cube 순서(red가 가장 빨리 바뀜)의 float rgb 표를 lutSize 격자의 LUT로 만든다.
+        크기가 같으면 그대로 옮기고, 다르면 표를 삼선형 보간하여 읽는다.
+     */
+    private static ColorLut fromTable(float[] table, int tableSize, int lutSize) {
+        int[] strip = new int[lutSize * lutSize * lutSize];
+        float[] color = new float[3];
+        float scale = (float) (tableSize - 1) / (lutSize - 1);
+        for (int b = 0; b < lutSize; b++) {
+            for (int g = 0; g < lutSize; g++) {
+                for (int r = 0; r < lutSize; r++) {
+                    sampleTable(table, tableSize, r * scale, g * scale, b * scale, color);
+                    strip[g * lutSize * lutSize + b * lutSize + r] = toArgb(1f, color[0], color[1], color[2]);
+                }
+            }
+        }
+        return new ColorLut(lutSize, strip);
+    }
+
+    private static void sampleTable(float[] table, int size, float r, float g, float b, float[] out) {
+        int r0 = Math.min((int) r, size - 2);
+        int g0 = Math.min((int) g, size - 2);
+        int b0 = Math.min((int) b, size - 2);
+        float fr = r - r0;
+        float fg = g - g0;
+        float fb = b - b0;
+        for (int c = 0; c < 3; c++) {
+            float value = 0f;
+            for (int corner = 0; corner < 8; corner++) {
+                int dr = corner & 1;
+                int dg = (corner >> 1) & 1;
+                int db = corner >> 2;
+                float weight = (dr == 1 ? fr : 1f - fr) * (dg == 1 ? fg : 1f - fg) * (db == 1 ? fb : 1f - fb);
+                value += weight * table[(((b0 + db) * size + g0 + dg) * size + r0 + dr) * 3 + c];
+            }
+            out[c] = value;
+        }
+    }
+
+    /*
+        .cube로 쓰기 (0~1 범위, red가 가장 빨리 바뀌는 순서)
+     */
+    public void writeCube(Writer writer, String title) throws IOException {
+        writer.write("TITLE \"" + title + "\"\n");
+        writer.write("LUT_3D_SIZE " + size + "\n");
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    int argb = strip[g * size * size + b * size + r];
+                    writer.write(String.format(Locale.US, "%.6f %.6f %.6f\n", red(argb), green(argb), blue(argb)));
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private static int parseInt(String[] fields, int lineNumber) throws IOException {
+        if (fields.length != 2) {
+            throw new IOException("Line " + lineNumber + ": expected one value");
+        }
+        try {
+            return Integer.parseInt(fields[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+        }
+    }
+
+    private static float[] parseColor(String[] fields, int lineNumber, int offset) throws IOException {
+        if (fields.length != offset + 3) {
+            throw new IOException("Line " + lineNumber + ": expected three values");
+        }
+        float[] color = new float[3];
+        try {
+            for (int i = 0; i < 3; i++) {
+                color[i] = Float.parseFloat(fields[offset + i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+        }
+        return color;
+    }
+}
@@ -0,0 +1,25 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * 대비 필터 (contrast)
+ * 0~1의 normalizedContrast를 0.2~4.0 배율로 바꾸어 0.5를 중심으로 늘린다.
+ */
+public class ContrastFilter extends PointFilter {
+    private final float contrast;
+
+    public ContrastFilter() {
+        this(1.0f);
+    }
+
+    public ContrastFilter(float normalizedContrast) {
+        contrast = normalizedContrast * (4.0f - 0.2f) + 0.2f;
+    }
+
+    @Override
+    public int filterPixel(int argb) {
+        return toArgb(1.0f,
+                (red(argb) - 0.5f) * contrast + 0.5f,
+                (green(argb) - 0.5f) * contrast + 0.5f,
+                (blue(argb) - 0.5f) * contrast + 0.5f);
+    }
+}
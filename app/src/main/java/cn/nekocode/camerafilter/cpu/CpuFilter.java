@@ -0,0 +1,140 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * GPU 없이 이미지를 처리하기 위한 CPU 필터의 상위 클래스
+ * res/raw의 shader를 Java로 옮긴 것이며, ARGB int 배열(위쪽 줄부터)을 입력으로 받는다.
+ * shader와 같은 결과를 내도록 좌표는 GL과 같이 아래쪽 줄을 y = 0으로 계산한다.
+ * filterTile은 여러 스레드에서 서로 다른 영역으로 동시에 호출되므로 상태를 바꾸지 않아야 한다.
+ * 큰 이미지는 일부(window)만 메모리에 올려 filterWindow로 처리할 수 있으며, 좌표는 항상 이미지 전체 기준이다.
+ */
+public abstract class CpuFilter {
+    private static final float INV_255 = 1.0f / 255.0f;
+
+    /*
+        [startX, endX) x [startY, endY) 영역을 src에서 읽어 dst에 쓴다.
+        src, dst가 이미지 전체인 경우
+     */
+    public void filterTile(int[] src, int[] dst, int width, int height,
+                           int startX, int startY, int endX, int endY) {
+        filterWindow(src, dst, width, height, 0, 0, width, height, startX, startY, endX, endY);
+    }
+
+    /*
+        src, dst가 이미지의 [windowX, windowX + windowWidth) x [windowY, windowY + windowHeight) 부분만 담고 있는 경우
+        이미지 좌표 (x, y)의 픽셀은 (y - windowY) * windowWidth + (x - windowX)에 있다.
+        처리 영역은 window 안이어야 하고, 영역에서 getHalo만큼 떨어진 픽셀까지 window에 있어야 전체 이미지와 같은 결과가 나온다.
+        inner loop에서 객체를 만들지 않아야 한다.
+     */
+    public abstract void filterWindow(int[] src, int[] dst, int imageWidth, int imageHeight,
+                                      int windowX, int windowY, int windowWidth, int windowHeight,
+                                      int startX, int startY, int endX, int endY);
+
+    /*
+        한 픽셀을 계산할 때 읽는 이웃 픽셀까지의 최대 거리(픽셀)
+        이미지 크기에 따라 샘플 위치가 달라지는 필터가 있으므로 이미지 크기를 받는다.
+     */
+    public int getHalo(int imageWidth, int imageHeight) {
+        return 0;
+    }
+
+    /*
+        현재 픽셀만 읽는 필터인지 여부
+        true이면 src와 dst가 같은 배열이어도 된다.
+     */
+    public boolean isPointWise() {
+        return false;
+    }
+
+    static float alpha(int argb) {
+        return (argb >>> 24) * INV_255;
+    }
+
+    static float red(int argb) {
+        return ((argb >> 16) & 0xff) * INV_255;
+    }
+
+    static float green(int argb) {
+        return ((argb >> 8) & 0xff) * INV_255;
+    }
+
+    static float blue(int argb) {
+        return (argb & 0xff) * INV_255;
+    }
+
+    /*
+        0~1 범위의 색을 RGBA8 framebuffer에 쓸 때와 같이 잘라내고 반올림하여 ARGB로 합친다.
+     */
+    static int toArgb(float a, float r, float g, float b) {
+        return (toByte(a) << 24) | (toByte(r) << 16) | (toByte(g) << 8) | toByte(b);
+    }
+
+    static int toByte(float value) {
+        if (value <= 0.0f) {
+            return 0;
+        }
+        if (value >= 1.0f) {
+            return 255;
+        }
+        return (int) (value * 255.0f + 0.5f);
+    }
+
+    /*
+        GL의 texture2D(GL_LINEAR, GL_CLAMP_TO_EDGE)와 같은 bilinear 샘플링
+        u, v는 0~1의 texture 좌표이며 v는 아래쪽이 0이다.
+        채널별 결과를 따로 반환하지 않도록 반올림된 ARGB로 돌려준다.
+     */
+    static int sampleBilinear(int[] src, int width, int height, float u, float v) {
+        return sampleBilinear(src, width, height, 0, 0, width, height, u, v);
+    }
+
+    /*
+        src가 이미지의 일부(window)만 담고 있을 때의 bilinear 샘플링
+        window 밖의 픽셀은 window 가장자리 값으로 대신하므로 halo가 충분해야 한다.
+     */
+    static int sampleBilinear(int[] src, int imageWidth, int imageHeight,
+                              int windowX, int windowY, int windowWidth, int windowHeight, float u, float v) {
+        float x = u * imageWidth - 0.5f;
+        float y = v * imageHeight - 0.5f;
+
+        int x0 = (int) Math.floor(x);
+        int y0 = (int) Math.floor(y);
+        float fx = x - x0;
+        float fy = y - y0;
+
+        int minX = windowX, maxX = windowX + windowWidth - 1;
+        int minY = windowY, maxY = windowY + windowHeight - 1;
+        int xa = clamp(clamp(x0, 0, imageWidth - 1), minX, maxX) - windowX;
+        int xb = clamp(clamp(x0 + 1, 0, imageWidth - 1), minX, maxX) - windowX;
+        // GL rows go bottom-up, the array top-down
+        int rowA = (clamp(imageHeight - 1 - clamp(y0, 0, imageHeight - 1), minY, maxY) - windowY) * windowWidth;
+        int rowB = (clamp(imageHeight - 1 - clamp(y0 + 1, 0, imageHeight - 1), minY, maxY) - windowY) * windowWidth;
+
+        int c00 = src[rowA + xa];
+        int c10 = src[rowA + xb];
+        int c01 = src[rowB + xa];
+        int c11 = src[rowB + xb];
+
+        return lerpChannel(c00, c10, c01, c11, fx, fy, 24) << 24
+                | lerpChannel(c00, c10, c01, c11, fx, fy, 16) << 16
+                | lerpChannel(c00, c10, c01, c11, fx, fy, 8) << 8
+                | lerpChannel(c00, c10, c01, c11, fx, fy, 0);
+    }
+
+    private static int lerpChannel(int c00, int c10, int c01, int c11, float fx, float fy, int shift) {
+        float a = (c00 >>> shift) & 0xff;
+        float b = (c10 >>> shift) & 0xff;
+        float c = (c01 >>> shift) & 0xff;
+        float d = (c11 >>> shift) & 0xff;
+        float top = a + (b - a) * fx;
+        float bottom = c + (d - c) * fx;
+        return (int) (top + (bottom - top) * fy + 0.5f);
+    }
+
+    static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    static float clamp(float value, float min, float max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,138 @@
+package cn.nekocode.camerafilter.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * CpuFilter를 이미지 전체에 적용하는 엔진
+ * 이미지를 타일로 나누어 ForkJoinPool에서 병렬로 처리하므로 코어 수에 따라 처리량이 늘어난다.
+ * Android API를 사용하지 않으므로 JVM 서버나 단위 테스트에서 바로 쓸 수 있다.
+ * (ForkJoinPool은 Android API 21부터 사용 가능)
+ */
+public class CpuFilterEngine {
+    public static final int DEFAULT_TILE_WIDTH = 256;
+    public static final int DEFAULT_TILE_HEIGHT = 64;
+
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final int tileWidth, tileHeight;
+
+    /*
+        CPU 코어 수만큼의 스레드 사용
+     */
+    public CpuFilterEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CpuFilterEngine(int parallelism) {
+        this(new ForkJoinPool(parallelism), true, DEFAULT_TILE_WIDTH, DEFAULT_TILE_HEIGHT);
+    }
+
+    /*
+        이미 있는 pool을 공유하는 경우, shutdown은 pool을 닫지 않는다.
+     */
+    public CpuFilterEngine(ForkJoinPool pool, int tileWidth, int tileHeight) {
+        this(pool, false, tileWidth, tileHeight);
+    }
+
+    private CpuFilterEngine(ForkJoinPool pool, boolean ownsPool, int tileWidth, int tileHeight) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /*
+        src를 필터링하여 dst에 쓴다. 끝날 때까지 호출한 스레드를 막는다.
+        point-wise가 아닌 필터는 이웃 픽셀을 읽으므로 src와 dst가 달라야 한다.
+     */
+    public void apply(CpuFilter filter, int[] src, int[] dst, int width, int height) {
+        if (src.length < width * height || dst.length < width * height) {
+            throw new IllegalArgumentException("Pixel arrays are smaller than " + width + "x" + height);
+        }
+        if (src == dst && !filter.isPointWise()) {
+            throw new IllegalArgumentException(filter.getClass().getSimpleName() + " can't run in place");
+        }
+
+        int tilesX = (width + tileWidth - 1) / tileWidth;
+        int tilesY = (height + tileHeight - 1) / tileHeight;
+        pool.invoke(new TileTask(filter, src, dst, width, height, tilesX, 0, tilesX * tilesY));
+    }
+
+    /*
+        여러 필터를 순서대로 적용
+        scratch는 중간 결과용이며 src, dst와 크기가 같아야 한다. dst와 scratch 외의 배열은 바뀌지 않는다.
+     */
+    public void applyAll(CpuFilter[] filters, int[] src, int[] dst, int[] scratch, int width, int height) {
+        if (filters.length == 0) {
+            System.arraycopy(src, 0, dst, 0, width * height);
+            return;
+        }
+
+        // Alternate so the last filter lands in dst
+        int[] input = src;
+        for (int i = 0; i < filters.length; i++) {
+            int[] output = ((filters.length - 1 - i) % 2 == 0) ? dst : scratch;
+            if (output == input) {
+                output = (output == dst) ? scratch : dst;
+            }
+            apply(filters[i], input, output, width, height);
+            input = output;
+        }
+        if (input != dst) {
+            System.arraycopy(input, 0, dst, 0, width * height);
+        }
+    }
+
+    public void shutdown() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /*
+        [first, last) 범위의 타일을 반으로 나누어 처리
+     */
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CpuFilter filter;
+        private final int[] src, dst;
+        private final int width, height, tilesX;
+        private final int first, last;
+
+        TileTask(CpuFilter filter, int[] src, int[] dst, int width, int height, int tilesX,
+                 int first, int last) {
+            this.filter = filter;
+            this.src = src;
+            this.dst = dst;
+            this.width = width;
+            this.height = height;
+            this.tilesX = tilesX;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                invokeAll(new TileTask(filter, src, dst, width, height, tilesX, first, middle),
+                        new TileTask(filter, src, dst, width, height, tilesX, middle, last));
+                return;
+            }
+
+            int startX = (first % tilesX) * tileWidth;
+            int startY = (first / tilesX) * tileHeight;
+            filter.filterTile(src, dst, width, height, startX, startY,
+                    Math.min(startX + tileWidth, width), Math.min(startY + tileHeight, height));
+        }
+    }
+}
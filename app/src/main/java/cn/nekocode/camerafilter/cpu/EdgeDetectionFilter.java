@@ -0,0 +1,73 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * 경계 검출 필터 (edge_detection)
+ * GPU와 같이 밝기 평면에 SeparableKernel.SOBEL을 적용하여 8 bit로 저장된 gx, gy를 구하고
+ * 그 크기가 threshold 이상이면 흰색, 아니면 검은색으로 칠한다.
+ */
+public class EdgeDetectionFilter extends CpuFilter {
+    // Same as c_threshold in edge_detection.fsh
+    private static final float DEFAULT_THRESHOLD = 0.14f;
+
+    private final float threshold;
+
+    public EdgeDetectionFilter() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public EdgeDetectionFilter(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /*
+        처리 영역에서 kernel 반지름만큼 넓힌 부분의 밝기와 gradient를 구한다.
+        넓힌 부분의 가장자리는 window 가장자리(halo 또는 이미지 가장자리)이거나 처리 영역에서 반지름 이상 떨어져 있으므로
+        그 밖을 가장자리 값으로 채워도 전체 이미지와 같은 결과가 나온다.
+     */
+    @Override
+    public void filterWindow(int[] src, int[] dst, int imageWidth, int imageHeight,
+                             int windowX, int windowY, int windowWidth, int windowHeight,
+                             int startX, int startY, int endX, int endY) {
+        final int white = 0xffffffff;
+        final int black = 0xff000000;
+        final float thresholdSquared = threshold * threshold;
+
+        SeparableKernel kernel = SeparableKernel.SOBEL;
+        int left = Math.max(windowX, startX - kernel.radius);
+        int top = Math.max(windowY, startY - kernel.radius);
+        int right = Math.min(windowX + windowWidth, endX + kernel.radius);
+        int bottom = Math.min(windowY + windowHeight, endY + kernel.radius);
+        int regionWidth = right - left;
+        int regionHeight = bottom - top;
+
+        int[] luma = new int[regionWidth * regionHeight];
+        for (int y = top; y < bottom; y++) {
+            int row = (y - windowY) * windowWidth - windowX;
+            int regionRow = (y - top) * regionWidth - left;
+            for (int x = left; x < right; x++) {
+                int v = toByte(SeparableKernel.luminance(src[row + x]));
+                luma[regionRow + x] = 0xff000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+        int[] gradient = kernel.apply(luma, regionWidth, regionHeight);
+
+        for (int y = startY; y < endY; y++) {
+            int row = (y - windowY) * windowWidth - windowX;
+            int regionRow = (y - top) * regionWidth - left;
+            for (int x = startX; x < endX; x++) {
+                int texel = gradient[regionRow + x];
+                float gx = kernel.vertical.decodeR(texel);
+                float gy = kernel.vertical.decodeG(texel);
+                dst[row + x] = (gx * gx + gy * gy >= thresholdSquared) ? white : black;
+            }
+        }
+    }
+
+    /*
+        Sobel kernel의 반지름
+     */
+    @Override
+    public int getHalo(int imageWidth, int imageHeight) {
+        return SeparableKernel.SOBEL.radius;
+    }
+}
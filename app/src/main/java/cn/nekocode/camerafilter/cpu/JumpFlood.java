@@ -0,0 +1,262 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * Jump Flooding Algorithm(JFA) 기준 구현
+ * JFAVoronoiFilter의 shader(voronoi_jfa_init, voronoi_jfa_step)와 같은 단계 순서, 같은 이웃 순서, 같은 거리 비교를 쓰므로
+ * GPU 결과와 그대로 비교할 수 있고, bruteForce의 정확한 최근접 seed와 비교하여 JFA 오차를 잴 수 있다.
+ * field는 픽셀마다 가장 가까운 seed의 픽셀 index(y * width + x)이며, 아직 모르면 EMPTY이다.
+ */
+public final class JumpFlood {
+    public static final int EMPTY = -1;
+
+    // Passes per frame in the throughput mode, a cycling coarse jump and a 1 pixel jump
+    public static final int REFINE_PASSES = 2;
+    // How far a seed may move between frames and still keep its cell in the throughput mode
+    public static final int TRACK_RADIUS = 1;
+
+    private JumpFlood() {
+    }
+
+    /*
+        첫 jump 거리 (2의 거듭제곱)
+        큰 변보다 작은 가장 큰 2의 거듭제곱이며, maxSteps 단계만 돌도록 2^(maxSteps - 1)을 넘지 않는다.
+     */
+    public static int initialStep(int width, int height, int maxSteps) {
+        int size = Math.max(width, height);
+        int step = size > 1 ? Integer.highestOneBit(size - 1) : 1;
+        return Math.min(step, 1 << (maxSteps - 1));
+    }
+
+    /*
+        initialStep부터 1까지 반으로 줄여가는 단계 수
+     */
+    public static int stepCount(int width, int height, int maxSteps) {
+        return Integer.numberOfTrailingZeros(initialStep(width, height, maxSteps)) + 1;
+    }
+
+    /*
+        throughput 모드에서 frame번째 프레임의 pass번째 jump 거리
+        첫 pass는 프레임마다 initialStep부터 1까지 돌아가며 먼 seed를 전파하고, 두 번째 pass는 항상 1로 경계를 다듬는다.
+     */
+    public static int refineStepWidth(int pass, int frame, int width, int height, int maxSteps) {
+        if (pass > 0) {
+            return 1;
+        }
+        return initialStep(width, height, maxSteps) >> (frame % stepCount(width, height, maxSteps));
+    }
+
+    /*
+        seed 픽셀은 자기 자신으로, 나머지는 EMPTY로 초기화
+        previous가 있으면(throughput 모드) 이전 seed를 이어받는다. 이전 seed가 없어졌으면 그 주변 TRACK_RADIUS 안의
+        현재 seed 중 가장 가까운 것으로 바꾸어, 조금씩 움직이는 seed는 셀을 처음부터 다시 채우지 않게 한다.
+     */
+    public static void init(boolean[] seeds, int[] previous, int[] dst, int width, int height) {
+        for (int i = 0; i < dst.length; i++) {
+            if (seeds[i]) {
+                dst[i] = i;
+            } else if (previous != null && previous[i] != EMPTY) {
+                dst[i] = track(seeds, previous[i], i % width, i / width, width, height);
+            } else {
+                dst[i] = EMPTY;
+            }
+        }
+    }
+
+    private static int track(boolean[] seeds, int seed, int x, int y, int width, int height) {
+        if (seeds[seed]) {
+            return seed;
+        }
+        int seedX = seed % width;
+        int seedY = seed / width;
+        int best = EMPTY;
+        long bestDistance = Long.MAX_VALUE;
+        for (int dy = -TRACK_RADIUS; dy <= TRACK_RADIUS; dy++) {
+            int sy = seedY + dy;
+            if (sy < 0 || sy >= height) {
+                continue;
+            }
+            for (int dx = -TRACK_RADIUS; dx <= TRACK_RADIUS; dx++) {
+                int sx = seedX + dx;
+                if (sx < 0 || sx >= width || !seeds[sy * width + sx]) {
+                    continue;
+                }
+                long distance = distanceSquared(sy * width + sx, x, y, width);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = sy * width + sx;
+                }
+            }
+        }
+        return best;
+    }
+
+    /*
+        stepWidth 거리의 3x3 이웃 seed 중 가장 가까운 것을 고르는 한 단계
+        화면 밖 이웃은 건너뛰고, 거리가 같으면 먼저 본 이웃(위쪽 줄, 왼쪽)을 유지한다.
+     */
+    public static void step(int[] src, int[] dst, int width, int height, int stepWidth) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int best = EMPTY;
+                long bestDistance = Long.MAX_VALUE;
+                for (int dy = -1; dy <= 1; dy++) {
+                    int sy = y + dy * stepWidth;
+                    if (sy < 0 || sy >= height) {
+                        continue;
+                    }
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int sx = x + dx * stepWidth;
+                        if (sx < 0 || sx >= width) {
+                            continue;
+                        }
+                        int seed = src[sy * width + sx];
+                        if (seed == EMPTY) {
+                            continue;
+                        }
+                        long distance = distanceSquared(seed, x, y, width);
+                        if (distance < bestDistance) {
+                            bestDistance = distance;
+                            best = seed;
+                        }
+                    }
+                }
+                dst[y * width + x] = best;
+            }
+        }
+    }
+
+    /*
+        latency 모드: 한 번에 모든 단계를 돌린 field
+     */
+    public static int[] flood(boolean[] seeds, int width, int height, int maxSteps) {
+        int[] field = new int[width * height];
+        int[] scratch = new int[width * height];
+        init(seeds, null, field, width, height);
+        for (int stepWidth = initialStep(width, height, maxSteps); stepWidth >= 1; stepWidth >>= 1) {
+            step(field, scratch, width, height, stepWidth);
+            int[] swap = field;
+            field = scratch;
+            scratch = swap;
+        }
+        return field;
+    }
+
+    /*
+        throughput 모드의 한 프레임: previous를 현재 seeds로 정리한 뒤 REFINE_PASSES 단계만 돌린 field
+        previous가 null이면 seed만으로 시작한다.
+     */
+    public static int[] refine(boolean[] seeds, int[] previous, int width, int height, int maxSteps, int frame) {
+        int[] field = new int[width * height];
+        int[] scratch = new int[width * height];
+        init(seeds, previous, field, width, height);
+        for (int pass = 0; pass < REFINE_PASSES; pass++) {
+            step(field, scratch, width, height, refineStepWidth(pass, frame, width, height, maxSteps));
+            int[] swap = field;
+            field = scratch;
+            scratch = swap;
+        }
+        return field;
+    }
+
+    /*
+        정확한 최근접 seed (거리가 같으면 어느 쪽이든)
+        seed가 적으면 모든 seed와 비교하고, 많으면 픽셀 주위를 한 겹씩 넓혀가며 찾는다. 검증용이다.
+     */
+    public static int[] bruteForce(boolean[] seeds, int width, int height) {
+        int count = 0;
+        for (boolean seed : seeds) {
+            if (seed) {
+                count++;
+            }
+        }
+        int[] seedIndices = new int[count];
+        count = 0;
+        for (int i = 0; i < seeds.length; i++) {
+            if (seeds[i]) {
+                seedIndices[count++] = i;
+            }
+        }
+        // A ring search visits about width * height / count pixels
+        boolean searchRings = (long) count * count > (long) width * height;
+
+        int[] field = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                field[y * width + x] = searchRings
+                        ? nearestInRings(seeds, x, y, width, height)
+                        : nearestInList(seedIndices, x, y, width);
+            }
+        }
+        return field;
+    }
+
+    private static int nearestInList(int[] seedIndices, int x, int y, int width) {
+        int best = EMPTY;
+        long bestDistance = Long.MAX_VALUE;
+        for (int seed : seedIndices) {
+            long distance = distanceSquared(seed, x, y, width);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = seed;
+            }
+        }
+        return best;
+    }
+
+    /*
+        반지름 r인 정사각형 테두리를 차례로 검사
+        테두리의 픽셀은 모두 r 이상 떨어져 있으므로 r^2이 찾은 거리 이상이 되면 멈춘다.
+     */
+    private static int nearestInRings(boolean[] seeds, int x, int y, int width, int height) {
+        int best = EMPTY;
+        long bestDistance = Long.MAX_VALUE;
+        int maxRadius = Math.max(width, height);
+        for (int r = 0; r <= maxRadius && (long) r * r < bestDistance; r++) {
+            for (int sy = y - r; sy <= y + r; sy++) {
+                if (sy < 0 || sy >= height) {
+                    continue;
+                }
+                // Whole rows at the top and bottom edge, only the two ends in between
+                int stepX = (sy == y - r || sy == y + r) ? 1 : Math.max(1, 2 * r);
+                for (int sx = x - r; sx <= x + r; sx += stepX) {
+                    if (sx < 0 || sx >= width || !seeds[sy * width + sx]) {
+                        continue;
+                    }
+                    long distance = distanceSquared(sy * width + sx, x, y, width);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = sy * width + sx;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /*
+        field가 고른 seed까지의 거리가 exact(bruteForce 결과)의 거리보다 먼 픽셀 수
+        거리가 같은 다른 seed를 고른 것은 오차로 치지 않는다.
+     */
+    public static int countErrors(int[] field, int[] exact, int width, int height) {
+        int errors = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (field[i] == exact[i]) {
+                    continue;
+                }
+                if (field[i] == EMPTY || exact[i] == EMPTY
+                        || distanceSquared(field[i], x, y, width) != distanceSquared(exact[i], x, y, width)) {
+                    errors++;
+                }
+            }
+        }
+        return errors;
+    }
+
+    private static long distanceSquared(int seed, int x, int y, int width) {
+        long dx = seed % width - x;
+        long dy = seed / width - y;
+        return dx * dx + dy * dy;
+    }
+}
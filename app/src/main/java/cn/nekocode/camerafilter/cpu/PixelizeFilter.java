@@ -0,0 +1,55 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * 모자이크 필터 (pixelize)
+ * 가로를 cellCount개의 칸으로 나누고 각 칸의 모서리 색으로 칸 전체를 칠한다.
+ */
+public class PixelizeFilter extends CpuFilter {
+    private static final float DEFAULT_CELL_COUNT = 60.0f;
+
+    private final float cellCount;
+
+    public PixelizeFilter() {
+        this(DEFAULT_CELL_COUNT);
+    }
+
+    public PixelizeFilter(float cellCount) {
+        this.cellCount = cellCount;
+    }
+
+    @Override
+    public void filterWindow(int[] src, int[] dst, int imageWidth, int imageHeight,
+                             int windowX, int windowY, int windowWidth, int windowHeight,
+                             int startX, int startY, int endX, int endY) {
+        float cellSize = imageWidth / cellCount;
+
+        for (int y = startY; y < endY; y++) {
+            // fragCoord is the pixel center, shader adds another half pixel
+            float fragY = (imageHeight - 1 - y) + 0.5f;
+            float v = (float) Math.floor((fragY + 0.5f) / cellSize) * cellSize / imageHeight;
+            int row = (y - windowY) * windowWidth - windowX;
+
+            // A whole cell shares one sample, only resample when the cell changes
+            float lastU = Float.NaN;
+            int color = 0;
+            for (int x = startX; x < endX; x++) {
+                float fragX = x + 0.5f;
+                float u = (float) Math.floor((fragX + 0.5f) / cellSize) * cellSize / imageWidth;
+                if (u != lastU) {
+                    lastU = u;
+                    color = sampleBilinear(src, imageWidth, imageHeight,
+                            windowX, windowY, windowWidth, windowHeight, u, v);
+                }
+                dst[row + x] = color;
+            }
+        }
+    }
+
+    /*
+        칸의 모서리는 현재 픽셀에서 최대 한 칸 떨어져 있다.
+     */
+    @Override
+    public int getHalo(int imageWidth, int imageHeight) {
+        return (int) Math.ceil(imageWidth / cellCount) + 2;
+    }
+}
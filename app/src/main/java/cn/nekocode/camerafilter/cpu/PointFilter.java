@@ -0,0 +1,30 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * 현재 픽셀의 색만으로 결과가 정해지는 필터
+ * 하위 클래스는 filterPixel만 구현하면 된다.
+ */
+public abstract class PointFilter extends CpuFilter {
+
+    /*
+        ARGB 색 하나를 변환
+     */
+    public abstract int filterPixel(int argb);
+
+    @Override
+    public void filterWindow(int[] src, int[] dst, int imageWidth, int imageHeight,
+                             int windowX, int windowY, int windowWidth, int windowHeight,
+                             int startX, int startY, int endX, int endY) {
+        for (int y = startY; y < endY; y++) {
+            int row = (y - windowY) * windowWidth - windowX;
+            for (int i = row + startX, end = row + endX; i < end; i++) {
+                dst[i] = filterPixel(src[i]);
+            }
+        }
+    }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+}
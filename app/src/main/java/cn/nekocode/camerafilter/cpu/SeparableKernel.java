@@ -0,0 +1,186 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * 가로, 세로 두 번의 1D pass로 나눈 (2r+1)x(2r+1) 이웃 연산
+ * 밝기(luminance) 평면을 입력으로 각 pass가 r, g 채널에 서로 다른 1D 가중치를 곱해 더하고,
+ * RGBA8 texture에 담을 수 있게 scale, bias를 적용하여 0~255로 반올림해 저장한다.
+ * GPU(filter/NeighborhoodKernel)와 같은 값을 쓰며, 여기의 메소드들은 8 bit 반올림까지 GPU와 같게 계산하는 기준 구현이다.
+ * 평면은 위쪽 줄부터의 ARGB int 배열이고, 화면 밖은 가장자리 픽셀로 채운다(CLAMP_TO_EDGE).
+ */
+public final class SeparableKernel {
+    public static final int MAX_RADIUS = 4;
+
+    public static final float LUMA_R = 0.2126f;
+    public static final float LUMA_G = 0.7152f;
+    public static final float LUMA_B = 0.0722f;
+
+    /*
+        Sobel
+        가로 pass는 밝기의 가로 차분(r)과 [1 2 1] 평활(g)을, 세로 pass는 이를 gx(r), gy(g)로 만든다.
+        gx, gy는 +-2에서 잘린다. (경계 한 픽셀의 최대값은 4이지만 사용하는 필터들은 그 전에 포화된다)
+        gy는 GL 좌표계 기준(위쪽이 +)이다.
+     */
+    public static final SeparableKernel SOBEL = new SeparableKernel(1,
+            new Pass(new float[]{-1f, 0f, 1f}, new float[]{1f, 2f, 1f}, 0.5f, 0.25f, 0.5f, 0f),
+            new Pass(new float[]{1f, 2f, 1f}, new float[]{-1f, 0f, 1f}, 0.25f, 0.25f, 0.5f, 0.5f));
+
+    /**
+     * 한 방향의 1D pass
+     * 저장 값은 sum * scale + bias이며, 다음 pass는 (저장 값 - bias) / scale로 되돌려 읽는다.
+     */
+    public static final class Pass {
+        public final float[] weightsR;
+        public final float[] weightsG;
+        public final float scaleR, scaleG;
+        public final float biasR, biasG;
+
+        public Pass(float[] weightsR, float[] weightsG, float scaleR, float scaleG, float biasR, float biasG) {
+            this.weightsR = weightsR;
+            this.weightsG = weightsG;
+            this.scaleR = scaleR;
+            this.scaleG = scaleG;
+            this.biasR = biasR;
+            this.biasG = biasG;
+        }
+
+        public float decodeR(int argb) {
+            return (CpuFilter.red(argb) - biasR) / scaleR;
+        }
+
+        public float decodeG(int argb) {
+            return (CpuFilter.green(argb) - biasG) / scaleG;
+        }
+
+        int encode(float r, float g) {
+            return 0xff000000 | (CpuFilter.toByte(r * scaleR + biasR) << 16)
+                    | (CpuFilter.toByte(g * scaleG + biasG) << 8);
+        }
+    }
+
+    public final int radius;
+    public final Pass horizontal;
+    public final Pass vertical;
+
+    public SeparableKernel(int radius, Pass horizontal, Pass vertical) {
+        if (radius < 1 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("Kernel radius must be 1.." + MAX_RADIUS);
+        }
+        int taps = 2 * radius + 1;
+        if (horizontal.weightsR.length != taps || horizontal.weightsG.length != taps
+                || vertical.weightsR.length != taps || vertical.weightsG.length != taps) {
+            throw new IllegalArgumentException("Kernel weights must have " + taps + " taps");
+        }
+        this.radius = radius;
+        this.horizontal = horizontal;
+        this.vertical = vertical;
+    }
+
+    /*
+        밝기 pass의 크기
+        절반 크기이면 GPU처럼 각 변을 내림하여 반으로 줄인다.
+     */
+    public static int luminanceSize(int size, boolean halfResolution) {
+        return halfResolution ? Math.max(1, size / 2) : size;
+    }
+
+    /*
+        밝기 평면 (r = g = b = 밝기)
+        절반 크기이면 각 픽셀 중심 위치를 선형 보간하여 읽으므로 짝수 크기에서는 2x2 평균이 된다.
+     */
+    public static int[] luminance(int[] src, int width, int height, boolean halfResolution) {
+        int lumaWidth = luminanceSize(width, halfResolution);
+        int lumaHeight = luminanceSize(height, halfResolution);
+        int[] luma = new int[lumaWidth * lumaHeight];
+
+        for (int y = 0; y < lumaHeight; y++) {
+            for (int x = 0; x < lumaWidth; x++) {
+                float value;
+                if (halfResolution) {
+                    // Texel coordinates of this pixel's centre in the source
+                    float sx = (x + 0.5f) * width / lumaWidth - 0.5f;
+                    float sy = (y + 0.5f) * height / lumaHeight - 0.5f;
+                    value = bilinearLuminance(src, width, height, sx, sy);
+                } else {
+                    value = luminance(src[y * width + x]);
+                }
+                int v = CpuFilter.toByte(value);
+                luma[y * lumaWidth + x] = 0xff000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+        return luma;
+    }
+
+    /*
+        밝기 평면에 가로, 세로 pass를 차례로 적용한 결과 (r, g 채널)
+     */
+    public int[] apply(int[] luma, int width, int height) {
+        int taps = 2 * radius + 1;
+        int[] pass = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                float r = 0f, g = 0f;
+                for (int i = 0; i < taps; i++) {
+                    float value = CpuFilter.red(luma[row + CpuFilter.clamp(x + i - radius, 0, width - 1)]);
+                    r += horizontal.weightsR[i] * value;
+                    g += horizontal.weightsG[i] * value;
+                }
+                pass[row + x] = horizontal.encode(r, g);
+            }
+        }
+
+        int[] result = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float r = 0f, g = 0f;
+                for (int i = 0; i < taps; i++) {
+                    // Taps run bottom-up like GL texture coordinates
+                    int sy = CpuFilter.clamp(y - (i - radius), 0, height - 1);
+                    int texel = pass[sy * width + x];
+                    r += vertical.weightsR[i] * horizontal.decodeR(texel);
+                    g += vertical.weightsG[i] * horizontal.decodeG(texel);
+                }
+                result[y * width + x] = vertical.encode(r, g);
+            }
+        }
+        return result;
+    }
+
+    /*
+        분리하지 않고 (2r+1)x(2r+1) 이웃을 한 번에 더한 값 (반올림 없음)
+        분리형 결과가 8 bit 저장 오차 안에 있는지 확인할 때 쓴다. 반환 값은 {r, g}
+     */
+    public float[] applyDirect(int[] luma, int width, int height, int x, int y) {
+        int taps = 2 * radius + 1;
+        float r = 0f, g = 0f;
+        for (int j = 0; j < taps; j++) {
+            int sy = CpuFilter.clamp(y - (j - radius), 0, height - 1);
+            for (int i = 0; i < taps; i++) {
+                int sx = CpuFilter.clamp(x + i - radius, 0, width - 1);
+                float value = CpuFilter.red(luma[sy * width + sx]);
+                r += vertical.weightsR[j] * horizontal.weightsR[i] * value;
+                g += vertical.weightsG[j] * horizontal.weightsG[i] * value;
+            }
+        }
+        return new float[]{r, g};
+    }
+
+    static float luminance(int argb) {
+        return LUMA_R * CpuFilter.red(argb) + LUMA_G * CpuFilter.green(argb) + LUMA_B * CpuFilter.blue(argb);
+    }
+
+    private static float bilinearLuminance(int[] src, int width, int height, float x, float y) {
+        int x0 = (int) Math.floor(x);
+        int y0 = (int) Math.floor(y);
+        float fx = x - x0;
+        float fy = y - y0;
+        int xa = CpuFilter.clamp(x0, 0, width - 1);
+        int xb = CpuFilter.clamp(x0 + 1, 0, width - 1);
+        int ya = CpuFilter.clamp(y0, 0, height - 1);
+        int yb = CpuFilter.clamp(y0 + 1, 0, height - 1);
+
+        float top = luminance(src[ya * width + xa]) * (1f - fx) + luminance(src[ya * width + xb]) * fx;
+        float bottom = luminance(src[yb * width + xa]) * (1f - fx) + luminance(src[yb * width + xb]) * fx;
+        return top * (1f - fy) + bottom * fy;
+    }
+}
@@ -0,0 +1,92 @@
+package cn.nekocode.camerafilter.cpu;
+
+/**
+ * 타일 모자이크 필터 (tile_mosaic)
+ * 16픽셀 타일마다 3x3 샘플의 평균색으로 칠하고, 타일 경계는 색을 제곱하여 어둡게 한다.
+ */
+public class TileMosaicFilter extends CpuFilter {
+    private static final float MIN_TILE_SIZE = 1.0f;
+    private static final float MAX_TILE_SIZE = 32.0f;
+    private static final int SAMPLES = 3;
+    private static final float EDGE_OFFSET = 0.005f;
+    private static final float BORDER_SIZE = 1.0f;
+    private static final float DEFAULT_SIZE = 0.5f;
+
+    private final float tileSize;
+
+    public TileMosaicFilter() {
+        this(DEFAULT_SIZE);
+    }
+
+    /*
+        size: 0~1, 타일 크기를 MIN_TILE_SIZE~MAX_TILE_SIZE 사이에서 정한다.
+     */
+    public TileMosaicFilter(float size) {
+        float tile = MIN_TILE_SIZE + (float) Math.floor(size * (MAX_TILE_SIZE - MIN_TILE_SIZE));
+        tileSize = tile + tile % 2.0f;
+    }
+
+    @Override
+    public void filterWindow(int[] src, int[] dst, int imageWidth, int imageHeight,
+                             int windowX, int windowY, int windowWidth, int windowHeight,
+                             int startX, int startY, int endX, int endY) {
+        boolean hasBorder = tileSize >= BORDER_SIZE * 2.0f + 1.0f;
+
+        for (int y = startY; y < endY; y++) {
+            float fragY = (imageHeight - 1 - y) + 0.5f;
+            float tileY = (float) Math.floor(fragY / tileSize);
+            float pixelY = ((float) Math.floor(fragY - tileY * tileSize) + BORDER_SIZE) % tileSize;
+            int row = (y - windowY) * windowWidth - windowX;
+
+            // Every pixel of a tile averages the same samples, only recompute on a new tile
+            float lastTileX = Float.NaN;
+            float a = 0, r = 0, g = 0, b = 0;
+
+            for (int x = startX; x < endX; x++) {
+                float fragX = x + 0.5f;
+                float tileX = (float) Math.floor(fragX / tileSize);
+
+                if (tileX != lastTileX) {
+                    lastTileX = tileX;
+                    a = r = g = b = 0;
+                    for (int sy = 0; sy < SAMPLES; sy++) {
+                        float v = clamp((tileY + (sy + 0.5f) / SAMPLES) * tileSize / imageHeight,
+                                EDGE_OFFSET, 1.0f - EDGE_OFFSET);
+                        for (int sx = 0; sx < SAMPLES; sx++) {
+                            float u = clamp((tileX + (sx + 0.5f) / SAMPLES) * tileSize / imageWidth,
+                                    EDGE_OFFSET, 1.0f - EDGE_OFFSET);
+                            int color = sampleBilinear(src, imageWidth, imageHeight,
+                                    windowX, windowY, windowWidth, windowHeight, u, v);
+                            a += alpha(color);
+                            r += red(color);
+                            g += green(color);
+                            b += blue(color);
+                        }
+                    }
+                    float count = SAMPLES * SAMPLES;
+                    a /= count;
+                    r /= count;
+                    g /= count;
+                    b /= count;
+                }
+
+                float pixelX = ((float) Math.floor(fragX - tileX * tileSize) + BORDER_SIZE) % tileSize;
+                if (hasBorder && Math.min(pixelX, pixelY) <= BORDER_SIZE) {
+                    // fragColor *= pow(fragColor, 1.0)
+                    dst[row + x] = toArgb(a * a, r * r, g * g, b * b);
+                } else {
+                    dst[row + x] = toArgb(a, r, g, b);
+                }
+            }
+        }
+    }
+
+    /*
+        샘플은 같은 타일 안에 있지만, 이미지 가장자리에서는 EDGE_OFFSET만큼 안쪽으로 당겨진다.
+     */
+    @Override
+    public int getHalo(int imageWidth, int imageHeight) {
+        float edge = EDGE_OFFSET * Math.max(imageWidth, imageHeight);
+        return (int) Math.ceil(Math.max(tileSize, edge)) + 2;
+    }
+}
@@ -19,7 +19,6 @@ import android.content.Context;
 import android.opengl.GLES20;
 
 import cn.nekocode.camerafilter.R;
-import cn.nekocode.camerafilter.util.MyGLUtils;
 
 
 /**
@@ -30,21 +29,18 @@ import cn.nekocode.camerafilter.util.MyGLUtils;
  * 이 결과에 밝은 brightness를 곱해준다.
  */
 public class BlackWhiteBrightFilter extends CameraFilter {
-    private int program;
+    private ShaderProgram program;
 
     public BlackWhiteBrightFilter(Context context) {
         super(context);
 
         // Build shaders
-        program = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.black_white_bright);
+        program = buildProgram(context, R.raw.vertext, R.raw.black_white_bright);
     }
 
     @Override
     public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
-        setupShaderInputs(program,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{cameraTexId},
-                new int[][]{});
+        setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 }
@@ -19,7 +19,6 @@ import android.content.Context;
 import android.opengl.GLES20;
 
 import cn.nekocode.camerafilter.R;
-import cn.nekocode.camerafilter.util.MyGLUtils;
 
 
 /**
@@ -28,21 +27,18 @@ import cn.nekocode.camerafilter.util.MyGLUtils;
  * vec의 xyz값이 곧 rgb값이다.
  */
 public class BlackWhiteFilter extends CameraFilter {
-    private int program;
+    private ShaderProgram program;
 
     public BlackWhiteFilter(Context context) {
         super(context);
 
         // Build shaders
-        program = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.black_white);
+        program = buildProgram(context, R.raw.vertext, R.raw.black_white);
     }
 
     @Override
     public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
-        setupShaderInputs(program,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{cameraTexId},
-                new int[][]{});
+        setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 }
@@ -18,28 +18,24 @@ package cn.nekocode.camerafilter.filter;
 import android.content.Context;
 import android.opengl.GLES20;
 
-import cn.nekocode.camerafilter.util.MyGLUtils;
 import cn.nekocode.camerafilter.R;
 
 /**
  * @author nekocode (nekocode.cn@gmail.com)
  */
 public class BlueorangeFilter extends CameraFilter {
-    private int program;
+    private ShaderProgram program;
 
     public BlueorangeFilter(Context context) {
         super(context);
 
         // Build shaders
-        program = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.blue_orange);
+        program = buildProgram(context, R.raw.vertext, R.raw.blue_orange);
     }
 
     @Override
     public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
-        setupShaderInputs(program,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{cameraTexId},
-                new int[][]{});
+        setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 }
@@ -18,11 +18,16 @@ package cn.nekocode.camerafilter.filter;
 import android.content.Context;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
+import android.opengl.Matrix;
 import android.support.annotation.CallSuper;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import cn.nekocode.camerafilter.util.MyGLUtils;
 import cn.nekocode.camerafilter.R;
@@ -47,34 +52,77 @@ public abstract class CameraFilter {
             0.0f, 1.0f,
     };
     static FloatBuffer VERTEX_BUF, TEXTURE_COORD_BUF;
-    static int PROGRAM = 0;
+    // Copies the camera frame into CAMERA_RENDER_BUF for filters that can't sample it directly
+    static ShaderProgram PROGRAM;
+    // Stretches a texture over the bound output, used for upscaling and blits
+    static ShaderProgram COPY_PROGRAM;
+
+    public static final float MIN_RENDER_SCALE = 0.25f;
 
     private static final int BUF_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE8;
+    private static final int SCALED_BUF_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE7;
     private static RenderBuffer CAMERA_RENDER_BUF;
+    private static RenderBuffer SCALED_BUF;
+    // Where the final pass of the current draw goes, null means the window surface
+    private static RenderBuffer OUTPUT_BUF;
 
-    private static final float BACK_CAMERA_ROTATED_TEXTURE_COORDS[] = {
-            1.0f, 0.0f,
-            1.0f, 1.0f,
-            0.0f, 0.0f,
-            0.0f, 1.0f,
+    /*
+        화면 좌표 (u, v)를 카메라 센서 방향으로 돌리는 행렬 (column-major)
+        SurfaceTexture 변환 행렬의 일반적인 값인 세로 뒤집기를 미리 되돌려 두었으므로
+        그 행렬과 곱하면 예전의 회전된 texture 좌표와 같은 결과가 된다.
+     */
+    private static final float BACK_CAMERA_ROTATION[] = {
+            0.0f, 1.0f, 0.0f, 0.0f,
+            -1.0f, 0.0f, 0.0f, 0.0f,
+            0.0f, 0.0f, 1.0f, 0.0f,
+            1.0f, 0.0f, 0.0f, 1.0f,
     };
-    private static final float FRONT_CAMERA_ROTATED_TEXTURE_COORDS[] = {
-            0.0f, 0.0f,
-            0.0f, 1.0f,
-            1.0f, 0.0f,
-            1.0f, 1.0f,
+    private static final float FRONT_CAMERA_ROTATION[] = {
+            0.0f, 1.0f, 0.0f, 0.0f,
+            1.0f, 0.0f, 0.0f, 0.0f,
+            0.0f, 0.0f, 1.0f, 0.0f,
+            0.0f, 0.0f, 0.0f, 1.0f,
+    };
+    // SurfaceTexture.getTransformMatrix, a vertical flip until the first frame arrives
+    private static final float CAMERA_TEXTURE_MATRIX[] = {
+            1.0f, 0.0f, 0.0f, 0.0f,
+            0.0f, -1.0f, 0.0f, 0.0f,
+            0.0f, 0.0f, 1.0f, 0.0f,
+            0.0f, 1.0f, 0.0f, 1.0f,
     };
-    private static FloatBuffer FRONT_CAMERA_ROTATED_TEXTURE_COORD_BUF;
-    private static FloatBuffer BACK_CAMERA_ROTATED_TEXTURE_COORD_BUF;
+    // Screen uv -> camera texture coordinates for the current draw
+    private static final float CAMERA_TRANSFORM[] = new float[16];
+    // Camera texture passed straight to onDraw in the current draw, 0 when it was copied
+    private static int DIRECT_CAMERA_TEX_ID = 0;
+    // Rotated copy of the camera frame passed to onDraw in the current draw, 0 when it was sampled directly
+    static int CAMERA_INPUT_TEX_ID = 0;
+    // Changes before every onDraw, intermediate results derived from an input are only reused within one
+    static int INPUT_SERIAL = 0;
+    // Programs by vertex and fragment source, filters built from the same shaders share them
+    private static final Map<String, ShaderProgram> SHARED_PROGRAMS = new HashMap<>();
 
     final long START_TIME = System.currentTimeMillis();
     int iFrame = 0;
+    private int fragmentSourceRawId = 0;
+    private int programCount = 0;
+    private boolean usesDerivedTextures = false;
+    private final List<ShaderProgram> programs = new ArrayList<>();
+    private final Context appContext;
+    // The single program whose CameraSampling variant reads the camera frame directly
+    private ShaderProgram directSourceProgram;
+    private String directVertexSource, directFragmentSource;
+    private ShaderProgram cameraProgram;
+    private boolean cameraProgramBuilt = false;
+    // Negative until set, getRenderScaleHint() applies
+    private float renderScale = -1f;
 
     /*
         vertex, texture, rotated texture buffer 할당
         기본 original menu_filter 할당
      */
     public CameraFilter(Context context) {
+        appContext = context.getApplicationContext();
+
         // Setup default Buffers
         if (VERTEX_BUF == null) {
             VERTEX_BUF = ByteBuffer.allocateDirect(SQUARE_COORDS.length * 4)
@@ -90,22 +138,110 @@ public abstract class CameraFilter {
             TEXTURE_COORD_BUF.position(0);
         }
 
-        if (FRONT_CAMERA_ROTATED_TEXTURE_COORD_BUF == null) {
-            FRONT_CAMERA_ROTATED_TEXTURE_COORD_BUF = ByteBuffer.allocateDirect(FRONT_CAMERA_ROTATED_TEXTURE_COORDS.length * 4)
-                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
-            FRONT_CAMERA_ROTATED_TEXTURE_COORD_BUF.put(FRONT_CAMERA_ROTATED_TEXTURE_COORDS);
-            FRONT_CAMERA_ROTATED_TEXTURE_COORD_BUF.position(0);
+        if (PROGRAM == null) {
+            // Same camera transform as the filters that sample the camera directly
+            PROGRAM = new ShaderProgram(MyGLUtils.buildProgram(context,
+                    MyGLUtils.getStringFromRaw(context, R.raw.vertext),
+                    CameraSampling.createVariant(MyGLUtils.getStringFromRaw(context, R.raw.original))));
         }
-        if (BACK_CAMERA_ROTATED_TEXTURE_COORD_BUF == null) {
-            BACK_CAMERA_ROTATED_TEXTURE_COORD_BUF = ByteBuffer.allocateDirect(BACK_CAMERA_ROTATED_TEXTURE_COORDS.length * 4)
-                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
-            BACK_CAMERA_ROTATED_TEXTURE_COORD_BUF.put(BACK_CAMERA_ROTATED_TEXTURE_COORDS);
-            BACK_CAMERA_ROTATED_TEXTURE_COORD_BUF.position(0);
+        if (COPY_PROGRAM == null) {
+            COPY_PROGRAM = new ShaderProgram(MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.original));
         }
+    }
 
-        if (PROGRAM == 0) {
-            PROGRAM = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.original_rtt);
+    /*
+        shader program 생성
+        attribute/uniform location은 이 때 한 번만 조회된다.
+        같은 shader로 이미 만든 program이 있으면 다른 필터의 것을 같이 쓴다. (LUT 필터들, 체인 안의 같은 필터 등)
+     */
+    ShaderProgram buildProgram(Context context, int vertexSourceRawId, int fragmentSourceRawId) {
+        programCount++;
+        boolean single = programCount == 1 && !usesDerivedTextures;
+        this.fragmentSourceRawId = single ? fragmentSourceRawId : 0;
+        String vertexSource = MyGLUtils.getStringFromRaw(context, vertexSourceRawId);
+        String fragmentSource = MyGLUtils.getStringFromRaw(context, fragmentSourceRawId);
+        ShaderProgram program = registerProgram(sharedProgram(context, vertexSource, fragmentSource));
+        if (single) {
+            setCameraSamplingSource(program, vertexSource, fragmentSource);
+        } else {
+            // Multi-pass filters keep reading the rotated 2D copy
+            setCameraSamplingSource(null, null, null);
         }
+        return program;
+    }
+
+    /*
+        program이 iChannel0으로 카메라 프레임을 받을 때 대신 쓸 CameraSampling 변형의 소스 지정
+        변형 program은 처음 필요할 때 만든다.
+     */
+    void setCameraSamplingSource(ShaderProgram program, String vertexSource, String fragmentSource) {
+        directSourceProgram = program;
+        directVertexSource = vertexSource;
+        directFragmentSource = fragmentSource;
+        cameraProgram = null;
+        cameraProgramBuilt = false;
+    }
+
+    /*
+        카메라 OES texture를 회전 복사 없이 직접 샘플링할 수 있는 필터인지 여부
+        처음 호출될 때 변형 program을 만들며, 바꿀 수 없거나 컴파일에 실패하면 false이다.
+     */
+    boolean canSampleCameraDirectly() {
+        if (!cameraProgramBuilt) {
+            cameraProgramBuilt = true;
+            String variant = directFragmentSource != null ? CameraSampling.createVariant(directFragmentSource) : null;
+            if (variant != null) {
+                ShaderProgram program = sharedProgram(appContext, directVertexSource, variant);
+                cameraProgram = program.getProgramId() != 0 ? program : null;
+            }
+        }
+        return cameraProgram != null;
+    }
+
+    private static ShaderProgram sharedProgram(Context context, String vertexSource, String fragmentSource) {
+        String key = vertexSource + '\0' + fragmentSource;
+        ShaderProgram program = SHARED_PROGRAMS.get(key);
+        if (program == null) {
+            program = new ShaderProgram(MyGLUtils.buildProgram(context, vertexSource, fragmentSource));
+            SHARED_PROGRAMS.put(key, program);
+        }
+        return program;
+    }
+
+    /*
+        DerivedTextureCache의 결과를 읽는 필터로 표시
+        cache는 회전 복사된 2D 입력에서 그리므로 카메라 직접 샘플링과 shader 합치기(ShaderFusion) 대상에서 빠진다.
+     */
+    void useDerivedTextures() {
+        usesDerivedTextures = true;
+        fragmentSourceRawId = 0;
+        setCameraSamplingSource(null, null, null);
+        DerivedTextureCache.getInstance().prepare(appContext);
+    }
+
+    /*
+        DerivedTextureCache나 NeighborhoodKernel의 결과를 읽는 필터인지 여부
+        마지막 pass의 shader가 point-wise처럼 보여도 입력이 카메라 이미지가 아니므로 합칠 수 없다.
+     */
+    boolean usesDerivedTextures() {
+        return usesDerivedTextures;
+    }
+
+    /*
+        raw 리소스가 아닌 소스로 만든 program도 필터에 등록
+        등록된 program들로 isTimeAnimated를 판단한다.
+     */
+    ShaderProgram registerProgram(ShaderProgram program) {
+        programs.add(program);
+        return program;
+    }
+
+    /*
+        단일 program 필터의 fragment shader raw id
+        여러 program을 쓰는 필터이면 0을 반환하며, shader 합치기(ShaderFusion) 대상 판별에 쓰인다.
+     */
+    int getFragmentSourceRawId() {
+        return fragmentSourceRawId;
     }
 
     /*
@@ -116,108 +252,315 @@ public abstract class CameraFilter {
         iFrame = 0;
     }
 
+    /*
+        다른 필터로 바뀔 때 호출
+        자체 buffer를 가진 필터는 여기서 RenderBufferPool에 돌려준다.
+     */
+    public void onDetach() {
+    }
+
+    /*
+        기본 내부 렌더링 배율
+        fill-rate가 많이 드는 필터는 1보다 작은 값을 반환하여 줄인 크기로 그린 뒤 캔버스 크기로 늘린다.
+     */
+    float getRenderScaleHint() {
+        return 1f;
+    }
+
+    /*
+        현재 내부 렌더링 배율 (MIN_RENDER_SCALE ~ 1)
+     */
+    public float getRenderScale() {
+        return renderScale < 0 ? getRenderScaleHint() : renderScale;
+    }
+
+    /*
+        내부 렌더링 배율 지정
+        QualityGovernor가 프레임 시간에 맞춰 바꾸거나, 사용자가 화질을 우선할 때 1로 고정한다.
+     */
+    public void setRenderScale(float scale) {
+        renderScale = Math.max(MIN_RENDER_SCALE, Math.min(1f, scale));
+    }
+
+    /*
+        내부 렌더링 배율을 필터 기본값(getRenderScaleHint)으로 되돌린다.
+     */
+    public void resetRenderScale() {
+        renderScale = -1f;
+    }
+
     /*
         buffer연결 후 onDraw함수 호출
         각 실제 필터들은 이 onDraw함수를 구현함으로서 각자 자신의 필터를 표현할 수 있다.
      */
     final public void draw(int cameraTexId, int canvasWidth, int canvasHeight, boolean isFacingFront) {
-        // Create camera render buffer
-        if (CAMERA_RENDER_BUF == null ||
-                CAMERA_RENDER_BUF.getWidth() != canvasWidth ||
-                CAMERA_RENDER_BUF.getHeight() != canvasHeight) {
-            CAMERA_RENDER_BUF = new RenderBuffer(canvasWidth, canvasHeight, BUF_ACTIVE_TEX_UNIT);
-        }
+        draw(cameraTexId, canvasWidth, canvasHeight, isFacingFront, null);
+    }
 
-        // Use shaders
-        GLES20.glUseProgram(PROGRAM);
+    /*
+        화면 대신 target buffer에 그린다.
+        캡쳐처럼 화면과 다른 크기로 그릴 때 사용하며, target이 null이면 화면에 그린다.
+        내부 렌더링 배율이 1보다 작으면 카메라 복사와 onDraw 모두 줄인 크기로 하고 마지막에 한 번 늘려 그린다.
+        카메라 프레임을 직접 샘플링할 수 있는 필터는 회전 복사 pass 없이 OES texture를 그대로 onDraw에 넘긴다.
+     */
+    final public void draw(int cameraTexId, int canvasWidth, int canvasHeight, boolean isFacingFront,
+                           RenderBuffer target) {
+        draw(cameraTexId, canvasWidth, canvasHeight, isFacingFront, target, getRenderScale());
+    }
 
-        int iChannel0Location = GLES20.glGetUniformLocation(PROGRAM, "iChannel0");
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, cameraTexId);
-        GLES20.glUniform1i(iChannel0Location, 0);
+    /*
+        이번 draw에만 scale을 내부 렌더링 배율로 사용한다.
+        캡쳐처럼 항상 원래 해상도로 그려야 할 때 사용하며, 필터의 배율 설정(setRenderScale)은 바꾸지 않는다.
+     */
+    final public void draw(int cameraTexId, int canvasWidth, int canvasHeight, boolean isFacingFront,
+                           RenderBuffer target, float scale) {
+        int renderWidth = canvasWidth;
+        int renderHeight = canvasHeight;
+        if (scale < 1f) {
+            renderWidth = Math.max(1, Math.round(canvasWidth * scale));
+            renderHeight = Math.max(1, Math.round(canvasHeight * scale));
+        }
+        boolean scaled = renderWidth != canvasWidth || renderHeight != canvasHeight;
+        boolean direct = canSampleCameraDirectly();
+
+        Matrix.multiplyMM(CAMERA_TRANSFORM, 0, CAMERA_TEXTURE_MATRIX, 0,
+                isFacingFront ? FRONT_CAMERA_ROTATION : BACK_CAMERA_ROTATION, 0);
 
-        int vPositionLocation = GLES20.glGetAttribLocation(PROGRAM, "vPosition");
-        GLES20.glEnableVertexAttribArray(vPositionLocation);
-        GLES20.glVertexAttribPointer(vPositionLocation, 2, GLES20.GL_FLOAT, false, 4 * 2, VERTEX_BUF);
+        // Create camera render buffer
+        RenderBufferPool pool = RenderBufferPool.getInstance();
+        if (direct) {
+            pool.release(CAMERA_RENDER_BUF);
+            CAMERA_RENDER_BUF = null;
+        } else if (CAMERA_RENDER_BUF == null ||
+                CAMERA_RENDER_BUF.getWidth() != renderWidth ||
+                CAMERA_RENDER_BUF.getHeight() != renderHeight) {
+            pool.release(CAMERA_RENDER_BUF);
+            CAMERA_RENDER_BUF = pool.acquire(renderWidth, renderHeight, BUF_ACTIVE_TEX_UNIT);
+        }
+        if (scaled && (SCALED_BUF == null ||
+                SCALED_BUF.getWidth() != renderWidth ||
+                SCALED_BUF.getHeight() != renderHeight)) {
+            pool.release(SCALED_BUF);
+            SCALED_BUF = pool.acquire(renderWidth, renderHeight, SCALED_BUF_ACTIVE_TEX_UNIT);
+        } else if (!scaled && SCALED_BUF != null) {
+            pool.release(SCALED_BUF);
+            SCALED_BUF = null;
+        }
 
-        int vTexCoordLocation = GLES20.glGetAttribLocation(PROGRAM, "vTexCoord");
-        GLES20.glEnableVertexAttribArray(vTexCoordLocation);
-        if (isFacingFront) {
-            GLES20.glVertexAttribPointer(vTexCoordLocation, 2, GLES20.GL_FLOAT, false, 4 * 2, FRONT_CAMERA_ROTATED_TEXTURE_COORD_BUF);
+        int inputTexId;
+        if (direct) {
+            DIRECT_CAMERA_TEX_ID = cameraTexId;
+            inputTexId = cameraTexId;
+            CAMERA_INPUT_TEX_ID = 0;
         } else {
-            GLES20.glVertexAttribPointer(vTexCoordLocation, 2, GLES20.GL_FLOAT, false, 4 * 2, BACK_CAMERA_ROTATED_TEXTURE_COORD_BUF);
+            // Render to texture
+            PROGRAM.use();
+            bindCameraChannel(PROGRAM, cameraTexId);
+            PROGRAM.setVertexAttribs(VERTEX_BUF, TEXTURE_COORD_BUF);
+
+            CAMERA_RENDER_BUF.bind();
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+            inputTexId = CAMERA_RENDER_BUF.getTexId();
+            CAMERA_INPUT_TEX_ID = inputTexId;
         }
 
-        // Render to texture
-        CAMERA_RENDER_BUF.bind();
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
-        CAMERA_RENDER_BUF.unbind();
+        OUTPUT_BUF = scaled ? SCALED_BUF : target;
+        bindOutput();
+        // The copy pass no longer sets it for the window surface
+        GLES20.glViewport(0, 0, renderWidth, renderHeight);
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
-        onDraw(CAMERA_RENDER_BUF.getTexId(), canvasWidth, canvasHeight);
+        INPUT_SERIAL++;
+        onDraw(inputTexId, renderWidth, renderHeight);
+        DIRECT_CAMERA_TEX_ID = 0;
+        CAMERA_INPUT_TEX_ID = 0;
+
+        if (scaled) {
+            OUTPUT_BUF = target;
+            bindOutput();
+            // The window surface has no buffer to take the size from
+            GLES20.glViewport(0, 0, canvasWidth, canvasHeight);
+            drawTexture(SCALED_BUF.getTexId());
+        }
+
+        if (target != null) {
+            target.unbind();
+            OUTPUT_BUF = null;
+        }
 
         iFrame++;
     }
 
-    abstract void onDraw(int cameraTexId, int canvasWidth, int canvasHeight);
+    /*
+        SurfaceTexture.getTransformMatrix 결과 전달 (render thread, updateTexImage 직후)
+     */
+    public static void setCameraTextureMatrix(float[] matrix) {
+        System.arraycopy(matrix, 0, CAMERA_TEXTURE_MATRIX, 0, CAMERA_TEXTURE_MATRIX.length);
+    }
 
     /*
-        shader에 필요한 변수들 전달 위한 함수
+        source를 현재 bind된 framebuffer(화면 또는 encoder surface)에 꽉 차게 그린다.
+        녹화처럼 한 번 그린 결과를 여러 surface로 내보낼 때 사용하며, viewport는 호출하는 쪽에서 정한다.
      */
-    void setupShaderInputs(int program, int[] iResolution, int[] iChannels, int[][] iChannelResolutions) {
-        setupShaderInputs(program, VERTEX_BUF, TEXTURE_COORD_BUF, iResolution, iChannels, iChannelResolutions);
+    public static void blit(RenderBuffer source) {
+        drawTexture(source.getTexId());
     }
 
     /*
-        shader에 필요한 변수들 전달 위한 함수
+        texture를 현재 bind된 출력에 꽉 차게 그린다. (linear 보간)
      */
-    void setupShaderInputs(int program, FloatBuffer vertex, FloatBuffer textureCoord, int[] iResolution, int[] iChannels, int[][] iChannelResolutions) {
-        GLES20.glUseProgram(program);
+    private static void drawTexture(int texId) {
+        drawTexture(COPY_PROGRAM, texId);
+    }
 
-        int iResolutionLocation = GLES20.glGetUniformLocation(program, "iResolution");
-        GLES20.glUniform3fv(iResolutionLocation, 1,
-                FloatBuffer.wrap(new float[]{(float) iResolution[0], (float) iResolution[1], 1.0f}));
+    /*
+        iChannel0만 읽는 program으로 texture를 현재 bind된 출력에 꽉 차게 그린다.
+        iResolution 등 다른 uniform은 지정하지 않는다.
+     */
+    static void drawTexture(ShaderProgram program, int texId) {
+        program.use();
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
+        program.setChannel(0, 0);
+        program.setVertexAttribs(VERTEX_BUF, TEXTURE_COORD_BUF);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
 
-        float time = ((float) (System.currentTimeMillis() - START_TIME)) / 1000.0f;
-        int iGlobalTimeLocation = GLES20.glGetUniformLocation(program, "iGlobalTime");
-        GLES20.glUniform1f(iGlobalTimeLocation, time);
+    /*
+        마지막 pass가 그려질 곳(화면 또는 draw에 전달된 target) bind
+        중간 결과를 자체 buffer에 그리는 필터는 마지막 pass 전에 호출해야 한다.
+     */
+    static void bindOutput() {
+        if (OUTPUT_BUF != null) {
+            OUTPUT_BUF.bind();
+        } else {
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        }
+    }
 
-        int iFrameLocation = GLES20.glGetUniformLocation(program, "iFrame");
-        GLES20.glUniform1i(iFrameLocation, iFrame);
+    /*
+        bindOutput이 사용할 buffer를 바꾸고 이전 값을 반환
+        FilterChain이 각 단계의 출력을 ping/pong buffer로 돌릴 때 사용한다.
+     */
+    static RenderBuffer swapOutput(RenderBuffer output) {
+        RenderBuffer previous = OUTPUT_BUF;
+        OUTPUT_BUF = output;
+        return previous;
+    }
 
-        int vPositionLocation = GLES20.glGetAttribLocation(program, "vPosition");
-        GLES20.glEnableVertexAttribArray(vPositionLocation);
-        GLES20.glVertexAttribPointer(vPositionLocation, 2, GLES20.GL_FLOAT, false, 4 * 2, vertex);
+    abstract void onDraw(int cameraTexId, int canvasWidth, int canvasHeight);
 
-        int vTexCoordLocation = GLES20.glGetAttribLocation(program, "vTexCoord");
-        GLES20.glEnableVertexAttribArray(vTexCoordLocation);
-        GLES20.glVertexAttribPointer(vTexCoordLocation, 2, GLES20.GL_FLOAT, false, 4 * 2, textureCoord);
+    /*
+        입력을 그대로 내보내는 필터인지 여부
+        FilterChain은 이런 단계를 건너뛴다.
+     */
+    public boolean isIdentity() {
+        return false;
+    }
+
+    /*
+        새 카메라 프레임이 없어도 시간(iGlobalTime)이나 프레임 수(iFrame)에 따라 결과가 바뀌는 필터인지 여부
+        FrameScheduler는 카메라가 멈춰 있을 때 이런 필터만 다시 그린다.
+     */
+    public boolean isTimeAnimated() {
+        // Called every frame, avoid the iterator allocation
+        for (int i = 0; i < programs.size(); i++) {
+            ShaderProgram program = programs.get(i);
+            if (program.usesGlobalTime() || program.usesFrame()) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        for (int i = 0; i < iChannels.length; i++) {
-            int sTextureLocation = GLES20.glGetUniformLocation(program, "iChannel" + i);
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, iChannels[i]);
-            GLES20.glUniform1i(sTextureLocation, i);
+    /*
+        shader에 필요한 변수들 전달 위한 함수
+        매 프레임 호출되므로 배열 등 객체를 새로 만들지 않도록 채널 수별로 나누어 둔다.
+        iChannel0이 직접 샘플링할 카메라 프레임이면 program 대신 그 CameraSampling 변형을 사용한다.
+        실제로 사용한 program을 반환하므로 그 밖의 uniform은 반환된 program의 location으로 지정해야 한다.
+     */
+    ShaderProgram setupShaderInputs(ShaderProgram program, int canvasWidth, int canvasHeight, int iChannel0) {
+        if (samplesCamera(program, iChannel0)) {
+            setupShaderInputs(cameraProgram, VERTEX_BUF, TEXTURE_COORD_BUF, canvasWidth, canvasHeight);
+            bindCameraChannel(cameraProgram, iChannel0);
+            return cameraProgram;
         }
+        setupShaderInputs(program, VERTEX_BUF, TEXTURE_COORD_BUF, canvasWidth, canvasHeight);
+        bindChannel(program, 0, iChannel0);
+        return program;
+    }
 
-        float _iChannelResolutions[] = new float[iChannelResolutions.length * 3];
-        for (int i = 0; i < iChannelResolutions.length; i++) {
-            _iChannelResolutions[i * 3] = iChannelResolutions[i][0];
-            _iChannelResolutions[i * 3 + 1] = iChannelResolutions[i][1];
-            _iChannelResolutions[i * 3 + 2] = 1.0f;
+    ShaderProgram setupShaderInputs(ShaderProgram program, int canvasWidth, int canvasHeight,
+                                    int iChannel0, int iChannel1) {
+        if (samplesCamera(program, iChannel0)) {
+            setupShaderInputs(cameraProgram, VERTEX_BUF, TEXTURE_COORD_BUF, canvasWidth, canvasHeight);
+            bindCameraChannel(cameraProgram, iChannel0);
+            bindChannel(cameraProgram, 1, iChannel1);
+            return cameraProgram;
         }
+        setupShaderInputs(program, VERTEX_BUF, TEXTURE_COORD_BUF, canvasWidth, canvasHeight);
+        bindChannel(program, 0, iChannel0);
+        bindChannel(program, 1, iChannel1);
+        return program;
+    }
 
-        int iChannelResolutionLocation = GLES20.glGetUniformLocation(program, "iChannelResolution");
-        GLES20.glUniform3fv(iChannelResolutionLocation,
-                _iChannelResolutions.length, FloatBuffer.wrap(_iChannelResolutions));
+    private boolean samplesCamera(ShaderProgram program, int iChannel0) {
+        return DIRECT_CAMERA_TEX_ID != 0 && iChannel0 == DIRECT_CAMERA_TEX_ID
+                && program == directSourceProgram && cameraProgram != null;
+    }
+
+    /*
+        채널을 제외한 공통 변수 전달
+        location은 program에 캐시된 값을 사용하고, 바뀌지 않은 uniform은 다시 올리지 않는다.
+     */
+    void setupShaderInputs(ShaderProgram program, FloatBuffer vertex, FloatBuffer textureCoord, int canvasWidth, int canvasHeight) {
+        program.use();
+
+        program.setResolution(canvasWidth, canvasHeight);
+
+        float time = ((float) (System.currentTimeMillis() - START_TIME)) / 1000.0f;
+        program.setGlobalTime(time);
+        program.setFrame(iFrame);
+
+        program.setVertexAttribs(vertex, textureCoord);
+    }
+
+    /*
+        카메라 OES texture를 0번 texture unit에 연결하고 현재 카메라 변환 행렬 지정
+     */
+    private static void bindCameraChannel(ShaderProgram program, int cameraTexId) {
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, cameraTexId);
+        program.setChannel(0, 0);
+        program.setCameraTransform(CAMERA_TRANSFORM);
+    }
+
+    /*
+        index번 texture unit에 texture를 연결하고 iChannel{index} sampler에 지정
+     */
+    void bindChannel(ShaderProgram program, int index, int texId) {
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + index);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
+        program.setChannel(index, index);
     }
 
     /*
         buffer와 shader 해제
+        buffer의 GL 객체는 RenderBufferPool.clear()가 지운다.
      */
     public static void release() {
-        PROGRAM = 0;
+        PROGRAM = null;
+        COPY_PROGRAM = null;
         CAMERA_RENDER_BUF = null;
+        SCALED_BUF = null;
+        OUTPUT_BUF = null;
+        DIRECT_CAMERA_TEX_ID = 0;
+        CAMERA_INPUT_TEX_ID = 0;
+        SHARED_PROGRAMS.clear();
+        FilterChain.releaseBuffers();
+        DerivedTextureCache.getInstance().release();
+        LutTextureCache.getInstance().release();
+        TextureManager.releaseAll();
     }
 }
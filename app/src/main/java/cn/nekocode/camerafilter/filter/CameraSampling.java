@@ -0,0 +1,60 @@
+package cn.nekocode.camerafilter.filter;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 카메라 OES texture를 직접 샘플링하는 fragment shader 변형을 만드는 클래스
+ * iChannel0을 samplerExternalOES로 바꾸고 texture2D(iChannel0, uv)를 cameraTexture(uv)로 바꾼다.
+ * cameraTexture는 화면 좌표 uv를 iCameraTransform(카메라 회전과 SurfaceTexture 변환 행렬)으로 옮긴 뒤 읽으므로
+ * 카메라 프레임을 회전하여 2D texture로 복사하는 pass 없이 필터가 바로 카메라 프레임을 읽을 수 있다.
+ * Android API를 사용하지 않으므로 JVM에서 바로 테스트할 수 있다.
+ */
+public final class CameraSampling {
+    public static final String TRANSFORM_UNIFORM = "iCameraTransform";
+
+    private static final String SAMPLE_FUNCTION = "cameraTexture";
+    private static final Pattern CHANNEL0_DECL = Pattern.compile("uniform\\s+sampler2D\\s+iChannel0\\s*;");
+    private static final Pattern CHANNEL0_USE = Pattern.compile("\\biChannel0\\b");
+    private static final Pattern VERSION = Pattern.compile("#\\s*version\\b");
+
+    private CameraSampling() {
+    }
+
+    /*
+        OES 변형 소스, 바꿀 수 없는 shader이면 null
+        iChannel0을 texture2D 샘플링 외의 방법(함수 인자 등)으로 쓰거나 #version이 지정된 shader는 바꾸지 않는다.
+     */
+    public static String createVariant(String source) {
+        String code = ShaderFusion.stripComments(source);
+        if (VERSION.matcher(code).find() || code.contains(SAMPLE_FUNCTION)) {
+            return null;
+        }
+
+        Matcher declaration = CHANNEL0_DECL.matcher(code);
+        if (!declaration.find()) {
+            return null;
+        }
+        int declarationStart = declaration.start();
+        int declarationEnd = declaration.end();
+        if (declaration.find()) {
+            return null;
+        }
+
+        String head = code.substring(0, declarationStart);
+        String tail = ShaderFusion.replaceChannel0Samples(code.substring(declarationEnd), SAMPLE_FUNCTION);
+        if (CHANNEL0_USE.matcher(head).find() || CHANNEL0_USE.matcher(tail).find()) {
+            return null;
+        }
+
+        // The extension directive must come before any other token
+        return "#extension GL_OES_EGL_image_external : require\n"
+                + head
+                + "uniform samplerExternalOES iChannel0;\n"
+                + "uniform mat4 " + TRANSFORM_UNIFORM + ";\n"
+                + "vec4 " + SAMPLE_FUNCTION + "(vec2 uv) {\n"
+                + "    return texture2D(iChannel0, (" + TRANSFORM_UNIFORM + " * vec4(uv, 0.0, 1.0)).xy);\n"
+                + "}\n"
+                + tail;
+    }
+}
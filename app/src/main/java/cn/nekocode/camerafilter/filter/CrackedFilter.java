@@ -18,28 +18,32 @@ package cn.nekocode.camerafilter.filter;
 import android.content.Context;
 import android.opengl.GLES20;
 
-import cn.nekocode.camerafilter.util.MyGLUtils;
 import cn.nekocode.camerafilter.R;
 
 /**
  * @author nekocode (nekocode.cn@gmail.com)
  */
 public class CrackedFilter extends CameraFilter {
-    private int program;
+    private ShaderProgram program;
 
     public CrackedFilter(Context context) {
         super(context);
 
         // Build shaders
-        program = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.cracked);
+        program = buildProgram(context, R.raw.vertext, R.raw.cracked);
+    }
+
+    /*
+        픽셀마다 30개 균열 중심점까지의 거리를 계산하므로 줄인 크기로 그린다.
+     */
+    @Override
+    float getRenderScaleHint() {
+        return 0.75f;
     }
 
     @Override
     public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
-        setupShaderInputs(program,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{cameraTexId},
-                new int[][]{});
+        setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 }
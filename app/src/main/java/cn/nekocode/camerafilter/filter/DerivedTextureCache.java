@@ -0,0 +1,195 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.content.Context;
+import android.opengl.GLES20;
+
+import cn.nekocode.camerafilter.R;
+import cn.nekocode.camerafilter.cpu.SeparableKernel;
+import cn.nekocode.camerafilter.util.MyGLUtils;
+
+/**
+ * 입력 프레임에서 얻는 파생 texture(밝기, 축소 mip 단계)를 한 번만 그리기 위한 cache
+ * 카메라 프레임에서 얻은 결과는 (카메라 프레임 timestamp, 종류, 크기)로 구분하여 다음 카메라 프레임까지 재사용하므로,
+ * 같은 프레임을 다시 그리거나(시간에 따라 움직이는 필터, 캡쳐, 녹화) 여러 필터와 FilterChain 단계가 요청해도 한 번만 그린다.
+ * 카메라 프레임이 아닌 입력(FilterChain의 중간 결과)에서 얻은 결과는 CameraFilter.INPUT_SERIAL이 바뀔 때까지만 재사용한다.
+ * 결과를 읽는 필터는 생성자에서 CameraFilter.useDerivedTextures를 호출해야 하며, render thread에서만 사용해야 한다.
+ */
+public class DerivedTextureCache {
+    // Luminance in r, g and b, same values as SeparableKernel.luminance
+    public static final int PRODUCT_LUMINANCE = 0;
+    public static final int PRODUCT_LUMINANCE_HALF = 1;
+    // Colour mip chain, each level is half the size of the one before and drawn from it
+    public static final int PRODUCT_MIP_1 = 2;
+    public static final int PRODUCT_MIP_2 = 3;
+    public static final int PRODUCT_MIP_3 = 4;
+    private static final int PRODUCT_COUNT = 5;
+
+    // Only used while the textures are created
+    private static final int ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE14;
+
+    private static DerivedTextureCache instance;
+
+    private static class Entry {
+        RenderBuffer buffer;
+        int sourceTexId;
+        // Camera frame timestamp or INPUT_SERIAL the buffer was drawn for
+        long key;
+        boolean valid;
+        // Requested since the last camera frame, unused entries go back to the pool
+        boolean used;
+    }
+
+    private ShaderProgram luminanceProgram;
+    private final Entry[] cameraEntries = new Entry[PRODUCT_COUNT];
+    private final Entry[] inputEntries = new Entry[PRODUCT_COUNT];
+    private long cameraTimestamp = 0;
+    private boolean drawn;
+
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    public static DerivedTextureCache getInstance() {
+        if (instance == null) {
+            instance = new DerivedTextureCache();
+        }
+        return instance;
+    }
+
+    /*
+        결과를 그릴 program 준비 (필터 생성자에서 호출)
+     */
+    void prepare(Context context) {
+        if (luminanceProgram == null) {
+            luminanceProgram = new ShaderProgram(MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.luminance));
+        }
+    }
+
+    /*
+        새 카메라 프레임의 SurfaceTexture timestamp 전달 (render thread, updateTexImage 직후)
+        이전 카메라 프레임에서 한 번도 요청되지 않은 결과의 buffer는 pool에 돌려준다.
+     */
+    public void setCameraFrame(long timestamp) {
+        cameraTimestamp = timestamp;
+        trim(cameraEntries);
+        trim(inputEntries);
+    }
+
+    /*
+        카메라 프레임에서 얻은 결과를 모두 다시 그리게 한다.
+        FilterBenchmark처럼 같은 카메라 프레임을 매번 새 프레임으로 측정할 때 사용한다.
+     */
+    public void invalidate() {
+        for (Entry entry : cameraEntries) {
+            if (entry != null) {
+                entry.valid = false;
+            }
+        }
+    }
+
+    /*
+        inputTexId(캔버스 크기 inputWidth x inputHeight)에서 얻은 product 종류의 texture
+        이미 그린 결과가 있으면 그대로 돌려주고, 새로 그렸으면 필터의 출력(bindOutput)과 입력 크기 viewport를 되돌려 놓는다.
+     */
+    int get(int product, int inputTexId, int inputWidth, int inputHeight) {
+        drawn = false;
+        int texId = fetch(product, inputTexId, inputWidth, inputHeight);
+        if (drawn) {
+            CameraFilter.bindOutput();
+            GLES20.glViewport(0, 0, inputWidth, inputHeight);
+        }
+        return texId;
+    }
+
+    private int fetch(int product, int inputTexId, int inputWidth, int inputHeight) {
+        boolean camera = inputTexId == CameraFilter.CAMERA_INPUT_TEX_ID;
+        Entry[] entries = camera ? cameraEntries : inputEntries;
+        long key = camera ? cameraTimestamp : CameraFilter.INPUT_SERIAL;
+        int width = productSize(product, inputWidth);
+        int height = productSize(product, inputHeight);
+
+        Entry entry = entries[product];
+        if (entry == null) {
+            entry = entries[product] = new Entry();
+        }
+        entry.used = true;
+        if (entry.valid && entry.key == key && entry.sourceTexId == inputTexId
+                && entry.buffer.getWidth() == width && entry.buffer.getHeight() == height) {
+            hitCount++;
+            return entry.buffer.getTexId();
+        }
+        missCount++;
+
+        if (entry.buffer == null || entry.buffer.getWidth() != width || entry.buffer.getHeight() != height) {
+            RenderBufferPool pool = RenderBufferPool.getInstance();
+            pool.release(entry.buffer);
+            entry.buffer = pool.acquire(width, height, ACTIVE_TEX_UNIT);
+        }
+
+        // Lower mip levels are drawn from the cached level above
+        int sourceTexId = product > PRODUCT_MIP_1
+                ? fetch(product - 1, inputTexId, inputWidth, inputHeight) : inputTexId;
+        entry.buffer.bind();
+        CameraFilter.drawTexture(product <= PRODUCT_LUMINANCE_HALF ? luminanceProgram : CameraFilter.COPY_PROGRAM,
+                sourceTexId);
+        entry.buffer.unbind();
+        drawn = true;
+
+        entry.sourceTexId = inputTexId;
+        entry.key = key;
+        entry.valid = true;
+        return entry.buffer.getTexId();
+    }
+
+    /*
+        입력 한 변의 길이가 size일 때 product의 한 변 길이
+        절반 크기는 SeparableKernel.luminanceSize처럼 내림하여 줄인다.
+     */
+    static int productSize(int product, int size) {
+        switch (product) {
+            case PRODUCT_LUMINANCE:
+                return size;
+            case PRODUCT_LUMINANCE_HALF:
+                return SeparableKernel.luminanceSize(size, true);
+            default:
+                return Math.max(1, size >> (product - PRODUCT_MIP_1 + 1));
+        }
+    }
+
+    private static void trim(Entry[] entries) {
+        RenderBufferPool pool = RenderBufferPool.getInstance();
+        for (int i = 0; i < entries.length; i++) {
+            Entry entry = entries[i];
+            if (entry == null) {
+                continue;
+            }
+            if (!entry.used) {
+                pool.release(entry.buffer);
+                entries[i] = null;
+            } else {
+                entry.used = false;
+            }
+        }
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    /*
+        program과 buffer 해제
+        buffer의 GL 객체는 RenderBufferPool.clear()가 지운다.
+     */
+    void release() {
+        luminanceProgram = null;
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            cameraEntries[i] = null;
+            inputEntries[i] = null;
+        }
+        cameraTimestamp = 0;
+        hitCount = missCount = 0;
+    }
+}
@@ -18,28 +18,36 @@ package cn.nekocode.camerafilter.filter;
 import android.content.Context;
 import android.opengl.GLES20;
 
-import cn.nekocode.camerafilter.util.MyGLUtils;
 import cn.nekocode.camerafilter.R;
+import cn.nekocode.camerafilter.cpu.SeparableKernel;
 
 /**
  * @author nekocode (nekocode.cn@gmail.com)
  */
 public class EdgeDetectionFilter extends CameraFilter {
-    private int program;
+    private ShaderProgram program;
+    private final NeighborhoodKernel sobel;
 
     public EdgeDetectionFilter(Context context) {
         super(context);
 
         // Build shaders
-        program = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.edge_detection);
+        program = buildProgram(context, R.raw.vertext, R.raw.edge_detection);
+        sobel = new NeighborhoodKernel(this, context, SeparableKernel.SOBEL, false);
+    }
+
+    /*
+        Sobel pass buffer는 다른 필터를 쓰는 동안 pool에 돌려준다.
+     */
+    @Override
+    public void onDetach() {
+        sobel.release();
     }
 
     @Override
     public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
-        setupShaderInputs(program,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{cameraTexId},
-                new int[][]{});
+        int gradientTexId = sobel.draw(cameraTexId, canvasWidth, canvasHeight);
+        setupShaderInputs(program, canvasWidth, canvasHeight, gradientTexId);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 }
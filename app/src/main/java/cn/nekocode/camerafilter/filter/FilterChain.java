@@ -0,0 +1,192 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.content.Context;
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cn.nekocode.camerafilter.util.MyGLUtils;
+
+/**
+ * 여러 필터를 순서대로 적용하는 필터
+ * 중간 결과는 모든 체인이 공유하는 두 개의 RenderBuffer를 번갈아(ping-pong) 사용하므로
+ * 단계 수와 관계없이 추가 GPU 메모리는 일정하다.
+ * OriginalFilter와 같이 입력을 그대로 내보내는 단계는 건너뛰고,
+ * 연속된 point-wise 단계들은 ShaderFusion으로 하나의 pass로 합친다.
+ */
+public class FilterChain extends CameraFilter {
+    private static final int PING_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE9;
+    private static final int PONG_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE10;
+    private static RenderBuffer PING_BUF, PONG_BUF;
+
+    private final CameraFilter[] stages;
+    private final CameraFilter[] activeStages;
+
+    public FilterChain(Context context, CameraFilter... stages) {
+        super(context);
+
+        if (stages.length == 0) {
+            throw new IllegalArgumentException("FilterChain needs at least one stage");
+        }
+        for (CameraFilter stage : stages) {
+            if (stage instanceof FilterChain) {
+                // Nested chains would overwrite the shared ping-pong buffers
+                throw new IllegalArgumentException("FilterChain can't contain another FilterChain");
+            }
+        }
+        this.stages = stages;
+
+        // Identity stages don't change the image, leave them out of the pass list
+        List<CameraFilter> passes = new ArrayList<>();
+        for (CameraFilter stage : stages) {
+            if (!stage.isIdentity()) {
+                passes.add(stage);
+            }
+        }
+        if (passes.isEmpty()) {
+            // Still need one pass to put the camera frame on screen
+            passes.add(stages[stages.length - 1]);
+        }
+
+        activeStages = fusePointWiseStages(context, passes).toArray(new CameraFilter[0]);
+    }
+
+    /*
+        연속된 point-wise 단계들을 FusedFilter 하나로 바꾼다.
+        이웃 픽셀을 읽는 필터, 여러 pass 필터, 미리 계산된 texture를 읽는 필터(edge_detection 등)는 그대로 둔다.
+        edge_detection의 shader는 gradient texture만 읽어 point-wise로 판별되지만 합치면 카메라 이미지를 gradient로 읽게 된다.
+     */
+    private static List<CameraFilter> fusePointWiseStages(Context context, List<CameraFilter> passes) {
+        List<CameraFilter> result = new ArrayList<>();
+        List<CameraFilter> run = new ArrayList<>();
+        List<String> runSources = new ArrayList<>();
+
+        for (CameraFilter pass : passes) {
+            String source = null;
+            if (pass.getFragmentSourceRawId() != 0 && !pass.usesDerivedTextures()) {
+                source = MyGLUtils.getStringFromRaw(context, pass.getFragmentSourceRawId());
+            }
+
+            if (source != null && ShaderFusion.isPointWise(source)) {
+                run.add(pass);
+                runSources.add(source);
+            } else {
+                flushRun(context, run, runSources, result);
+                result.add(pass);
+            }
+        }
+        flushRun(context, run, runSources, result);
+
+        return result;
+    }
+
+    private static void flushRun(Context context, List<CameraFilter> run, List<String> runSources,
+                                 List<CameraFilter> result) {
+        if (run.size() > 1) {
+            result.add(new FusedFilter(context, new ArrayList<>(runSources)));
+        } else {
+            result.addAll(run);
+        }
+        run.clear();
+        runSources.clear();
+    }
+
+    @Override
+    public void onAttach() {
+        super.onAttach();
+        for (CameraFilter stage : stages) {
+            stage.onAttach();
+        }
+    }
+
+    @Override
+    public void onDetach() {
+        for (CameraFilter stage : stages) {
+            stage.onDetach();
+        }
+    }
+
+    @Override
+    public boolean isIdentity() {
+        for (CameraFilter stage : stages) {
+            if (!stage.isIdentity()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+        첫 단계만 카메라 프레임을 읽으므로 첫 단계를 따른다.
+     */
+    @Override
+    boolean canSampleCameraDirectly() {
+        return activeStages[0].canSampleCameraDirectly();
+    }
+
+    @Override
+    public boolean isTimeAnimated() {
+        for (CameraFilter stage : activeStages) {
+            if (stage.isTimeAnimated()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+        마지막 단계를 제외한 모든 단계는 ping/pong buffer에 번갈아 그리고
+        마지막 단계만 체인의 출력(화면 또는 캡쳐 buffer)에 그린다.
+     */
+    @Override
+    void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
+        if (activeStages.length > 1) {
+            setupBuffers(canvasWidth, canvasHeight);
+        }
+
+        int inputTexId = cameraTexId;
+        int lastIndex = activeStages.length - 1;
+        RenderBuffer finalOutput = swapOutput(null);
+        for (int i = 0; i < lastIndex; i++) {
+            RenderBuffer output = (i % 2 == 0) ? PING_BUF : PONG_BUF;
+
+            // Multi-pass stages bind their own buffers, then bindOutput() for the last pass
+            swapOutput(output);
+            output.bind();
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            drawStage(activeStages[i], inputTexId, canvasWidth, canvasHeight);
+
+            inputTexId = output.getTexId();
+        }
+
+        swapOutput(finalOutput);
+        bindOutput();
+        drawStage(activeStages[lastIndex], inputTexId, canvasWidth, canvasHeight);
+    }
+
+    private void drawStage(CameraFilter stage, int inputTexId, int canvasWidth, int canvasHeight) {
+        // The ping/pong buffers are redrawn between stages
+        INPUT_SERIAL++;
+        stage.onDraw(inputTexId, canvasWidth, canvasHeight);
+        stage.iFrame++;
+    }
+
+    private static void setupBuffers(int width, int height) {
+        if (PING_BUF == null || PING_BUF.getWidth() != width || PING_BUF.getHeight() != height) {
+            RenderBufferPool pool = RenderBufferPool.getInstance();
+            pool.release(PING_BUF);
+            pool.release(PONG_BUF);
+            PING_BUF = pool.acquire(width, height, PING_ACTIVE_TEX_UNIT);
+            PONG_BUF = pool.acquire(width, height, PONG_ACTIVE_TEX_UNIT);
+        }
+    }
+
+    /*
+        공유 ping/pong buffer 해제
+     */
+    static void releaseBuffers() {
+        PING_BUF = null;
+        PONG_BUF = null;
+    }
+}
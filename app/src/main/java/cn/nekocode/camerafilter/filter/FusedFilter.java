@@ -0,0 +1,32 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.content.Context;
+import android.opengl.GLES20;
+
+import java.util.List;
+
+import cn.nekocode.camerafilter.R;
+import cn.nekocode.camerafilter.util.MyGLUtils;
+
+/**
+ * ShaderFusion으로 합쳐진 point-wise 필터들을 한 번의 pass로 그리는 필터
+ */
+public class FusedFilter extends CameraFilter {
+    private ShaderProgram program;
+
+    public FusedFilter(Context context, List<String> fragmentSources) {
+        super(context);
+
+        // Build shaders
+        String vertexSource = MyGLUtils.getStringFromRaw(context, R.raw.vertext);
+        String fragmentSource = ShaderFusion.fuse(fragmentSources);
+        program = registerProgram(new ShaderProgram(MyGLUtils.buildProgram(context, vertexSource, fragmentSource)));
+        setCameraSamplingSource(program, vertexSource, fragmentSource);
+    }
+
+    @Override
+    public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
+        setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
+}
@@ -18,83 +18,206 @@ package cn.nekocode.camerafilter.filter;
 import android.content.Context;
 import android.opengl.GLES20;
 
-import cn.nekocode.camerafilter.util.MyGLUtils;
 import cn.nekocode.camerafilter.R;
+import cn.nekocode.camerafilter.cpu.JumpFlood;
 
 /**
  * @author nekocode (nekocode.cn@gmail.com)
+ * 영상의 특징점을 seed로 하는 Voronoi 셀을 Jump Flooding(JFA)으로 그리는 필터
+ * MODE_LATENCY는 매 프레임 seed field를 새로 만들어 log2(크기) 단계를 모두 돌리므로 항상 정확한 셀을 그리고,
+ * MODE_THROUGHPUT은 이전 프레임의 field를 이어받아 JumpFlood.REFINE_PASSES 단계만 돌리므로
+ * 바뀐 곳은 몇 프레임에 걸쳐 맞춰지는 대신 프레임 비용이 해상도와 상관없이 일정하다.
+ * 단계 순서와 비교 방식은 cpu/JumpFlood와 같다.
  */
 public class JFAVoronoiFilter extends CameraFilter {
-    private int programImg;
-    private int programA;
-    private int programB;
-    private int programC;
+    public static final int MODE_LATENCY = 0;
+    public static final int MODE_THROUGHPUT = 1;
 
-    private RenderBuffer bufA;
-    private RenderBuffer bufB;
-    private RenderBuffer bufC;
+    public static final int DEFAULT_MAX_STEPS = 10;
+    public static final int MIN_MAX_STEPS = 6;
+
+    // Only used while the textures are created
+    private static final int SEED_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE4;
+    private static final int FIELD_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE5;
+
+    private final int mode;
+
+    private ShaderProgram programImg;
+    private ShaderProgram programSeed;
+    private ShaderProgram programInit;
+    private ShaderProgram programStep;
+    private final int reuseFieldLocation;
+    private final int stepWidthLocation;
+
+    // Ping-pong pairs, seedBufs[seedIndex] and fieldBufs[fieldIndex] hold the latest result
+    private final RenderBuffer[] seedBufs = new RenderBuffer[2];
+    private final RenderBuffer[] fieldBufs = new RenderBuffer[2];
+    private int seedIndex = 0;
+    private int fieldIndex = 0;
+    private boolean fieldValid = false;
+    private int refineFrame = 0;
+
+    private int maxSteps = DEFAULT_MAX_STEPS;
 
     public JFAVoronoiFilter(Context context) {
+        this(context, MODE_LATENCY);
+    }
+
+    /*
+        mode: MODE_LATENCY 또는 MODE_THROUGHPUT
+     */
+    public JFAVoronoiFilter(Context context, int mode) {
         super(context);
+        this.mode = mode;
 
         // Build shaders
-        programImg = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.voronoi);
-        programA = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.voronoi_buf_a);
-        programB = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.voronoi_buf_b);
-        programC = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.voronoi_buf_c);
+        programImg = buildProgram(context, R.raw.vertext, R.raw.voronoi);
+        programSeed = buildProgram(context, R.raw.vertext, R.raw.voronoi_buf_a);
+        programInit = buildProgram(context, R.raw.vertext, R.raw.voronoi_jfa_init);
+        programStep = buildProgram(context, R.raw.vertext, R.raw.voronoi_jfa_step);
+        reuseFieldLocation = programInit.getUniformLocation("iReuseField");
+        stepWidthLocation = programStep.getUniformLocation("iStepWidth");
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /*
+        JFA 최대 단계 수
+        첫 jump 거리가 2^(maxSteps - 1)을 넘지 않으므로 그보다 먼 seed는 전파되지 않는다.
+        MODE_LATENCY에서는 한 프레임의 pass 수가 줄고, MODE_THROUGHPUT에서는 먼 seed를 전파하는 주기가 짧아진다.
+     */
+    public void setMaxSteps(int steps) {
+        steps = Math.max(MIN_MAX_STEPS, Math.min(DEFAULT_MAX_STEPS, steps));
+        if (steps != maxSteps) {
+            maxSteps = steps;
+            refineFrame = 0;
+        }
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    /*
+        특징점이 프레임마다 조금씩 사라지고 MODE_THROUGHPUT의 field도 몇 프레임에 걸쳐 맞춰지므로
+        카메라가 멈춰 있어도 다시 그린다.
+     */
+    @Override
+    public boolean isTimeAnimated() {
+        return true;
+    }
+
+    /*
+        field는 처음부터 다시 쌓으면 되므로 다른 필터를 쓰는 동안 buffer를 pool에 돌려준다.
+     */
+    @Override
+    public void onDetach() {
+        releaseBuffers();
+    }
+
+    /*
+        pass 수가 많으므로 절반 크기로 그린다.
+     */
+    @Override
+    float getRenderScaleHint() {
+        return 0.5f;
     }
 
     @Override
     public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
-        // TODO move?
-        if (bufA == null || bufA.getWidth() != canvasWidth || bufB.getHeight() != canvasHeight) {
-            // Create new textures for buffering
-            bufA = new RenderBuffer(canvasWidth, canvasHeight, GLES20.GL_TEXTURE4);
-            bufB = new RenderBuffer(canvasWidth, canvasHeight, GLES20.GL_TEXTURE5);
-            bufC = new RenderBuffer(canvasWidth, canvasHeight, GLES20.GL_TEXTURE6);
+        if (seedBufs[0] == null || seedBufs[0].getWidth() != canvasWidth || seedBufs[0].getHeight() != canvasHeight) {
+            createBuffers(canvasWidth, canvasHeight);
         }
 
-        // Render to buf a
-        setupShaderInputs(programA,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{cameraTexId, bufA.getTexId()},
-                new int[][]{new int[]{canvasWidth, canvasHeight}, new int[]{canvasWidth, canvasHeight}});
-        bufA.bind();
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
-        bufA.unbind();
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        // Feature seeds, blended with the previous frame's
+        RenderBuffer previousSeeds = seedBufs[seedIndex];
+        seedIndex ^= 1;
+        RenderBuffer seeds = seedBufs[seedIndex];
+        setupShaderInputs(programSeed, canvasWidth, canvasHeight, cameraTexId, previousSeeds.getTexId());
+        programSeed.setChannelResolution(0, canvasWidth, canvasHeight);
+        programSeed.setChannelResolution(1, canvasWidth, canvasHeight);
+        drawInto(seeds);
 
+        // Seed field, carried over from the previous frame in the throughput mode
+        setupShaderInputs(programInit, canvasWidth, canvasHeight, seeds.getTexId(), fieldBufs[fieldIndex].getTexId());
+        GLES20.glUniform1f(reuseFieldLocation, mode == MODE_THROUGHPUT && fieldValid ? 1f : 0f);
+        fieldIndex ^= 1;
+        drawInto(fieldBufs[fieldIndex]);
 
-        // Render to buf b
-        setupShaderInputs(programB,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{bufB.getTexId(), bufA.getTexId()},
-                new int[][]{new int[]{canvasWidth, canvasHeight}, new int[]{canvasWidth, canvasHeight}});
-        bufB.bind();
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        if (mode == MODE_THROUGHPUT) {
+            for (int pass = 0; pass < JumpFlood.REFINE_PASSES; pass++) {
+                jump(JumpFlood.refineStepWidth(pass, refineFrame, canvasWidth, canvasHeight, maxSteps),
+                        canvasWidth, canvasHeight);
+            }
+            refineFrame++;
+        } else {
+            for (int stepWidth = JumpFlood.initialStep(canvasWidth, canvasHeight, maxSteps);
+                 stepWidth >= 1; stepWidth >>= 1) {
+                jump(stepWidth, canvasWidth, canvasHeight);
+            }
+        }
+        fieldValid = true;
+
+        // Render to screen
+        bindOutput();
+        setupShaderInputs(programImg, canvasWidth, canvasHeight, fieldBufs[fieldIndex].getTexId(), seeds.getTexId());
+        programImg.setChannelResolution(0, canvasWidth, canvasHeight);
+        programImg.setChannelResolution(1, canvasWidth, canvasHeight);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
-        bufB.unbind();
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+    }
 
+    /*
+        현재 field에서 stepWidth 거리로 한 단계 진행하여 다른 field buffer에 그린다.
+     */
+    private void jump(int stepWidth, int canvasWidth, int canvasHeight) {
+        setupShaderInputs(programStep, canvasWidth, canvasHeight, fieldBufs[fieldIndex].getTexId());
+        GLES20.glUniform1f(stepWidthLocation, stepWidth);
+        fieldIndex ^= 1;
+        drawInto(fieldBufs[fieldIndex]);
+    }
 
-        // Render to buf c
-        setupShaderInputs(programC,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{bufC.getTexId(), bufB.getTexId()},
-                new int[][]{new int[]{canvasWidth, canvasHeight}, new int[]{canvasWidth, canvasHeight}});
-        bufC.bind();
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
-        bufC.unbind();
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+    private void createBuffers(int width, int height) {
+        releaseBuffers();
 
+        // Create new textures for buffering
+        RenderBufferPool pool = RenderBufferPool.getInstance();
+        for (int i = 0; i < 2; i++) {
+            seedBufs[i] = pool.acquire(width, height, SEED_ACTIVE_TEX_UNIT);
+            fieldBufs[i] = pool.acquire(width, height, FIELD_ACTIVE_TEX_UNIT);
+            // Packed seed coordinates must not be blended between texels
+            fieldBufs[i].setFilter(GLES20.GL_NEAREST);
 
-        // Render to screen
-        setupShaderInputs(programImg,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{bufC.getTexId(), bufA.getTexId()},
-                new int[][]{new int[]{canvasWidth, canvasHeight}, new int[]{canvasWidth, canvasHeight}});
+            // Pooled buffers keep whatever was drawn into them last
+            clearBuffer(seedBufs[i]);
+            clearBuffer(fieldBufs[i]);
+        }
+    }
+
+    private void releaseBuffers() {
+        RenderBufferPool pool = RenderBufferPool.getInstance();
+        for (int i = 0; i < 2; i++) {
+            if (fieldBufs[i] != null) {
+                fieldBufs[i].setFilter(GLES20.GL_LINEAR);
+            }
+            pool.release(seedBufs[i]);
+            pool.release(fieldBufs[i]);
+            seedBufs[i] = fieldBufs[i] = null;
+        }
+        fieldValid = false;
+        refineFrame = 0;
+    }
+
+    private static void drawInto(RenderBuffer buffer) {
+        buffer.bind();
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        buffer.unbind();
+    }
+
+    private static void clearBuffer(RenderBuffer buffer) {
+        buffer.bind();
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        buffer.unbind();
     }
 }
@@ -0,0 +1,68 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.content.Context;
+import android.opengl.GLES20;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import cn.nekocode.camerafilter.R;
+import cn.nekocode.camerafilter.cpu.ColorLut;
+import cn.nekocode.camerafilter.cpu.PointFilter;
+
+/**
+ * 3D 색 LUT(cpu/ColorLut)를 적용하는 필터
+ * 색감마다 shader를 따로 두지 않고 모든 LUT 필터가 lut shader 하나를 공유하며, LUT는 LutTextureCache에서 key로 찾는다.
+ * point-wise CPU 필터들을 구워 만들거나(bake) .cube 파일에서 읽을 수 있다.
+ */
+public class LutFilter extends CameraFilter {
+    private ShaderProgram program;
+    private final String key;
+    private final LutTextureCache.Loader loader;
+
+    /*
+        key: LutTextureCache에서 LUT를 구분하는 이름, loader가 만드는 LUT마다 달라야 한다.
+     */
+    public LutFilter(Context context, String key, LutTextureCache.Loader loader) {
+        super(context);
+        this.key = key;
+        this.loader = loader;
+
+        // Build shaders
+        program = buildProgram(context, R.raw.vertext, R.raw.lut);
+    }
+
+    /*
+        point-wise CPU 필터들을 순서대로 적용한 색감을 ColorLut.DEFAULT_SIZE 격자로 구운 필터
+        여러 단계의 색 보정도 한 번의 pass로 그린다. 처음 그릴 때 굽는다.
+     */
+    public static LutFilter bake(Context context, String key, final PointFilter... filters) {
+        return new LutFilter(context, key, new LutTextureCache.Loader() {
+            public ColorLut load() {
+                return ColorLut.bake(ColorLut.DEFAULT_SIZE, filters);
+            }
+        });
+    }
+
+    /*
+        .cube 파일의 색감 필터
+        파일은 여기서 바로 읽으며, 형식이 맞지 않으면 IOException
+     */
+    public static LutFilter fromCube(Context context, String key, Reader reader) throws IOException {
+        final ColorLut lut = ColorLut.readCube(reader);
+        return new LutFilter(context, key, new LutTextureCache.Loader() {
+            public ColorLut load() {
+                return lut;
+            }
+        });
+    }
+
+    @Override
+    public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
+        LutTextureCache.Texture lut = LutTextureCache.getInstance().get(key, loader);
+        // The camera sampling variant has its own uniform locations
+        ShaderProgram active = setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId, lut.texId);
+        GLES20.glUniform1f(active.getUniformLocation("iLutSize"), lut.size);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
+}
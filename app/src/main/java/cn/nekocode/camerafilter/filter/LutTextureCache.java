@@ -0,0 +1,158 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cn.nekocode.camerafilter.cpu.ColorLut;
+import cn.nekocode.camerafilter.util.MyGLUtils;
+
+/**
+ * LutFilter가 쓰는 LUT strip texture의 LRU cache
+ * 모든 LUT 필터가 같은 shader program을 쓰므로 다른 색감으로 바꿀 때는 이 cache에서 texture만 찾으면 되고,
+ * 처음 쓰이는 LUT만 CPU에서 굽거나 읽어 올린다.
+ * 올린 texture의 GPU 메모리가 예산을 넘으면 가장 오래 쓰이지 않은 것부터 glDelete로 해제한다.
+ * GL context가 연결된 render thread에서만 사용해야 한다.
+ */
+public class LutTextureCache {
+    private static final String TAG = "LutTextureCache";
+    public static final long DEFAULT_BUDGET_BYTES = 2L * 1024 * 1024;
+
+    // Only used while the textures are created
+    private static final int ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE6;
+
+    private static LutTextureCache instance;
+
+    /*
+        cache에 없을 때 LUT를 만드는 함수 (render thread에서 호출된다)
+     */
+    public interface Loader {
+        ColorLut load();
+    }
+
+    /**
+     * 올린 LUT texture
+     */
+    static final class Texture {
+        final int texId;
+        final int size;
+
+        Texture(int texId, int size) {
+            this.texId = texId;
+            this.size = size;
+        }
+
+        long getBytes() {
+            return 4L * size * size * size;
+        }
+    }
+
+    // Least recently used first
+    private final LinkedHashMap<String, Texture> textures = new LinkedHashMap<>(16, 0.75f, true);
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private long bytesHeld = 0;
+
+    private int hitCount = 0;
+    private int missCount = 0;
+    private int evictionCount = 0;
+
+    public static LutTextureCache getInstance() {
+        if (instance == null) {
+            instance = new LutTextureCache();
+        }
+        return instance;
+    }
+
+    /*
+        key의 LUT texture, 없으면 loader로 만들어 올린다.
+        방금 올린 texture는 예산을 넘어도 해제하지 않는다.
+     */
+    Texture get(String key, Loader loader) {
+        Texture texture = textures.get(key);
+        if (texture != null) {
+            hitCount++;
+            return texture;
+        }
+        missCount++;
+
+        long start = System.nanoTime();
+        ColorLut lut = loader.load();
+        texture = upload(lut);
+        Log.d(TAG, key + " loaded in " + ((System.nanoTime() - start) / 1000000f) + "ms");
+
+        textures.put(key, texture);
+        bytesHeld += texture.getBytes();
+        trim(texture);
+        return texture;
+    }
+
+    private static Texture upload(ColorLut lut) {
+        int[] strip = lut.getStrip();
+        ByteBuffer pixels = ByteBuffer.allocateDirect(strip.length * 4).order(ByteOrder.nativeOrder());
+        for (int argb : strip) {
+            pixels.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb).put((byte) 0xff);
+        }
+        pixels.position(0);
+
+        GLES20.glActiveTexture(ACTIVE_TEX_UNIT);
+        int texId = MyGLUtils.genTexture();
+        // Blue slices sit side by side, repeating would blend the first and last one
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, lut.getStripWidth(), lut.getStripHeight(), 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+        return new Texture(texId, lut.getSize());
+    }
+
+    private void trim(Texture keep) {
+        Iterator<Map.Entry<String, Texture>> iterator = textures.entrySet().iterator();
+        while (bytesHeld > budgetBytes && iterator.hasNext()) {
+            Texture texture = iterator.next().getValue();
+            if (texture == keep) {
+                continue;
+            }
+            iterator.remove();
+            GLES20.glDeleteTextures(1, new int[]{texture.texId}, 0);
+            bytesHeld -= texture.getBytes();
+            evictionCount++;
+        }
+    }
+
+    /*
+        GPU 메모리 예산 지정, 넘는 texture는 바로 해제한다.
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trim(null);
+    }
+
+    public long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /*
+        GL context가 사라질 때 호출
+        texture는 context와 함께 지워지므로 기록만 버린다.
+     */
+    void release() {
+        textures.clear();
+        bytesHeld = 0;
+    }
+}
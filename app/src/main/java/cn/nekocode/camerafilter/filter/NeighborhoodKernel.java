@@ -0,0 +1,127 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.content.Context;
+import android.opengl.GLES20;
+
+import cn.nekocode.camerafilter.R;
+import cn.nekocode.camerafilter.cpu.SeparableKernel;
+
+/**
+ * SeparableKernel을 GPU에서 그리는 클래스
+ * 밝기 pass(선택적으로 절반 크기), 가로 1D pass, 세로 1D pass를 차례로 자체 buffer에 그리고 결과 texture를 필터의 마지막 pass에 넘긴다.
+ * kxk 이웃 대신 2k개만 읽고, dFdx/dFdy처럼 GPU마다 다른 2x2 묶음 계산에 기대지 않으므로 기기와 상관없이 결과가 같다.
+ * 밝기 평면은 DerivedTextureCache에서 받아 다른 kernel, 필터와 공유하며, 값과 반올림은 cpu/SeparableKernel과 같다.
+ */
+class NeighborhoodKernel {
+    // Only used while the textures are created
+    private static final int PASS_ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE15;
+    private static final int MAX_TAPS = 2 * SeparableKernel.MAX_RADIUS + 1;
+
+    private final CameraFilter filter;
+    private final SeparableKernel kernel;
+    private final boolean halfResolution;
+
+    private final ShaderProgram passProgram;
+    private final int directionLocation;
+    private final int radiusLocation;
+    private final int weightsRLocation;
+    private final int weightsGLocation;
+    private final int inputScaleLocation;
+    private final int inputBiasLocation;
+    private final int outputScaleLocation;
+    private final int outputBiasLocation;
+    // Weights padded to MAX_TAPS, uploaded as uniform arrays
+    private final float[] horizontalWeightsR = new float[MAX_TAPS];
+    private final float[] horizontalWeightsG = new float[MAX_TAPS];
+    private final float[] verticalWeightsR = new float[MAX_TAPS];
+    private final float[] verticalWeightsG = new float[MAX_TAPS];
+
+    private RenderBuffer horizontalBuf;
+    private RenderBuffer resultBuf;
+
+    /*
+        filter: program을 등록하고 shader 입력을 설정할 필터 (생성자에서 호출)
+        halfResolution: 밝기를 가로, 세로 절반 크기로 줄인 뒤 계산한다.
+     */
+    NeighborhoodKernel(CameraFilter filter, Context context, SeparableKernel kernel, boolean halfResolution) {
+        this.filter = filter;
+        this.kernel = kernel;
+        this.halfResolution = halfResolution;
+
+        filter.useDerivedTextures();
+        passProgram = filter.buildProgram(context, R.raw.vertext, R.raw.separable_pass);
+        directionLocation = passProgram.getUniformLocation("iDirection");
+        radiusLocation = passProgram.getUniformLocation("iRadius");
+        weightsRLocation = passProgram.getUniformLocation("iWeightsR");
+        weightsGLocation = passProgram.getUniformLocation("iWeightsG");
+        inputScaleLocation = passProgram.getUniformLocation("iInputScale");
+        inputBiasLocation = passProgram.getUniformLocation("iInputBias");
+        outputScaleLocation = passProgram.getUniformLocation("iOutputScale");
+        outputBiasLocation = passProgram.getUniformLocation("iOutputBias");
+
+        System.arraycopy(kernel.horizontal.weightsR, 0, horizontalWeightsR, 0, kernel.horizontal.weightsR.length);
+        System.arraycopy(kernel.horizontal.weightsG, 0, horizontalWeightsG, 0, kernel.horizontal.weightsG.length);
+        System.arraycopy(kernel.vertical.weightsR, 0, verticalWeightsR, 0, kernel.vertical.weightsR.length);
+        System.arraycopy(kernel.vertical.weightsG, 0, verticalWeightsG, 0, kernel.vertical.weightsG.length);
+    }
+
+    /*
+        inputTexId에 kernel을 적용한 결과 texture (r, g 채널, SeparableKernel.vertical의 scale과 bias로 저장)
+        자체 buffer에 그린 뒤 필터의 출력(bindOutput)과 캔버스 크기 viewport를 되돌려 놓으므로 바로 마지막 pass를 그리면 된다.
+     */
+    int draw(int inputTexId, int canvasWidth, int canvasHeight) {
+        int width = SeparableKernel.luminanceSize(canvasWidth, halfResolution);
+        int height = SeparableKernel.luminanceSize(canvasHeight, halfResolution);
+        if (resultBuf == null || resultBuf.getWidth() != width || resultBuf.getHeight() != height) {
+            RenderBufferPool pool = RenderBufferPool.getInstance();
+            pool.release(horizontalBuf);
+            pool.release(resultBuf);
+            horizontalBuf = pool.acquire(width, height, PASS_ACTIVE_TEX_UNIT);
+            resultBuf = pool.acquire(width, height, PASS_ACTIVE_TEX_UNIT);
+        }
+
+        int lumaTexId = DerivedTextureCache.getInstance().get(halfResolution
+                ? DerivedTextureCache.PRODUCT_LUMINANCE_HALF : DerivedTextureCache.PRODUCT_LUMINANCE,
+                inputTexId, canvasWidth, canvasHeight);
+
+        // The luminance plane has the same value in r and g
+        drawPass(kernel.horizontal, horizontalWeightsR, horizontalWeightsG, 1f, 0f,
+                lumaTexId, 1f, 1f, 0f, 0f, horizontalBuf);
+        drawPass(kernel.vertical, verticalWeightsR, verticalWeightsG, 0f, 1f,
+                horizontalBuf.getTexId(), kernel.horizontal.scaleR, kernel.horizontal.scaleG,
+                kernel.horizontal.biasR, kernel.horizontal.biasG, resultBuf);
+
+        CameraFilter.bindOutput();
+        GLES20.glViewport(0, 0, canvasWidth, canvasHeight);
+        return resultBuf.getTexId();
+    }
+
+    /*
+        다른 필터로 바뀔 때 자체 buffer를 pool에 돌려준다.
+     */
+    void release() {
+        RenderBufferPool pool = RenderBufferPool.getInstance();
+        pool.release(horizontalBuf);
+        pool.release(resultBuf);
+        horizontalBuf = resultBuf = null;
+    }
+
+    private void drawPass(SeparableKernel.Pass pass, float[] weightsR, float[] weightsG,
+                          float directionX, float directionY, int inputTexId,
+                          float inputScaleR, float inputScaleG, float inputBiasR, float inputBiasG,
+                          RenderBuffer output) {
+        filter.setupShaderInputs(passProgram, output.getWidth(), output.getHeight(), inputTexId);
+        GLES20.glUniform2f(directionLocation, directionX, directionY);
+        GLES20.glUniform1i(radiusLocation, kernel.radius);
+        GLES20.glUniform1fv(weightsRLocation, MAX_TAPS, weightsR, 0);
+        GLES20.glUniform1fv(weightsGLocation, MAX_TAPS, weightsG, 0);
+        GLES20.glUniform2f(inputScaleLocation, inputScaleR, inputScaleG);
+        GLES20.glUniform2f(inputBiasLocation, inputBiasR, inputBiasG);
+        GLES20.glUniform2f(outputScaleLocation, pass.scaleR, pass.scaleG);
+        GLES20.glUniform2f(outputBiasLocation, pass.biasR, pass.biasG);
+
+        output.bind();
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        output.unbind();
+    }
+}
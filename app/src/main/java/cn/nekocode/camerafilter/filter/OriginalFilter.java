@@ -18,7 +18,6 @@ package cn.nekocode.camerafilter.filter;
 import android.content.Context;
 import android.opengl.GLES20;
 
-import cn.nekocode.camerafilter.util.MyGLUtils;
 import cn.nekocode.camerafilter.R;
 
 /**
@@ -27,21 +26,23 @@ import cn.nekocode.camerafilter.R;
  * shader 파일에서도 받은 내용을 그대로 내보낸다.
  */
 public class OriginalFilter extends CameraFilter {
-    private int program;
+    private ShaderProgram program;
 
     public OriginalFilter(Context context) {
         super(context);
 
         // Build shaders
-        program = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.original);
+        program = buildProgram(context, R.raw.vertext, R.raw.original);
+    }
+
+    @Override
+    public boolean isIdentity() {
+        return true;
     }
 
     @Override
     public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
-        setupShaderInputs(program,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{cameraTexId},
-                new int[][]{});
+        setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 }
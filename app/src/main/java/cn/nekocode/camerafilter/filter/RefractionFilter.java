@@ -18,32 +18,42 @@ package cn.nekocode.camerafilter.filter;
 import android.content.Context;
 import android.opengl.GLES20;
 
-import cn.nekocode.camerafilter.util.MyGLUtils;
 import cn.nekocode.camerafilter.R;
 
 /**
  * @author nekocode (nekocode.cn@gmail.com)
  */
 public class RefractionFilter extends CameraFilter {
-    private int program;
-    private int texture2Id;
+    private ShaderProgram program;
+    private final TextureManager textures;
+    private TextureManager.Texture texture2;
 
     public RefractionFilter(Context context) {
         super(context);
 
         // Build shaders
-        program = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.refraction);
+        program = buildProgram(context, R.raw.vertext, R.raw.refraction);
 
-        // Load the texture will need for the shader
-        texture2Id = MyGLUtils.loadTexture(context, R.raw.tex11, new int[2]);
+        // Start decoding the texture will need for the shader
+        textures = TextureManager.getInstance(context);
+        textures.prefetch(R.raw.tex11);
+    }
+
+    @Override
+    public void onAttach() {
+        super.onAttach();
+        texture2 = textures.acquire(R.raw.tex11);
+    }
+
+    @Override
+    public void onDetach() {
+        textures.release(texture2);
+        texture2 = null;
     }
 
     @Override
     public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
-        setupShaderInputs(program,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{cameraTexId, texture2Id},
-                new int[][]{});
+        setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId, textures.getTexId(texture2));
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 }
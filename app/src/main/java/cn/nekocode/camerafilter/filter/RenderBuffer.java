@@ -17,10 +17,6 @@ package cn.nekocode.camerafilter.filter;
 
 import android.opengl.GLES20;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.IntBuffer;
-
 import javax.microedition.khronos.opengles.GL10;
 
 import cn.nekocode.camerafilter.util.MyGLUtils;
@@ -36,23 +32,31 @@ public class RenderBuffer {
     private int frameBufferId = 0;
 
     private int width, height;
+    private int format;
 
     /*
         각종 변수 및 Texture Shader 사용 위한 변수들 초기화
         초기화 후에 Buffer를 생성하여 bind 시킨다.
      */
     public RenderBuffer(int width, int height, int activeTexUnit) {
+        this(width, height, activeTexUnit, GLES20.GL_RGBA);
+    }
+
+    /*
+        format: texture 형식 (GL_RGBA 또는 GL_RGB)
+     */
+    public RenderBuffer(int width, int height, int activeTexUnit, int format) {
         this.width = width;
         this.height = height;
         this.activeTexUnit = activeTexUnit;
+        this.format = format;
         int[] genbuf = new int[1];
 
         // Generate and bind 2d texture
         GLES20.glActiveTexture(activeTexUnit);
         texId = MyGLUtils.genTexture();
-        IntBuffer texBuffer =
-                ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, texBuffer);
+        // No initial data, large capture buffers would otherwise need a same sized heap copy
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, GLES20.GL_UNSIGNED_BYTE, null);
 
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
@@ -96,6 +100,33 @@ public class RenderBuffer {
         return height;
     }
 
+    /*
+        texture 형식 getter
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    /*
+        texture 보간 방식 지정 (GL_LINEAR 또는 GL_NEAREST)
+        생성 시에는 GL_LINEAR이며, 바꾼 buffer는 RenderBufferPool에 돌려주기 전에 되돌려야 한다.
+     */
+    public void setFilter(int filter) {
+        GLES20.glActiveTexture(activeTexUnit);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, filter);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, filter);
+    }
+
+    /*
+        texture와 depth render buffer가 차지하는 GPU 메모리 크기 (추정치)
+     */
+    public long getByteSize() {
+        int bytesPerPixel = (format == GLES20.GL_RGB) ? 3 : 4;
+        // Color texture + 16 bit depth render buffer
+        return (long) width * height * (bytesPerPixel + 2);
+    }
+
     /*
         buffer bind 함수
      */
@@ -115,4 +146,15 @@ public class RenderBuffer {
     public void unbind() {
         GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
     }
+
+    /*
+        texture, render buffer, frame buffer 삭제
+        GL context가 연결된 스레드에서 호출해야 하며 이후에는 사용할 수 없다.
+     */
+    public void delete() {
+        GLES20.glDeleteTextures(1, new int[]{texId}, 0);
+        GLES20.glDeleteRenderbuffers(1, new int[]{renderBufferId}, 0);
+        GLES20.glDeleteFramebuffers(1, new int[]{frameBufferId}, 0);
+        texId = renderBufferId = frameBufferId = 0;
+    }
 }
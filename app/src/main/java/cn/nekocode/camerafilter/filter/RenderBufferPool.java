@@ -0,0 +1,141 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * (width, height, format)이 같은 RenderBuffer를 재사용하기 위한 pool
+ * 화면 회전이나 크기 변경으로 버려진 buffer는 release로 돌려받아 보관하고,
+ * 보관 중인 buffer까지 포함한 GPU 메모리가 예산을 넘으면 가장 오래 쓰이지 않은 것부터 glDelete로 해제한다.
+ * GL context가 연결된 render thread에서만 사용해야 한다.
+ */
+public class RenderBufferPool {
+    private static final String TAG = "RenderBufferPool";
+    public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private static RenderBufferPool instance;
+
+    // Idle buffers, least recently released first
+    private final ArrayList<RenderBuffer> idleBuffers = new ArrayList<>();
+    private final Set<RenderBuffer> acquiredBuffers = new HashSet<>();
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private long bytesHeld = 0;
+
+    private int hitCount = 0;
+    private int missCount = 0;
+    private int evictionCount = 0;
+
+    public static RenderBufferPool getInstance() {
+        if (instance == null) {
+            instance = new RenderBufferPool();
+        }
+        return instance;
+    }
+
+    /*
+        GL_RGBA buffer 얻기
+     */
+    public RenderBuffer acquire(int width, int height, int activeTexUnit) {
+        return acquire(width, height, activeTexUnit, GLES20.GL_RGBA);
+    }
+
+    /*
+        같은 크기와 형식의 보관 중인 buffer가 있으면 돌려주고 없으면 새로 만든다.
+        activeTexUnit은 새로 만들 때만 사용된다.
+     */
+    public RenderBuffer acquire(int width, int height, int activeTexUnit, int format) {
+        for (int i = idleBuffers.size() - 1; i >= 0; i--) {
+            RenderBuffer buffer = idleBuffers.get(i);
+            if (buffer.getWidth() == width && buffer.getHeight() == height && buffer.getFormat() == format) {
+                idleBuffers.remove(i);
+                acquiredBuffers.add(buffer);
+                hitCount++;
+                return buffer;
+            }
+        }
+
+        missCount++;
+        RenderBuffer buffer = new RenderBuffer(width, height, activeTexUnit, format);
+        acquiredBuffers.add(buffer);
+        bytesHeld += buffer.getByteSize();
+        trim();
+        return buffer;
+    }
+
+    /*
+        다 쓴 buffer를 돌려준다. null은 무시한다.
+     */
+    public void release(RenderBuffer buffer) {
+        if (buffer == null || !acquiredBuffers.remove(buffer)) {
+            return;
+        }
+        idleBuffers.add(buffer);
+        trim();
+    }
+
+    /*
+        GPU 메모리 예산 설정 (사용 중인 buffer 포함)
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trim();
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /*
+        사용 중인 것과 보관 중인 것을 합친 GPU 메모리 크기
+     */
+    public long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /*
+        pool이 만든 모든 buffer를 해제
+        GL context를 정리하기 전 render thread에서 호출하며, 사용 중이던 buffer도 더 이상 쓸 수 없다.
+     */
+    public void clear() {
+        for (RenderBuffer buffer : idleBuffers) {
+            buffer.delete();
+        }
+        for (RenderBuffer buffer : acquiredBuffers) {
+            buffer.delete();
+        }
+        Log.d(TAG, "Cleared " + (bytesHeld / 1024) + " KB, hits " + hitCount + ", misses " + missCount
+                + ", evictions " + evictionCount);
+
+        idleBuffers.clear();
+        acquiredBuffers.clear();
+        bytesHeld = 0;
+    }
+
+    /*
+        예산을 넘으면 가장 오래 쉬고 있던 buffer부터 해제
+     */
+    private void trim() {
+        while (bytesHeld > budgetBytes && !idleBuffers.isEmpty()) {
+            RenderBuffer buffer = idleBuffers.remove(0);
+            bytesHeld -= buffer.getByteSize();
+            buffer.delete();
+            evictionCount++;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package cn.nekocode.camerafilter.filter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 픽셀 단위(point-wise) 필터 shader 여러 개를 하나의 fragment shader로 합치는 클래스
+ * res/raw의 shadertoy 형식 shader(mainImage 함수 + iChannel0 입력)를 대상으로 하며
+ * 앞 단계의 mainImage를 뒤 단계의 iChannel0 샘플링 자리에 끼워 넣어 한 번의 pass로 그린다.
+ * Android API를 사용하지 않으므로 JVM에서 바로 테스트할 수 있다.
+ */
+public final class ShaderFusion {
+    private static final Pattern MAIN_CALL =
+            Pattern.compile("void\\s+main\\s*\\(\\s*\\)\\s*\\{\\s*mainImage\\s*\\(\\s*gl_FragColor\\s*,\\s*texCoord\\s*\\)\\s*;\\s*\\}");
+    private static final Pattern NEIGHBORHOOD_OPS = Pattern.compile("\\b(dFdx|dFdy|fwidth|texture2DLod|texture2DProj)\\b");
+    private static final Pattern OTHER_CHANNELS = Pattern.compile("\\biChannel[1-9]\\b|\\biChannelResolution\\b");
+    private static final Pattern CHANNEL0_SAMPLE = Pattern.compile("texture2D\\s*\\(\\s*iChannel0\\s*,");
+    private static final Pattern COORD_ALIAS =
+            Pattern.compile("\\bvec2\\s+(\\w+)\\s*=\\s*(fragCoord|fragCoord\\.xy|texCoord)\\s*;");
+    private static final Pattern FUNCTION_DECL = Pattern.compile("^\\s*\\w+\\s+(\\w+)\\s*\\(");
+    private static final Pattern GLOBAL_DECL = Pattern.compile("^\\s*(?:const\\s+)?\\w+\\s+(\\w+)\\s*(?:=|;|\\[)");
+    private static final Pattern PRECISION = Pattern.compile("^\\s*precision\\s+(\\w+)\\s+float\\s*;");
+
+    private ShaderFusion() {
+    }
+
+    /*
+        shader가 현재 픽셀 위치의 iChannel0만 읽는 point-wise 필터인지 판별
+        미분 함수, 다른 채널, 다른 좌표로의 샘플링, 전처리기 지시문이 있으면 false
+     */
+    public static boolean isPointWise(String source) {
+        String code = stripComments(source);
+
+        if (code.indexOf('#') >= 0
+                || NEIGHBORHOOD_OPS.matcher(code).find()
+                || OTHER_CHANNELS.matcher(code).find()
+                || !MAIN_CALL.matcher(code).find()) {
+            return false;
+        }
+
+        Set<String> coords = new LinkedHashSet<>();
+        coords.add("texCoord");
+        coords.add("fragCoord");
+        coords.add("fragCoord.xy");
+        Matcher alias = COORD_ALIAS.matcher(code);
+        while (alias.find()) {
+            coords.add(alias.group(1));
+        }
+
+        int samples = 0;
+        Matcher sample = CHANNEL0_SAMPLE.matcher(code);
+        while (sample.find()) {
+            int close = findClosingParen(code, code.indexOf('(', sample.start()));
+            if (close < 0) {
+                return false;
+            }
+            String argument = code.substring(sample.end(), close).trim();
+            if (!coords.contains(argument)) {
+                return false;
+            }
+            samples++;
+        }
+
+        // iChannel0 must not be used any other way (e.g. passed to a function)
+        int uses = 0;
+        Matcher use = Pattern.compile("\\biChannel0\\b").matcher(code);
+        while (use.find()) {
+            uses++;
+        }
+        return samples > 0 && uses == samples + 1;
+    }
+
+    /*
+        point-wise shader들을 순서대로 적용하는 하나의 fragment shader 소스 생성
+        각 단계의 전역 함수와 상수 이름에는 _s{단계} 접미사가 붙는다.
+        따로 그릴 때처럼 단계 사이의 중간 결과는 0~1로 clamp된다.
+     */
+    public static String fuse(List<String> sources) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to fuse");
+        }
+
+        String precision = "mediump";
+        Set<String> declarations = new LinkedHashSet<>();
+        StringBuilder bodies = new StringBuilder();
+
+        for (int stage = 0; stage < sources.size(); stage++) {
+            String source = sources.get(stage);
+            if (!isPointWise(source)) {
+                throw new IllegalArgumentException("Stage " + stage + " is not a point-wise shader");
+            }
+
+            List<String> items = splitTopLevel(stripComments(source));
+            List<String> body = new ArrayList<>();
+            List<String> globals = new ArrayList<>();
+
+            for (String item : items) {
+                String trimmed = item.trim();
+                Matcher precisionMatcher = PRECISION.matcher(trimmed);
+                if (precisionMatcher.find()) {
+                    if ("highp".equals(precisionMatcher.group(1))) {
+                        precision = "highp";
+                    }
+                } else if (trimmed.startsWith("uniform") || trimmed.startsWith("varying")) {
+                    declarations.add(trimmed.replaceAll("\\s+", " "));
+                } else if (MAIN_CALL.matcher(trimmed).matches()) {
+                    // Replaced by the fused main()
+                } else {
+                    Matcher function = FUNCTION_DECL.matcher(trimmed);
+                    Matcher global = GLOBAL_DECL.matcher(trimmed);
+                    if (trimmed.endsWith("}") && function.find()) {
+                        globals.add(function.group(1));
+                    } else if (trimmed.endsWith(";") && global.find()) {
+                        globals.add(global.group(1));
+                    }
+                    body.add(trimmed);
+                }
+            }
+
+            String suffix = "_s" + stage;
+            bodies.append("// stage ").append(stage).append('\n');
+            if (stage > 0) {
+                bodies.append("vec4 fusionInput").append(suffix).append("(vec2 coord) {\n")
+                        .append("    vec4 color;\n")
+                        .append("    mainImage_s").append(stage - 1).append("(color, coord);\n")
+                        // Separate passes store each stage in an RGBA8 buffer, which clamps
+                        .append("    return clamp(color, 0.0, 1.0);\n")
+                        .append("}\n\n");
+            }
+            for (String item : body) {
+                String renamed = item;
+                for (String name : globals) {
+                    renamed = renamed.replaceAll("\\b" + name + "\\b", name + suffix);
+                }
+                if (stage > 0) {
+                    renamed = replaceChannel0Samples(renamed, "fusionInput" + suffix);
+                }
+                bodies.append(renamed).append("\n\n");
+            }
+        }
+
+        StringBuilder fused = new StringBuilder();
+        fused.append("precision ").append(precision).append(" float;\n\n");
+        for (String declaration : declarations) {
+            fused.append(declaration).append('\n');
+        }
+        fused.append('\n').append(bodies);
+        fused.append("void main() {\n")
+                .append("    mainImage_s").append(sources.size() - 1).append("(gl_FragColor, texCoord);\n")
+                .append("}\n");
+
+        return fused.toString();
+    }
+
+    /*
+        texture2D(iChannel0, X) 를 function(X) 로 바꾼다.
+     */
+    static String replaceChannel0Samples(String code, String function) {
+        StringBuilder out = new StringBuilder();
+        Matcher sample = CHANNEL0_SAMPLE.matcher(code);
+        int last = 0;
+        while (sample.find()) {
+            int close = findClosingParen(code, code.indexOf('(', sample.start()));
+            out.append(code, last, sample.start())
+                    .append(function).append('(')
+                    .append(code.substring(sample.end(), close).trim())
+                    .append(')');
+            last = close + 1;
+        }
+        out.append(code.substring(last));
+        return out.toString();
+    }
+
+    /*
+        최상위 수준의 선언문(; 로 끝남), 함수 정의({ } 블록)를 나누어 반환
+     */
+    static List<String> splitTopLevel(String code) {
+        List<String> items = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    items.add(code.substring(start, i + 1));
+                    start = i + 1;
+                }
+            } else if (c == ';' && depth == 0) {
+                items.add(code.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (code.substring(start).trim().length() > 0) {
+            items.add(code.substring(start));
+        }
+        return items;
+    }
+
+    static String stripComments(String source) {
+        return source.replaceAll("(?s)/\\*.*?\\*/", "").replaceAll("//[^\\n]*", "");
+    }
+
+    private static int findClosingParen(String code, int openIndex) {
+        int depth = 0;
+        for (int i = openIndex; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,168 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+
+/**
+ * link된 shader program과 그 attribute/uniform location을 함께 보관하는 클래스
+ * location은 생성 시 한 번만 조회하며, setter는 값이 바뀌었을 때만 uniform을 다시 올린다.
+ */
+public class ShaderProgram {
+    public static final int MAX_CHANNELS = 8;
+
+    private final int programId;
+
+    private final int vPositionLocation;
+    private final int vTexCoordLocation;
+    private final int iResolutionLocation;
+    private final int iGlobalTimeLocation;
+    private final int iFrameLocation;
+    private final int cameraTransformLocation;
+    private final int[] iChannelLocations = new int[MAX_CHANNELS];
+    private final int[] iChannelResolutionLocations = new int[MAX_CHANNELS];
+    private final HashMap<String, Integer> extraUniformLocations = new HashMap<>();
+
+    private float iResolutionX = Float.NaN, iResolutionY = Float.NaN;
+    private float iGlobalTime = Float.NaN;
+    private int iFrame = -1;
+    private final int[] iChannelUnits = new int[MAX_CHANNELS];
+    private final float[] iChannelResolutions = new float[MAX_CHANNELS * 2];
+
+    /*
+        link가 끝난 program의 location들을 조회하여 캐시
+     */
+    public ShaderProgram(int programId) {
+        this.programId = programId;
+
+        vPositionLocation = getAttribLocation("vPosition");
+        vTexCoordLocation = getAttribLocation("vTexCoord");
+        iResolutionLocation = queryUniformLocation("iResolution");
+        iGlobalTimeLocation = queryUniformLocation("iGlobalTime");
+        iFrameLocation = queryUniformLocation("iFrame");
+        cameraTransformLocation = queryUniformLocation(CameraSampling.TRANSFORM_UNIFORM);
+        for (int i = 0; i < MAX_CHANNELS; i++) {
+            iChannelLocations[i] = queryUniformLocation("iChannel" + i);
+            iChannelResolutionLocations[i] = queryUniformLocation("iChannelResolution[" + i + "]");
+            iChannelUnits[i] = -1;
+        }
+    }
+
+    public int getProgramId() {
+        return programId;
+    }
+
+    public void use() {
+        GLES20.glUseProgram(programId);
+    }
+
+    /*
+        iGlobalTime을 실제로 사용하는(컴파일러가 제거하지 않은) program인지 여부
+     */
+    public boolean usesGlobalTime() {
+        return iGlobalTimeLocation != -1;
+    }
+
+    public boolean usesFrame() {
+        return iFrameLocation != -1;
+    }
+
+    /*
+        정점 좌표와 텍스쳐 좌표 attribute 연결
+     */
+    public void setVertexAttribs(FloatBuffer vertex, FloatBuffer textureCoord) {
+        if (vPositionLocation != -1) {
+            GLES20.glEnableVertexAttribArray(vPositionLocation);
+            GLES20.glVertexAttribPointer(vPositionLocation, 2, GLES20.GL_FLOAT, false, 4 * 2, vertex);
+        }
+        if (vTexCoordLocation != -1) {
+            GLES20.glEnableVertexAttribArray(vTexCoordLocation);
+            GLES20.glVertexAttribPointer(vTexCoordLocation, 2, GLES20.GL_FLOAT, false, 4 * 2, textureCoord);
+        }
+    }
+
+    public void setResolution(float width, float height) {
+        if (iResolutionLocation == -1 || (width == iResolutionX && height == iResolutionY)) {
+            return;
+        }
+        iResolutionX = width;
+        iResolutionY = height;
+        GLES20.glUniform3f(iResolutionLocation, width, height, 1.0f);
+    }
+
+    public void setGlobalTime(float time) {
+        if (iGlobalTimeLocation == -1 || time == iGlobalTime) {
+            return;
+        }
+        iGlobalTime = time;
+        GLES20.glUniform1f(iGlobalTimeLocation, time);
+    }
+
+    public void setFrame(int frame) {
+        if (iFrameLocation == -1 || frame == iFrame) {
+            return;
+        }
+        iFrame = frame;
+        GLES20.glUniform1i(iFrameLocation, frame);
+    }
+
+    /*
+        CameraSampling 변형 program의 화면 좌표 -> 카메라 texture 좌표 변환 행렬 (column-major 4x4)
+        카메라 프레임마다 바뀔 수 있으므로 매번 올린다.
+     */
+    public void setCameraTransform(float[] matrix) {
+        if (cameraTransformLocation == -1) {
+            return;
+        }
+        GLES20.glUniformMatrix4fv(cameraTransformLocation, 1, false, matrix, 0);
+    }
+
+    /*
+        iChannelN sampler가 사용할 texture unit 지정
+     */
+    public void setChannel(int index, int textureUnit) {
+        int location = iChannelLocations[index];
+        if (location == -1 || iChannelUnits[index] == textureUnit) {
+            return;
+        }
+        iChannelUnits[index] = textureUnit;
+        GLES20.glUniform1i(location, textureUnit);
+    }
+
+    /*
+        iChannelResolution[index] 설정
+        배열 원소별 location을 사용하므로 매 프레임 배열을 만들 필요가 없다.
+     */
+    public void setChannelResolution(int index, float width, float height) {
+        int location = iChannelResolutionLocations[index];
+        int offset = index * 2;
+        if (location == -1 || (iChannelResolutions[offset] == width && iChannelResolutions[offset + 1] == height)) {
+            return;
+        }
+        iChannelResolutions[offset] = width;
+        iChannelResolutions[offset + 1] = height;
+        GLES20.glUniform3f(location, width, height, 1.0f);
+    }
+
+    /*
+        그 밖의 uniform location 조회
+        처음 조회한 이후에는 캐시된 값을 사용한다.
+     */
+    public int getUniformLocation(String name) {
+        Integer location = extraUniformLocations.get(name);
+        if (location == null) {
+            location = queryUniformLocation(name);
+            extraUniformLocations.put(name, location);
+        }
+        return location;
+    }
+
+    private int getAttribLocation(String name) {
+        return programId != 0 ? GLES20.glGetAttribLocation(programId, name) : -1;
+    }
+
+    private int queryUniformLocation(String name) {
+        return programId != 0 ? GLES20.glGetUniformLocation(programId, name) : -1;
+    }
+}
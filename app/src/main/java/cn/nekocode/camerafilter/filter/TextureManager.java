@@ -0,0 +1,436 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.ETC1;
+import android.opengl.ETC1Util;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.opengl.GLUtils;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import cn.nekocode.camerafilter.util.MyGLUtils;
+
+/**
+ * 필터가 읽는 이미지 texture(res/raw)를 관리하는 클래스
+ * 같은 리소스는 한 번만 올려 참조 수로 공유하며, 디코딩과 압축은 background 스레드에서 한다.
+ * 불투명한 이미지는 ETC1을 지원하면 mip 단계마다 ETC1로 압축해 올리고, 그 외에는 RGBA8로 올린 뒤 glGenerateMipmap으로 mip을 만든다.
+ * OpenGL ES 2.0에서 2의 거듭제곱 크기가 아닌 이미지는 mip 단계 없이 원래 크기만 올리고 CLAMP_TO_EDGE로 감싼다.
+ * 미리 압축된 PKM 리소스(ETC1, OpenGL ES 3.0이면 ETC2)는 그대로 올린다.
+ * 쓰는 필터가 없는 texture는 GPU 메모리가 예산을 넘으면 가장 오래 쓰이지 않은 것부터 glDelete로 해제한다.
+ * GL context가 연결된 render thread에서만 사용해야 한다.
+ */
+public class TextureManager {
+    private static final String TAG = "TextureManager";
+    public static final long DEFAULT_BUDGET_BYTES = 16L * 1024 * 1024;
+
+    // Only used while the textures are created
+    private static final int ACTIVE_TEX_UNIT = GLES20.GL_TEXTURE3;
+
+    // "PKM 10" (ETC1) or "PKM 20" (ETC2), format, padded size and size as big endian 16 bit values
+    private static final int PKM_HEADER_SIZE = 16;
+    private static final int PKM_ETC1_RGB = 0;
+    private static final int PKM_ETC2_RGB = 1;
+    private static final int PKM_ETC2_RGBA = 3;
+    private static final int PKM_ETC2_RGBA1 = 4;
+
+    private static TextureManager instance;
+
+    /**
+     * 리소스 하나의 texture
+     * getTexId가 처음 불릴 때 디코딩 결과를 기다려 올린다.
+     */
+    static final class Texture {
+        final int resourceId;
+        Future<Decoded> pending;
+        int texId = 0;
+        int width, height;
+        long bytes;
+        int refCount = 0;
+
+        Texture(int resourceId) {
+            this.resourceId = resourceId;
+        }
+    }
+
+    /*
+        background 스레드의 디코딩 결과, 셋 중 하나만 채워진다.
+     */
+    private static class Decoded {
+        // Uploaded as RGBA8, mip levels generated on the GPU
+        Bitmap bitmap;
+        // ETC1 mip chain compressed on the CPU
+        ETC1Util.ETC1Texture[] etc1Levels;
+        // Precompressed PKM payload, a single level
+        ByteBuffer compressed;
+        int compressedFormat;
+        int width, height;
+    }
+
+    private final Context context;
+    private final ExecutorService decoder;
+    // Least recently used first
+    private final LinkedHashMap<Integer, Texture> textures = new LinkedHashMap<>(16, 0.75f, true);
+    private Boolean etc1Supported;
+    private Boolean gles3;
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private long bytesHeld = 0;
+
+    private int hitCount = 0;
+    private int missCount = 0;
+    private int evictionCount = 0;
+
+    public static TextureManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new TextureManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private TextureManager(Context context) {
+        this.context = context;
+        decoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /*
+        리소스 디코딩을 미리 시작 (필터 생성자에서 호출)
+        참조 수는 늘리지 않는다.
+     */
+    void prefetch(int resourceId) {
+        find(resourceId);
+    }
+
+    /*
+        리소스의 texture 참조 (onAttach에서 호출)
+        release할 때까지 예산을 넘어도 해제되지 않는다.
+     */
+    Texture acquire(int resourceId) {
+        Texture texture = find(resourceId);
+        texture.refCount++;
+        return texture;
+    }
+
+    /*
+        acquire한 texture를 더 쓰지 않을 때 호출 (onDetach)
+        GL context가 바뀌기 전에 얻은 texture이면 무시한다.
+     */
+    void release(Texture texture) {
+        if (texture == null || textures.get(texture.resourceId) != texture) {
+            return;
+        }
+        texture.refCount--;
+        trim();
+    }
+
+    /*
+        texture의 GL id, 처음이면 디코딩이 끝나기를 기다렸다가 올린다.
+        디코딩에 실패했으면 0이다.
+     */
+    int getTexId(Texture texture) {
+        if (texture.pending != null) {
+            Future<Decoded> pending = texture.pending;
+            texture.pending = null;
+            try {
+                upload(texture, pending.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Can't decode resource " + texture.resourceId, e.getCause());
+            }
+            bytesHeld += texture.bytes;
+            trim();
+        }
+        return texture.texId;
+    }
+
+    private Texture find(int resourceId) {
+        Texture texture = textures.get(resourceId);
+        if (texture != null) {
+            hitCount++;
+            return texture;
+        }
+        missCount++;
+
+        if (etc1Supported == null) {
+            etc1Supported = ETC1Util.isETC1Supported();
+            gles3 = MyGLUtils.isGLES3();
+        }
+        // Both need the GL context, so they are looked up here rather than on the decoder thread
+        final boolean compress = etc1Supported;
+        final boolean npotMipmaps = gles3;
+        final int id = resourceId;
+        texture = new Texture(resourceId);
+        texture.pending = decoder.submit(new Callable<Decoded>() {
+            @Override
+            public Decoded call() throws IOException {
+                return decode(id, compress, npotMipmaps);
+            }
+        });
+        textures.put(resourceId, texture);
+        return texture;
+    }
+
+    /*
+        리소스를 한 번만 읽어 PKM이면 그대로, 아니면 BitmapFactory로 디코딩 (background 스레드)
+        npotMipmaps가 false(OpenGL ES 2.0)이면 2의 거듭제곱 크기가 아닌 이미지는 mip 단계 없이 압축한다.
+     */
+    private Decoded decode(int resourceId, boolean compress, boolean npotMipmaps) throws IOException {
+        byte[] data = readResource(resourceId);
+        Decoded decoded = new Decoded();
+        if (data.length >= PKM_HEADER_SIZE && data[0] == 'P' && data[1] == 'K' && data[2] == 'M' && data[3] == ' ') {
+            readPkm(data, decoded);
+            return decoded;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;   // No pre-scaling
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (bitmap == null) {
+            throw new IOException("Not an image");
+        }
+        decoded.width = bitmap.getWidth();
+        decoded.height = bitmap.getHeight();
+        if (compress && !bitmap.hasAlpha()) {
+            decoded.etc1Levels = compressEtc1(bitmap, npotMipmaps || isPowerOfTwo(decoded.width, decoded.height));
+            bitmap.recycle();
+        } else {
+            decoded.bitmap = bitmap;
+        }
+        return decoded;
+    }
+
+    private byte[] readResource(int resourceId) throws IOException {
+        InputStream in = context.getResources().openRawResource(resourceId);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(in.available());
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void readPkm(byte[] data, Decoded decoded) throws IOException {
+        int format = readShort(data, 6);
+        switch (format) {
+            case PKM_ETC1_RGB:
+                decoded.compressedFormat = ETC1.ETC1_RGB8_OES;
+                break;
+            case PKM_ETC2_RGB:
+                decoded.compressedFormat = GLES30.GL_COMPRESSED_RGB8_ETC2;
+                break;
+            case PKM_ETC2_RGBA:
+                decoded.compressedFormat = GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC;
+                break;
+            case PKM_ETC2_RGBA1:
+                decoded.compressedFormat = GLES30.GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2;
+                break;
+            default:
+                throw new IOException("Unsupported PKM format " + format);
+        }
+        decoded.width = readShort(data, 12);
+        decoded.height = readShort(data, 14);
+        decoded.compressed = ByteBuffer.allocateDirect(data.length - PKM_HEADER_SIZE).order(ByteOrder.nativeOrder());
+        decoded.compressed.put(data, PKM_HEADER_SIZE, data.length - PKM_HEADER_SIZE).position(0);
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+    }
+
+    /*
+        1x1까지 반씩 줄인 mip 단계들을 각각 ETC1로 압축 (mipmapped가 false이면 원래 크기 하나만)
+        ETC1 texture는 glGenerateMipmap을 쓸 수 없으므로 CPU에서 만든다.
+     */
+    private static ETC1Util.ETC1Texture[] compressEtc1(Bitmap bitmap, boolean mipmapped) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        ETC1Util.ETC1Texture[] levels = new ETC1Util.ETC1Texture[mipmapped ? mipLevelCount(width, height) : 1];
+
+        Bitmap level = bitmap;
+        for (int i = 0; i < levels.length; i++) {
+            if (i > 0) {
+                // Bilinear halving averages each 2x2 block
+                Bitmap next = Bitmap.createScaledBitmap(level,
+                        Math.max(1, width >> i), Math.max(1, height >> i), true);
+                if (level != bitmap) {
+                    level.recycle();
+                }
+                level = next;
+            }
+            levels[i] = compressEtc1Level(level);
+        }
+        if (level != bitmap) {
+            level.recycle();
+        }
+        return levels;
+    }
+
+    private static ETC1Util.ETC1Texture compressEtc1Level(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        ByteBuffer rgb = ByteBuffer.allocateDirect(pixels.length * 3).order(ByteOrder.nativeOrder());
+        for (int argb : pixels) {
+            rgb.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb);
+        }
+        rgb.position(0);
+        return ETC1Util.compressTexture(rgb, width, height, 3, width * 3);
+    }
+
+    private static int mipLevelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    private static boolean isPowerOfTwo(int value) {
+        return (value & (value - 1)) == 0;
+    }
+
+    private static boolean isPowerOfTwo(int width, int height) {
+        return isPowerOfTwo(width) && isPowerOfTwo(height);
+    }
+
+    private static void upload(Texture texture, Decoded decoded) {
+        if (decoded.compressed != null && decoded.compressedFormat != ETC1.ETC1_RGB8_OES && !MyGLUtils.isGLES3()) {
+            Log.e(TAG, "Resource " + texture.resourceId + " is ETC2, which needs OpenGL ES 3.0");
+            return;
+        }
+
+        GLES20.glActiveTexture(ACTIVE_TEX_UNIT);
+        // Starts with linear filtering and repeat wrapping, mip filtering and ES 2 clamping are set below
+        int texId = MyGLUtils.genTexture();
+        boolean mipmapped = false;
+        long bytes = 0;
+        // OpenGL ES 2.0 can only mipmap and repeat power of two textures, anything else samples black
+        boolean canMipmap = MyGLUtils.isGLES3() || isPowerOfTwo(decoded.width, decoded.height);
+
+        if (decoded.etc1Levels != null) {
+            for (int i = 0; i < decoded.etc1Levels.length; i++) {
+                ETC1Util.ETC1Texture level = decoded.etc1Levels[i];
+                ByteBuffer data = level.getData();
+                GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, i, ETC1.ETC1_RGB8_OES,
+                        level.getWidth(), level.getHeight(), 0, data.capacity(), data);
+                bytes += data.capacity();
+            }
+            mipmapped = decoded.etc1Levels.length > 1;
+        } else if (decoded.compressed != null) {
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, 0, decoded.compressedFormat,
+                    decoded.width, decoded.height, 0, decoded.compressed.capacity(), decoded.compressed);
+            bytes = decoded.compressed.capacity();
+        } else {
+            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, decoded.bitmap, 0);
+            decoded.bitmap.recycle();
+            bytes = 4L * decoded.width * decoded.height;
+            if (canMipmap) {
+                GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+                bytes = bytes * 4 / 3;
+                mipmapped = true;
+            }
+        }
+
+        if (mipmapped) {
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+                    GLES20.GL_LINEAR_MIPMAP_LINEAR);
+        }
+        if (!canMipmap) {
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        }
+        texture.texId = texId;
+        texture.width = decoded.width;
+        texture.height = decoded.height;
+        texture.bytes = bytes;
+    }
+
+    /*
+        쓰는 필터가 없는 texture를 예산 안으로 들어올 때까지 오래된 순서로 해제
+     */
+    private void trim() {
+        Iterator<Map.Entry<Integer, Texture>> iterator = textures.entrySet().iterator();
+        while (bytesHeld > budgetBytes && iterator.hasNext()) {
+            Texture texture = iterator.next().getValue();
+            if (texture.refCount > 0 || texture.texId == 0) {
+                continue;
+            }
+            iterator.remove();
+            GLES20.glDeleteTextures(1, new int[]{texture.texId}, 0);
+            bytesHeld -= texture.bytes;
+            evictionCount++;
+        }
+    }
+
+    /*
+        GPU 메모리 예산 지정, 넘으면 쓰는 필터가 없는 texture부터 바로 해제한다.
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trim();
+    }
+
+    public long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /*
+        GL context가 사라질 때 호출
+        texture는 context와 함께 지워지므로 기록만 버리고, 다음 context의 필터들이 다시 올린다.
+     */
+    static void releaseAll() {
+        if (instance != null) {
+            instance.clear();
+        }
+    }
+
+    private void clear() {
+        for (Texture texture : textures.values()) {
+            if (texture.pending != null) {
+                texture.pending.cancel(false);
+            }
+        }
+        textures.clear();
+        bytesHeld = 0;
+        etc1Supported = null;
+    }
+}
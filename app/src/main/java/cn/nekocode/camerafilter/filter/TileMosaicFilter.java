@@ -18,28 +18,27 @@ package cn.nekocode.camerafilter.filter;
 import android.content.Context;
 import android.opengl.GLES20;
 
-import cn.nekocode.camerafilter.util.MyGLUtils;
 import cn.nekocode.camerafilter.R;
 
 /**
  * @author nekocode (nekocode.cn@gmail.com)
  */
 public class TileMosaicFilter extends CameraFilter {
-    private int program;
+    private ShaderProgram program;
 
     public TileMosaicFilter(Context context) {
         super(context);
 
         // Build shaders
-        program = MyGLUtils.buildProgram(context, R.raw.vertext, R.raw.tile_mosaic);
+        program = buildProgram(context, R.raw.vertext, R.raw.tile_mosaic);
+        useDerivedTextures();
     }
 
     @Override
     public void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
-        setupShaderInputs(program,
-                new int[]{canvasWidth, canvasHeight},
-                new int[]{cameraTexId},
-                new int[][]{});
+        int tileTexId = DerivedTextureCache.getInstance().get(DerivedTextureCache.PRODUCT_MIP_3,
+                cameraTexId, canvasWidth, canvasHeight);
+        setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId, tileTexId);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 }
@@ -0,0 +1,31 @@
+package cn.nekocode.camerafilter.record;
+
+import java.nio.ByteBuffer;
+
+/**
+ * encoder가 내보낸 압축된 sample 하나
+ * flag 값은 MediaCodec.BUFFER_FLAG_* 와 같다.
+ */
+public class EncodedSample {
+    public static final int FLAG_KEY_FRAME = 1;
+    public static final int FLAG_CODEC_CONFIG = 2;
+    public static final int FLAG_END_OF_STREAM = 4;
+
+    public ByteBuffer data;
+    public int offset;
+    public int size;
+    public long presentationTimeUs;
+    public int flags;
+
+    public void set(ByteBuffer data, int offset, int size, long presentationTimeUs, int flags) {
+        this.data = data;
+        this.offset = offset;
+        this.size = size;
+        this.presentationTimeUs = presentationTimeUs;
+        this.flags = flags;
+    }
+
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+}
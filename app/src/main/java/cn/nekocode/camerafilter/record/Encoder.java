@@ -0,0 +1,30 @@
+package cn.nekocode.camerafilter.record;
+
+/**
+ * 영상 encoder의 출력 쪽
+ * 입력은 GL이 직접 그리는 surface이므로 여기에는 출력을 꺼내는 부분만 있다.
+ * MediaCodecEncoder가 실제 구현이며, GPU가 없는 환경에서는 가짜 구현으로 RecordingSession을 확인할 수 있다.
+ *
+ * @param <F> 출력 형식 (MediaFormat)
+ */
+public interface Encoder<F> {
+    int INFO_TRY_AGAIN_LATER = -1;
+    int INFO_OUTPUT_FORMAT_CHANGED = -2;
+
+    /*
+        출력 sample 하나를 꺼내 sample에 채우고 buffer index를 반환
+        꺼낼 것이 없으면 INFO_TRY_AGAIN_LATER, 형식이 정해지면 INFO_OUTPUT_FORMAT_CHANGED를 반환한다.
+     */
+    int dequeueOutput(EncodedSample sample, long timeoutUs);
+
+    F getOutputFormat();
+
+    /*
+        dequeueOutput으로 받은 buffer를 돌려준다.
+     */
+    void releaseOutput(int index);
+
+    void signalEndOfInputStream();
+
+    void release();
+}
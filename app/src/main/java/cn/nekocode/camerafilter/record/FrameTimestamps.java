@@ -0,0 +1,52 @@
+package cn.nekocode.camerafilter.record;
+
+/**
+ * 카메라 프레임 시각(SurfaceTexture.getTimestamp)을 녹화 영상의 presentation time으로 바꾸는 클래스
+ * 첫 프레임을 0으로 두고, 같은 카메라 프레임을 다시 그린 경우(시간에 따라 변하는 필터)처럼
+ * 시각이 앞 프레임보다 늦지 않으면 -1을 반환하여 encoder에 보내지 않게 한다.
+ * 일부 기기는 timestamp로 0을 주므로 그 때는 대신 받은 시각을 쓴다.
+ */
+public class FrameTimestamps {
+    private long firstTimestamp = -1;
+    private long lastPresentationTime = -1;
+    private boolean useFallback = false;
+    private int skippedFrames = 0;
+
+    /*
+        cameraTimestampNanos: SurfaceTexture.getTimestamp()
+        fallbackNanos: System.nanoTime() 등 같은 단위의 현재 시각
+        반환값: presentation time(나노초), 보내지 않을 프레임이면 -1
+     */
+    public long next(long cameraTimestampNanos, long fallbackNanos) {
+        if (firstTimestamp < 0) {
+            // Decide once, mixing both clocks would make time jump
+            useFallback = cameraTimestampNanos == 0;
+        }
+        long timestamp = useFallback ? fallbackNanos : cameraTimestampNanos;
+        if (firstTimestamp < 0) {
+            firstTimestamp = timestamp;
+        }
+
+        long presentationTime = timestamp - firstTimestamp;
+        if (presentationTime <= lastPresentationTime) {
+            skippedFrames++;
+            return -1;
+        }
+        lastPresentationTime = presentationTime;
+        return presentationTime;
+    }
+
+    /*
+        시각이 앞 프레임보다 늦지 않아 건너뛴 프레임 수
+     */
+    public int getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    public void reset() {
+        firstTimestamp = -1;
+        lastPresentationTime = -1;
+        useFallback = false;
+        skippedFrames = 0;
+    }
+}
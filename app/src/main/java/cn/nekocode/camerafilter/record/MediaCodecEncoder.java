@@ -0,0 +1,98 @@
+package cn.nekocode.camerafilter.record;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 입력 surface를 가진 H.264 MediaCodec encoder
+ * GL이 입력 surface에 직접 그리므로 픽셀이 CPU 메모리를 거치지 않는다.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class MediaCodecEncoder implements Encoder<MediaFormat> {
+    private static final String MIME_TYPE = "video/avc";
+    private static final int I_FRAME_INTERVAL_SECONDS = 1;
+
+    private final MediaCodec codec;
+    private final Surface inputSurface;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    private ByteBuffer[] outputBuffers;
+
+    public MediaCodecEncoder(int width, int height, int bitRate, int frameRate) throws IOException {
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SECONDS);
+
+        codec = MediaCodec.createEncoderByType(MIME_TYPE);
+        try {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            inputSurface = codec.createInputSurface();
+            codec.start();
+        } catch (RuntimeException e) {
+            codec.release();
+            throw new IOException("Failed to configure the encoder for " + width + "x" + height, e);
+        }
+        outputBuffers = codec.getOutputBuffers();
+    }
+
+    /*
+        GL이 그릴 입력 surface
+     */
+    public Surface getInputSurface() {
+        return inputSurface;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public int dequeueOutput(EncodedSample sample, long timeoutUs) {
+        int index = codec.dequeueOutputBuffer(bufferInfo, timeoutUs);
+        if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+            outputBuffers = codec.getOutputBuffers();
+            return INFO_TRY_AGAIN_LATER;
+        } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+            return INFO_OUTPUT_FORMAT_CHANGED;
+        } else if (index < 0) {
+            return INFO_TRY_AGAIN_LATER;
+        }
+
+        ByteBuffer data = outputBuffers[index];
+        data.position(bufferInfo.offset);
+        data.limit(bufferInfo.offset + bufferInfo.size);
+        sample.set(data, bufferInfo.offset, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
+        return index;
+    }
+
+    @Override
+    public MediaFormat getOutputFormat() {
+        return codec.getOutputFormat();
+    }
+
+    @Override
+    public void releaseOutput(int index) {
+        codec.releaseOutputBuffer(index, false);
+    }
+
+    @Override
+    public void signalEndOfInputStream() {
+        codec.signalEndOfInputStream();
+    }
+
+    @Override
+    public void release() {
+        try {
+            codec.stop();
+        } catch (IllegalStateException e) {
+            // Never started or already stopped
+        }
+        codec.release();
+        inputSurface.release();
+    }
+}
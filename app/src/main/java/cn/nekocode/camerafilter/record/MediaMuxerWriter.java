@@ -0,0 +1,58 @@
+package cn.nekocode.camerafilter.record;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * MediaMuxer로 mp4 파일을 쓰는 Muxer
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class MediaMuxerWriter implements Muxer<MediaFormat> {
+    private final MediaMuxer muxer;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+    /*
+        orientationHint: 재생할 때 돌려 보여줄 각도 (0, 90, 180, 270)
+     */
+    public MediaMuxerWriter(File file, int orientationHint) throws IOException {
+        muxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        muxer.setOrientationHint(orientationHint);
+    }
+
+    @Override
+    public int addTrack(MediaFormat format) {
+        return muxer.addTrack(format);
+    }
+
+    @Override
+    public void start() {
+        muxer.start();
+    }
+
+    @Override
+    public void writeSample(int track, ByteBuffer data, int offset, int size, long presentationTimeUs, int flags) {
+        bufferInfo.set(offset, size, presentationTimeUs, flags);
+        muxer.writeSampleData(track, data, bufferInfo);
+    }
+
+    @Override
+    public void stop() throws IOException {
+        try {
+            muxer.stop();
+        } catch (IllegalStateException e) {
+            throw new IOException("Failed to finish the mp4 file", e);
+        }
+    }
+
+    @Override
+    public void release() {
+        muxer.release();
+    }
+}
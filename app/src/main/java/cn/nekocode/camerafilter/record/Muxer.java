@@ -0,0 +1,21 @@
+package cn.nekocode.camerafilter.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 압축된 sample을 파일(mp4)로 묶는 muxer
+ *
+ * @param <F> track 형식 (MediaFormat)
+ */
+public interface Muxer<F> {
+    int addTrack(F format);
+
+    void start();
+
+    void writeSample(int track, ByteBuffer data, int offset, int size, long presentationTimeUs, int flags);
+
+    void stop() throws IOException;
+
+    void release();
+}
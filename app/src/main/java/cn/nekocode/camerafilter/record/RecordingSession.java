@@ -0,0 +1,128 @@
+package cn.nekocode.camerafilter.record;
+
+import java.io.IOException;
+
+/**
+ * encoder 출력을 muxer로 옮기는 클래스
+ * 출력 형식이 정해진 뒤에 muxer를 시작하고, codec config buffer는 건너뛰며,
+ * muxer가 거부하지 않도록 presentation time이 항상 증가하게 맞춘다.
+ * Android API를 쓰지 않으므로 가짜 Encoder, Muxer로 확인할 수 있다.
+ */
+public class RecordingSession<F> {
+    // Give up on a missing end-of-stream after this many empty polls
+    private static final int MAX_EOS_POLLS = 100;
+    private static final long EOS_POLL_TIMEOUT_US = 10000;
+
+    private final Encoder<F> encoder;
+    private final Muxer<F> muxer;
+    private final EncodedSample sample = new EncodedSample();
+
+    private int track = -1;
+    private boolean muxerStarted = false;
+    private boolean finished = false;
+    private long lastPresentationTimeUs = -1;
+    private int writtenSamples = 0;
+    private int adjustedSamples = 0;
+
+    public RecordingSession(Encoder<F> encoder, Muxer<F> muxer) {
+        this.encoder = encoder;
+        this.muxer = muxer;
+    }
+
+    /*
+        지금 나와 있는 출력을 모두 muxer로 옮긴다. 기다리지 않는다.
+        프레임을 encoder surface에 보낼 때마다 호출한다.
+     */
+    public void drain() {
+        drain(false);
+    }
+
+    /*
+        입력 끝을 알리고 마지막 출력까지 옮긴 뒤 파일을 닫는다.
+        아무 프레임도 쓰지 못했으면 IOException을 던진다.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        try {
+            encoder.signalEndOfInputStream();
+            drain(true);
+            if (!muxerStarted || writtenSamples == 0) {
+                throw new IOException("No frames were recorded");
+            }
+            muxer.stop();
+        } finally {
+            encoder.release();
+            muxer.release();
+        }
+    }
+
+    /*
+        finish 없이 중단 (파일은 쓸 수 없는 상태로 남는다)
+     */
+    public void abort() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        encoder.release();
+        muxer.release();
+    }
+
+    public int getWrittenSamples() {
+        return writtenSamples;
+    }
+
+    /*
+        앞 sample보다 늦지 않아 시간을 고친 sample 수
+     */
+    public int getAdjustedSamples() {
+        return adjustedSamples;
+    }
+
+    private void drain(boolean endOfStream) {
+        int emptyPolls = 0;
+        while (true) {
+            int index = encoder.dequeueOutput(sample, endOfStream ? EOS_POLL_TIMEOUT_US : 0);
+
+            if (index == Encoder.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream || ++emptyPolls >= MAX_EOS_POLLS) {
+                    break;
+                }
+            } else if (index == Encoder.INFO_OUTPUT_FORMAT_CHANGED) {
+                if (muxerStarted) {
+                    throw new IllegalStateException("Output format changed twice");
+                }
+                track = muxer.addTrack(encoder.getOutputFormat());
+                muxer.start();
+                muxerStarted = true;
+            } else if (index >= 0) {
+                boolean endOfStreamReached = sample.hasFlag(EncodedSample.FLAG_END_OF_STREAM);
+                // Codec config already went to the muxer with the output format
+                if (!sample.hasFlag(EncodedSample.FLAG_CODEC_CONFIG) && sample.size > 0 && muxerStarted) {
+                    write();
+                }
+                encoder.releaseOutput(index);
+
+                if (endOfStreamReached) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void write() {
+        long presentationTimeUs = sample.presentationTimeUs;
+        if (presentationTimeUs <= lastPresentationTimeUs) {
+            presentationTimeUs = lastPresentationTimeUs + 1;
+            adjustedSamples++;
+        }
+        lastPresentationTimeUs = presentationTimeUs;
+
+        muxer.writeSample(track, sample.data, sample.offset, sample.size, presentationTimeUs, sample.flags);
+        writtenSamples++;
+    }
+}
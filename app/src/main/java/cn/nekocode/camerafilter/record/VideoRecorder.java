@@ -0,0 +1,180 @@
+package cn.nekocode.camerafilter.record;
+
+import android.annotation.TargetApi;
+import android.media.MediaFormat;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+
+import cn.nekocode.camerafilter.filter.CameraFilter;
+import cn.nekocode.camerafilter.filter.RenderBuffer;
+
+/**
+ * 필터가 적용된 프레임을 mp4로 녹화하는 클래스
+ * render thread의 GL context를 그대로 쓰고 encoder 입력 surface를 그 context의 EGL config로 window surface로 만들어
+ * 이미 그려진 프레임 buffer를 그 surface에 한 번 더 그리므로 픽셀이 CPU 메모리를 거치지 않는다.
+ * 생성을 제외한 모든 메소드는 GL context가 연결된 render thread에서 호출해야 한다.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class VideoRecorder {
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+    private static final int FRAME_RATE = 30;
+    private static final float BITS_PER_PIXEL = 0.25f;
+    private static final int MAX_LONG_SIDE = 1280;
+    private static final int SIZE_ALIGNMENT = 16;
+
+    private final File file;
+    private final int width, height;
+    private final MediaCodecEncoder encoder;
+    private final RecordingSession<MediaFormat> session;
+    private final FrameTimestamps timestamps = new FrameTimestamps();
+
+    private EGLDisplay eglDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface encoderSurface = EGL14.EGL_NO_SURFACE;
+
+    /*
+        width, height: 녹화 크기 (encoderSize로 맞춘 값)
+     */
+    public VideoRecorder(File file, int width, int height) throws IOException {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+
+        int bitRate = (int) (width * height * FRAME_RATE * BITS_PER_PIXEL);
+        encoder = new MediaCodecEncoder(width, height, bitRate, FRAME_RATE);
+        MediaMuxerWriter muxer;
+        try {
+            // Frames are already drawn upright
+            muxer = new MediaMuxerWriter(file, 0);
+        } catch (IOException e) {
+            encoder.release();
+            throw e;
+        }
+        session = new RecordingSession<>(encoder, muxer);
+    }
+
+    /*
+        화면 크기와 비율이 같고 긴 변이 MAX_LONG_SIDE 이하이며 encoder가 받을 수 있게 16의 배수로 맞춘 크기
+     */
+    public static int[] encoderSize(int canvasWidth, int canvasHeight) {
+        int longer = Math.max(canvasWidth, canvasHeight);
+        float scale = longer > MAX_LONG_SIDE ? (float) MAX_LONG_SIDE / longer : 1f;
+        int width = Math.max(SIZE_ALIGNMENT, (int) (canvasWidth * scale) / SIZE_ALIGNMENT * SIZE_ALIGNMENT);
+        int height = Math.max(SIZE_ALIGNMENT, (int) (canvasHeight * scale) / SIZE_ALIGNMENT * SIZE_ALIGNMENT);
+        return new int[]{width, height};
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /*
+        현재 GL context로 encoder 입력 surface를 연다.
+        context는 EGL10으로 만들었어도 EGL14로 같은 것을 얻을 수 있다.
+        surface는 context를 만든 config 그대로 만들어야 eglMakeCurrent가 EGL_BAD_MATCH 없이 되므로
+        그 config가 EGL_RECORDABLE_ANDROID가 아니면 녹화할 수 없다.
+     */
+    public void attach() throws IOException {
+        eglDisplay = EGL14.eglGetCurrentDisplay();
+        eglContext = EGL14.eglGetCurrentContext();
+        if (eglDisplay == EGL14.EGL_NO_DISPLAY || eglContext == EGL14.EGL_NO_CONTEXT) {
+            throw new IOException("No current EGL context");
+        }
+
+        EGLConfig config = findContextConfig();
+        int[] recordable = new int[1];
+        if (!EGL14.eglGetConfigAttrib(eglDisplay, config, EGL_RECORDABLE_ANDROID, recordable, 0)
+                || recordable[0] != 1) {
+            throw new IOException("The renderer's EGL config is not recordable");
+        }
+
+        int[] surfaceAttribs = {EGL14.EGL_NONE};
+        encoderSurface = EGL14.eglCreateWindowSurface(eglDisplay, config, encoder.getInputSurface(),
+                surfaceAttribs, 0);
+        if (encoderSurface == null || encoderSurface == EGL14.EGL_NO_SURFACE) {
+            throw new IOException("eglCreateWindowSurface failed " + GLUtils.getEGLErrorString(EGL14.eglGetError()));
+        }
+    }
+
+    /*
+        현재 context를 만든 EGLConfig
+        renderer는 EGL10 config를 쓰므로 context의 EGL_CONFIG_ID로 같은 config를 EGL14에서 다시 얻는다.
+        EGL_CONFIG_ID를 주면 eglChooseConfig는 다른 속성을 보지 않고 그 config 하나만 돌려준다.
+     */
+    private EGLConfig findContextConfig() throws IOException {
+        int[] configId = new int[1];
+        if (!EGL14.eglQueryContext(eglDisplay, eglContext, EGL14.EGL_CONFIG_ID, configId, 0)) {
+            throw new IOException("eglQueryContext failed " + GLUtils.getEGLErrorString(EGL14.eglGetError()));
+        }
+
+        int[] configSpec = {EGL14.EGL_CONFIG_ID, configId[0], EGL14.EGL_NONE};
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configsCount = new int[1];
+        if (!EGL14.eglChooseConfig(eglDisplay, configSpec, 0, configs, 0, 1, configsCount, 0)
+                || configsCount[0] == 0) {
+            throw new IOException("No EGL config with id " + configId[0]);
+        }
+        return configs[0];
+    }
+
+    /*
+        이미 그려진 프레임을 encoder에 보낸다.
+        cameraTimestampNanos는 SurfaceTexture.getTimestamp()이며,
+        같은 카메라 프레임을 다시 그린 경우에는 보내지 않는다.
+        끝나면 원래 surface로 되돌린다.
+     */
+    public void drawFrame(RenderBuffer frame, long cameraTimestampNanos) {
+        long presentationTime = timestamps.next(cameraTimestampNanos, System.nanoTime());
+        if (presentationTime < 0) {
+            return;
+        }
+
+        EGLSurface drawSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW);
+        EGLSurface readSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_READ);
+
+        EGL14.eglMakeCurrent(eglDisplay, encoderSurface, encoderSurface, eglContext);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, width, height);
+        CameraFilter.blit(frame);
+        EGLExt.eglPresentationTimeANDROID(eglDisplay, encoderSurface, presentationTime);
+        EGL14.eglSwapBuffers(eglDisplay, encoderSurface);
+
+        EGL14.eglMakeCurrent(eglDisplay, drawSurface, readSurface, eglContext);
+
+        session.drain();
+    }
+
+    /*
+        남은 프레임을 모두 쓰고 파일을 닫는다.
+     */
+    public void finish() throws IOException {
+        releaseSurface();
+        session.finish();
+    }
+
+    /*
+        파일을 마무리하지 않고 중단
+     */
+    public void abort() {
+        releaseSurface();
+        session.abort();
+        file.delete();
+    }
+
+    private void releaseSurface() {
+        if (encoderSurface != EGL14.EGL_NO_SURFACE) {
+            EGL14.eglDestroySurface(eglDisplay, encoderSurface);
+            encoderSurface = EGL14.EGL_NO_SURFACE;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cn.nekocode.camerafilter.util;
+
+import android.opengl.GLES30;
+import android.os.Build;
+
+import cn.nekocode.camerafilter.FrameStats;
+
+/**
+ * GL_EXT_disjoint_timer_query로 프레임별 GPU 시간을 재는 클래스
+ * 결과는 몇 프레임 뒤에야 나오므로 여러 개의 query를 돌려가며 쓰고,
+ * poll()에서 끝난 것만 FrameStats의 해당 프레임에 기록한다.
+ * extension이 없거나 OpenGL ES 3.0 미만이면 아무 것도 하지 않는다.
+ */
+public class GpuTimer {
+    private static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+    private static final int QUERY_COUNT = 4;
+
+    private final boolean supported;
+    private final int[] queryIds = new int[QUERY_COUNT];
+    private final long[] frameIndices = new long[QUERY_COUNT];
+    private final boolean[] pending = new boolean[QUERY_COUNT];
+    private final int[] result = new int[1];
+    private int nextQuery = 0;
+    private int activeQuery = -1;
+
+    /*
+        GL context가 연결된 스레드에서 생성해야 한다.
+     */
+    public GpuTimer() {
+        supported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                && MyGLUtils.isGLES3() && MyGLUtils.hasExtension(EXTENSION);
+        if (supported) {
+            GLES30.glGenQueries(QUERY_COUNT, queryIds, 0);
+        }
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /*
+        frameIndex 프레임의 GPU 시간 측정 시작
+        모든 query가 결과를 기다리는 중이면 이번 프레임은 재지 않는다.
+     */
+    public void begin(long frameIndex) {
+        if (!supported || activeQuery >= 0 || pending[nextQuery]) {
+            return;
+        }
+
+        activeQuery = nextQuery;
+        frameIndices[activeQuery] = frameIndex;
+        GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, queryIds[activeQuery]);
+    }
+
+    public void end() {
+        if (activeQuery < 0) {
+            return;
+        }
+
+        GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+        pending[activeQuery] = true;
+        nextQuery = (activeQuery + 1) % QUERY_COUNT;
+        activeQuery = -1;
+    }
+
+    /*
+        결과가 나온 query를 stats에 기록 (매 프레임 render thread에서 호출)
+        그 사이 GPU 클럭 변경 등으로 disjoint가 발생했다면 결과를 믿을 수 없으므로 버린다.
+     */
+    public void poll(FrameStats stats) {
+        if (!supported) {
+            return;
+        }
+
+        GLES30.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        boolean disjoint = result[0] != 0;
+
+        // Oldest query first, later ones can't be ready before it
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            int query = (nextQuery + i) % QUERY_COUNT;
+            if (!pending[query]) {
+                continue;
+            }
+
+            GLES30.glGetQueryObjectuiv(queryIds[query], GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+            if (result[0] == 0) {
+                break;
+            }
+
+            GLES30.glGetQueryObjectuiv(queryIds[query], GLES30.GL_QUERY_RESULT, result, 0);
+            pending[query] = false;
+            if (!disjoint) {
+                // 32-bit nanoseconds, enough for anything shorter than four seconds
+                stats.recordGpuTime(frameIndices[query], result[0] & 0xFFFFFFFFL);
+            }
+        }
+    }
+
+    public void release() {
+        if (supported) {
+            GLES30.glDeleteQueries(QUERY_COUNT, queryIds, 0);
+        }
+    }
+}
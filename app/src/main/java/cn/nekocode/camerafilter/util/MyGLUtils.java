@@ -16,18 +16,10 @@
 package cn.nekocode.camerafilter.util;
 
 import android.content.Context;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-
 import javax.microedition.khronos.opengles.GL10;
 
 /**
@@ -62,40 +54,18 @@ public class MyGLUtils {
         return genBuf[0];
     }
 
-    public static int loadTexture(final Context context, final int resourceId, int[] size) {
-        final int texId = genTexture();
-
-        if (texId != 0) {
-            final BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inScaled = false;   // No pre-scaling
-            options.inJustDecodeBounds = true;
-
-            // Just decode bounds
-            BitmapFactory.decodeResource(context.getResources(), resourceId, options);
-
-            // Set return size
-            size[0] = options.outWidth;
-            size[1] = options.outHeight;
-
-            // Decode
-            options.inJustDecodeBounds = false;
-            Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
-
-            // Load the bitmap into the bound texture.
-            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-
-            // Recycle the bitmap, since its data has been loaded into OpenGL.
-            bitmap.recycle();
-        }
-
-        return texId;
-    }
-
     public static int buildProgram(Context context, int vertexSourceRawId, int fragmentSourceRawId) {
-        return buildProgram(getStringFromRaw(context, vertexSourceRawId),
+        return buildProgram(context, getStringFromRaw(context, vertexSourceRawId),
                 getStringFromRaw(context, fragmentSourceRawId));
     }
 
+    /*
+        디스크에 캐시된 program binary가 있으면 재사용하고, 없으면 컴파일 후 캐시에 저장
+     */
+    public static int buildProgram(Context context, String vertexSource, String fragmentSource) {
+        return ProgramBinaryCache.getInstance(context).buildProgram(vertexSource, fragmentSource);
+    }
+
     public static int buildProgram(String vertexSource, String fragmentSource) {
         final int vertexShader = buildShader(GLES20.GL_VERTEX_SHADER, vertexSource);
         if (vertexShader == 0) {
@@ -119,6 +89,31 @@ public class MyGLUtils {
         return program;
     }
 
+    /*
+        현재 GL context가 OpenGL ES 3.0 이상인지 여부
+     */
+    public static boolean isGLES3() {
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        return version != null && version.startsWith("OpenGL ES ")
+                && version.length() > 10 && version.charAt(10) >= '3';
+    }
+
+    /*
+        현재 GL context가 해당 extension을 지원하는지 여부
+     */
+    public static boolean hasExtension(String name) {
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        if (extensions == null) {
+            return false;
+        }
+        for (String extension : extensions.split(" ")) {
+            if (extension.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static int buildShader(int type, String shaderSource) {
         final int shader = GLES20.glCreateShader(type);
         if (shader == 0) {
@@ -139,24 +134,11 @@ public class MyGLUtils {
         return shader;
     }
 
-    private static String getStringFromRaw(Context context, int id) {
-        String str;
-        try {
-            Resources r = context.getResources();
-            InputStream is = r.openRawResource(id);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            int i = is.read();
-            while (i != -1) {
-                baos.write(i);
-                i = is.read();
-            }
-
-            str = baos.toString();
-            is.close();
-        } catch (IOException e) {
-            str = "";
-        }
-
-        return str;
+    /*
+        raw 리소스의 shader 소스
+        RawShaderSources가 한 번만 읽어 보관하며 #include도 이 때 풀린다.
+     */
+    public static String getStringFromRaw(Context context, int id) {
+        return RawShaderSources.get(context, id);
     }
 }
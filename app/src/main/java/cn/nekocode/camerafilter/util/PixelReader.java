@@ -0,0 +1,166 @@
+package cn.nekocode.camerafilter.util;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * framebuffer의 픽셀을 CPU 메모리로 읽어오는 클래스
+ * OpenGL ES 3.0 이상에서는 두 개의 pixel pack buffer(PBO)에 번갈아 비동기로 읽고
+ * GPU가 끝났는지 fence로 확인한 뒤에 map 하므로 render loop가 멈추지 않는다.
+ * 그 외에는 glReadPixels로 바로 읽는다.
+ * 읽은 픽셀은 RGBA 순서이며 GL 좌표계와 같이 아래 줄부터 저장된다.
+ */
+public class PixelReader {
+    private static final int SLOT_COUNT = 2;
+
+    public interface Callback {
+        /*
+            render thread에서 호출된다.
+            pixels는 callback이 소유하므로 다른 스레드로 넘겨도 된다.
+         */
+        void onPixelsRead(ByteBuffer pixels, int width, int height);
+    }
+
+    private final boolean async;
+    private final int[] bufferIds = new int[SLOT_COUNT];
+    private final int[] bufferSizes = new int[SLOT_COUNT];
+    private final long[] fences = new long[SLOT_COUNT];
+    private final int[] widths = new int[SLOT_COUNT];
+    private final int[] heights = new int[SLOT_COUNT];
+    private final Callback[] callbacks = new Callback[SLOT_COUNT];
+    private int nextSlot = 0;
+
+    /*
+        GL context가 연결된 스레드에서 생성해야 한다.
+     */
+    public PixelReader() {
+        async = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && MyGLUtils.isGLES3();
+        if (async) {
+            GLES20.glGenBuffers(SLOT_COUNT, bufferIds, 0);
+        }
+    }
+
+    /*
+        PBO를 사용한 비동기 읽기 여부
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /*
+        현재 bind된 framebuffer의 (0, 0, width, height) 영역 읽기 요청
+        비동기 모드에서는 이후 poll()에서 GPU 작업이 끝난 것을 확인한 뒤 callback이 호출되고,
+        두 슬롯이 모두 사용 중이면 오래된 요청이 끝날 때까지 기다린다.
+     */
+    public void read(int width, int height, Callback callback) {
+        int size = width * height * 4;
+
+        if (!async) {
+            ByteBuffer pixels = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+            GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+            callback.onPixelsRead(pixels, width, height);
+            return;
+        }
+
+        int slot = nextSlot;
+        if (callbacks[slot] != null) {
+            // Both slots in flight, the oldest one has to finish first
+            finish(slot, true);
+        }
+
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, bufferIds[slot]);
+        if (bufferSizes[slot] != size) {
+            GLES20.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, size, null, GLES30.GL_STREAM_READ);
+            bufferSizes[slot] = size;
+        }
+        GLES30.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+
+        fences[slot] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        widths[slot] = width;
+        heights[slot] = height;
+        callbacks[slot] = callback;
+        nextSlot = (slot + 1) % SLOT_COUNT;
+    }
+
+    /*
+        GPU에서 복사가 끝난 요청의 callback 호출
+        매 프레임 render thread에서 호출한다.
+     */
+    public void poll() {
+        if (!async) {
+            return;
+        }
+
+        // Oldest request first so results come out in order
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            int slot = (nextSlot + i) % SLOT_COUNT;
+            if (callbacks[slot] == null) {
+                continue;
+            }
+            int status = GLES30.glClientWaitSync(fences[slot], 0, 0);
+            if (status != GLES30.GL_ALREADY_SIGNALED && status != GLES30.GL_CONDITION_SATISFIED) {
+                break;
+            }
+            finish(slot, false);
+        }
+    }
+
+    /*
+        아직 callback이 호출되지 않은 요청이 있는지 여부
+     */
+    public boolean hasPending() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            if (callbacks[i] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+        남은 요청을 모두 끝내고 PBO 해제
+     */
+    public void release() {
+        if (!async) {
+            return;
+        }
+
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            int slot = (nextSlot + i) % SLOT_COUNT;
+            if (callbacks[slot] != null) {
+                finish(slot, true);
+            }
+        }
+        GLES20.glDeleteBuffers(SLOT_COUNT, bufferIds, 0);
+    }
+
+    private void finish(int slot, boolean wait) {
+        if (wait) {
+            GLES30.glClientWaitSync(fences[slot], GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, GLES30.GL_TIMEOUT_IGNORED);
+        }
+        GLES30.glDeleteSync(fences[slot]);
+
+        int size = widths[slot] * heights[slot] * 4;
+        ByteBuffer pixels = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, bufferIds[slot]);
+        Buffer mapped = GLES30.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER, 0, size, GLES30.GL_MAP_READ_BIT);
+        if (mapped != null) {
+            pixels.put((ByteBuffer) mapped);
+            GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+        }
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        pixels.rewind();
+
+        Callback callback = callbacks[slot];
+        callbacks[slot] = null;
+        fences[slot] = 0;
+        callback.onPixelsRead(pixels, widths[slot], heights[slot]);
+    }
+}
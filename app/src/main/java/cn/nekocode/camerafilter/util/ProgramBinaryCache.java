@@ -0,0 +1,280 @@
+package cn.nekocode.camerafilter.util;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * link된 shader program binary를 디스크에 저장해 두고 다음 실행 때 재사용하는 캐시
+ * glGetProgramBinary를 지원하는 (OpenGL ES 3.0 이상) 기기에서만 동작하며
+ * 그 외에는 항상 shader 소스를 컴파일한다.
+ * 캐시 키는 shader 소스와 드라이버 버전 문자열의 해시이므로 드라이버가 업데이트되면 자연스럽게 miss가 난다.
+ */
+public class ProgramBinaryCache {
+    private static final String TAG = "ProgramBinaryCache";
+    private static final String DIR_NAME = "program_binaries";
+    private static final int MAGIC = 0x43465042;  // "CFPB"
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ProgramBinaryCache instance;
+
+    private final File cacheDir;
+    private String driverVersion;
+    private Boolean supported;
+
+    private volatile int hitCount = 0;
+    private volatile int missCount = 0;
+    private volatile int invalidCount = 0;
+
+    private ProgramBinaryCache(Context context) {
+        cacheDir = new File(context.getCacheDir(), DIR_NAME);
+    }
+
+    public static synchronized ProgramBinaryCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ProgramBinaryCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /*
+        캐시된 binary로 program을 만들고, 없거나 사용할 수 없으면 소스를 컴파일한다.
+        현재 스레드에 GL context가 연결되어 있어야 한다.
+     */
+    public int buildProgram(String vertexSource, String fragmentSource) {
+        if (!isSupported()) {
+            return MyGLUtils.buildProgram(vertexSource, fragmentSource);
+        }
+
+        File file = new File(cacheDir, getKey(vertexSource, fragmentSource));
+        int program = loadProgram(file);
+        if (program != 0) {
+            hitCount++;
+            return program;
+        }
+
+        missCount++;
+        program = compileProgram(vertexSource, fragmentSource);
+        if (program != 0) {
+            saveProgram(program, file);
+        }
+        return program;
+    }
+
+    /*
+        program binary 기능 지원 여부
+        GL context가 생긴 뒤 처음 호출될 때 한 번만 확인한다.
+     */
+    public boolean isSupported() {
+        if (supported == null) {
+            boolean result = false;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && MyGLUtils.isGLES3()) {
+                int[] formats = new int[1];
+                GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+                result = formats[0] > 0;
+            }
+            driverVersion = GLES20.glGetString(GLES20.GL_VENDOR) + "/"
+                    + GLES20.glGetString(GLES20.GL_RENDERER) + "/"
+                    + GLES20.glGetString(GLES20.GL_VERSION);
+            supported = result;
+        }
+        return supported;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    /*
+        저장된 binary를 읽었지만 드라이버가 거부한 횟수
+     */
+    public int getInvalidCount() {
+        return invalidCount;
+    }
+
+    /*
+        저장된 모든 binary 삭제
+     */
+    public void clear() {
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private int loadProgram(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int format;
+        byte[] binary;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Bad magic");
+            }
+            format = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length != file.length() - 12) {
+                throw new IOException("Bad length");
+            }
+            binary = new byte[length];
+            in.readFully(binary);
+        } catch (IOException e) {
+            Log.w(TAG, "Drop unreadable program binary " + file.getName(), e);
+            file.delete();
+            invalidCount++;
+            return 0;
+        } finally {
+            closeQuietly(in);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(binary.length).order(ByteOrder.nativeOrder());
+        buffer.put(binary).position(0);
+
+        int program = GLES20.glCreateProgram();
+        GLES30.glProgramBinary(program, format, buffer, binary.length);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            // Usually means the driver was updated, recompile from source
+            GLES20.glDeleteProgram(program);
+            file.delete();
+            invalidCount++;
+            return 0;
+        }
+
+        return program;
+    }
+
+    private int compileProgram(String vertexSource, String fragmentSource) {
+        final int vertexShader = MyGLUtils.buildShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        if (vertexShader == 0) {
+            return 0;
+        }
+
+        final int fragmentShader = MyGLUtils.buildShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        if (fragmentShader == 0) {
+            return 0;
+        }
+
+        final int program = GLES20.glCreateProgram();
+        if (program == 0) {
+            return 0;
+        }
+
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        GLES20.glLinkProgram(program);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            Log.e(TAG, GLES20.glGetProgramInfoLog(program));
+        }
+
+        return program;
+    }
+
+    private void saveProgram(int program, File file) {
+        int[] length = new int[1];
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return;
+        }
+
+        // Clear errors left by earlier calls, only glGetProgramBinary's own error counts
+        while (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        int[] format = new int[1];
+        GLES30.glGetProgramBinary(program, length[0], length, 0, format, 0, buffer);
+        if (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+            return;
+        }
+
+        byte[] binary = new byte[length[0]];
+        buffer.position(0);
+        buffer.get(binary);
+
+        cacheDir.mkdirs();
+        File tmpFile = new File(cacheDir, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(format[0]);
+            out.writeInt(binary.length);
+            out.write(binary);
+            out.close();
+            out = null;
+
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to store program binary", e);
+            tmpFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private String getKey(String vertexSource, String fragmentSource) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(vertexSource.getBytes(UTF_8));
+            digest.update((byte) 0);
+            digest.update(fragmentSource.getBytes(UTF_8));
+            digest.update((byte) 0);
+            digest.update(driverVersion.getBytes(UTF_8));
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b & 0xff));
+            }
+            return key.toString();
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package cn.nekocode.camerafilter.util;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * res/raw의 shader 소스를 읽는 ShaderSourceRepository
+ * 앱 전체에서 하나만 사용하므로 공통 vertex shader나 include 파일은 한 번만 읽힌다.
+ */
+public class RawShaderSources {
+    private static final String TAG = "RawShaderSources";
+
+    private static ShaderSourceRepository repository;
+    private static Resources resources;
+
+    public static synchronized ShaderSourceRepository getRepository(Context context) {
+        if (repository == null) {
+            final Context appContext = context.getApplicationContext();
+            resources = appContext.getResources();
+            repository = new ShaderSourceRepository(new ShaderSourceRepository.SourceProvider() {
+                @Override
+                public InputStream open(String name) throws IOException {
+                    int id = resources.getIdentifier(name, "raw", appContext.getPackageName());
+                    if (id == 0) {
+                        throw new IOException("No raw resource named " + name);
+                    }
+                    return resources.openRawResource(id);
+                }
+            });
+        }
+        return repository;
+    }
+
+    /*
+        raw 리소스 id로 소스 얻기, 읽지 못하면 빈 문자열
+     */
+    public static String get(Context context, int id) {
+        ShaderSourceRepository repository = getRepository(context);
+        String name = resources.getResourceEntryName(id);
+        try {
+            return repository.get(name);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read shader " + name, e);
+            return "";
+        }
+    }
+}
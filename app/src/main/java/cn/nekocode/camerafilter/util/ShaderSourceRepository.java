@@ -0,0 +1,142 @@
+package cn.nekocode.camerafilter.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * shader 소스를 읽어 보관하는 저장소
+ * 소스는 버퍼 단위로 한 번에 읽어 UTF-8로 변환하고, 같은 이름의 소스는 한 번만 읽어 같은 String을 돌려준다.
+ * #include "이름" 줄은 해당 소스로 바꾸며, 한 shader 안에서 같은 소스는 한 번만 포함된다.
+ * Android API를 사용하지 않으므로 SourceProvider만 바꾸면 JVM에서 바로 테스트할 수 있다.
+ */
+public class ShaderSourceRepository {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+    private static final Pattern INCLUDE =
+            Pattern.compile("^[ \\t]*#[ \\t]*include[ \\t]+\"([^\"]+)\"[ \\t]*\\r?$", Pattern.MULTILINE);
+
+    /*
+        이름(확장자 제외)으로 소스를 여는 인터페이스
+     */
+    public interface SourceProvider {
+        InputStream open(String name) throws IOException;
+    }
+
+    private final SourceProvider provider;
+    // File contents as read, and with includes expanded
+    private final HashMap<String, String> rawSources = new HashMap<>();
+    private final HashMap<String, String> resolvedSources = new HashMap<>();
+    private int readCount = 0;
+
+    public ShaderSourceRepository(SourceProvider provider) {
+        this.provider = provider;
+    }
+
+    /*
+        #include가 모두 풀린 소스
+        두 번째 호출부터는 캐시된 같은 String 객체를 돌려준다.
+     */
+    public synchronized String get(String name) throws IOException {
+        name = normalize(name);
+        String source = resolvedSources.get(name);
+        if (source == null) {
+            Set<String> stack = new LinkedHashSet<>();
+            source = resolve(name, stack, new HashSet<String>());
+            resolvedSources.put(name, source);
+        }
+        return source;
+    }
+
+    /*
+        실제로 provider에서 읽은 횟수
+     */
+    public synchronized int getReadCount() {
+        return readCount;
+    }
+
+    public synchronized void clear() {
+        rawSources.clear();
+        resolvedSources.clear();
+    }
+
+    private String resolve(String name, Set<String> stack, Set<String> included) throws IOException {
+        if (!stack.add(name)) {
+            throw new IllegalArgumentException("Circular #include: " + stack + " -> " + name);
+        }
+        included.add(name);
+
+        String source = getRaw(name);
+        Matcher include = INCLUDE.matcher(source);
+        StringBuilder builder = null;
+        int last = 0;
+        while (include.find()) {
+            if (builder == null) {
+                builder = new StringBuilder(source.length() * 2);
+            }
+            builder.append(source, last, include.start());
+
+            String includeName = normalize(include.group(1));
+            // A file including one of its includers is an error, not a repeated include
+            if (stack.contains(includeName) || !included.contains(includeName)) {
+                builder.append(resolve(includeName, stack, included));
+            }
+            last = include.end();
+        }
+
+        stack.remove(name);
+        if (builder == null) {
+            return source;
+        }
+        builder.append(source, last, source.length());
+        return builder.toString();
+    }
+
+    private String getRaw(String name) throws IOException {
+        String source = rawSources.get(name);
+        if (source == null) {
+            InputStream in = provider.open(name);
+            try {
+                source = readFully(in);
+            } finally {
+                in.close();
+            }
+            readCount++;
+            rawSources.put(name, source);
+        }
+        return source;
+    }
+
+    /*
+        스트림 전체를 버퍼 단위로 읽어 UTF-8 문자열로 변환
+     */
+    public static String readFully(InputStream in) throws IOException {
+        int available = in.available();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(available > 0 ? available : BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    /*
+        raw 리소스 이름에는 확장자가 없으므로 include 이름의 확장자를 뗀다.
+     */
+    static String normalize(String name) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        if (dot > slash + 1) {
+            name = name.substring(0, dot);
+        }
+        return name.substring(slash + 1);
+    }
+}
@@ -0,0 +1,30 @@
+// Seed field texel used by the JFA passes (see cpu/JumpFlood)
+// Nearest seed pixel coordinate + 1 as 16 bit values, x in rg and y in ba with the high byte first.
+// (0, 0) means no seed is known yet. Field buffers are sampled with GL_NEAREST at texel centres.
+
+float decodeFieldValue(vec2 bytes)
+{
+    vec2 b = floor(bytes * 255.0 + 0.5);
+    return b.x * 256.0 + b.y;
+}
+
+vec2 decodeSeed(vec4 texel)
+{
+    return vec2(decodeFieldValue(texel.rg), decodeFieldValue(texel.ba));
+}
+
+vec2 encodeFieldValue(float value)
+{
+    float high = floor(value / 256.0);
+    return vec2(high, value - high * 256.0) / 255.0;
+}
+
+vec4 encodeSeed(vec2 seed)
+{
+    return vec4(encodeFieldValue(seed.x), encodeFieldValue(seed.y));
+}
+
+vec4 fieldTexel(sampler2D field, vec2 pixel)
+{
+    return texture2D(field, (pixel + 0.5) / iResolution.xy);
+}
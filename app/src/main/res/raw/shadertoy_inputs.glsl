@@ -0,0 +1,4 @@
+uniform vec3                iResolution;
+uniform float               iGlobalTime;
+uniform sampler2D           iChannel0;
+varying vec2                texCoord;
@@ -0,0 +1,3 @@
+void main() {
+	mainImage(gl_FragColor, texCoord * iResolution.xy);
+}
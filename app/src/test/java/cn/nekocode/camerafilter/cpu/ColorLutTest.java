@@ -0,0 +1,104 @@
+package cn.nekocode.camerafilter.cpu;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ColorLut(LutFilter의 기준 구현) 확인
+ * point-wise 필터를 구운 LUT를 거친 색이 필터를 직접 적용한 색과 평균, 최대 오차 기준 안에 있어야 하고,
+ * .cube로 쓰고 다시 읽은 LUT가 같아야 하며, 큰 .cube를 줄여 읽은 LUT도 원래 색을 유지해야 한다.
+ */
+public class ColorLutTest {
+    // Every 3rd level of each channel, 86^3 colours
+    private static final int COLOR_STEP = 3;
+
+    // In 8 bit levels, kinks in the filters (clamping, abs) between lattice points are smoothed a little
+    private static final double MAX_MEAN_ERROR = 1.0;
+    private static final int MAX_ERROR = 4;
+
+    @Test
+    public void bakedLutsMatchFilters() {
+        Object[][] looks = {
+                {"black_white", new PointFilter[]{new BlackWhiteFilter()}},
+                {"black_white_bright", new PointFilter[]{new BlackWhiteFilter(BlackWhiteFilter.BRIGHTNESS_BRIGHT)}},
+                {"blue_orange", new PointFilter[]{new BlueorangeFilter()}},
+                {"contrast", new PointFilter[]{new ContrastFilter()}},
+                {"contrast_blue_orange", new PointFilter[]{new ContrastFilter(0.3f), new BlueorangeFilter()}},
+        };
+        for (Object[] look : looks) {
+            PointFilter[] filters = (PointFilter[]) look[1];
+            double[] error = compare(ColorLut.bake(ColorLut.DEFAULT_SIZE, filters), filters);
+            assertTrue(String.format(Locale.US, "%s: mean %.3f, max %d", look[0], error[0], (int) error[1]),
+                    error[0] <= MAX_MEAN_ERROR && error[1] <= MAX_ERROR);
+        }
+    }
+
+    @Test
+    public void cubeRoundTrip() throws IOException {
+        ColorLut baked = ColorLut.bake(ColorLut.DEFAULT_SIZE, new ContrastFilter(0.3f), new BlueorangeFilter());
+        StringWriter cube = new StringWriter();
+        baked.writeCube(cube, "contrast_blue_orange");
+        ColorLut read = ColorLut.readCube(new StringReader(cube.toString()));
+
+        assertArrayEquals(baked.getStrip(), read.getStrip());
+    }
+
+    @Test
+    public void resampledIdentityCubeStaysIdentity() throws IOException {
+        // A 65 point identity cube is resampled to the default size
+        ColorLut lut = ColorLut.readCube(new StringReader(identityCube(ColorLut.MAX_CUBE_SIZE)));
+        double[] error = compare(lut, new PointFilter[0]);
+
+        assertTrue(String.format(Locale.US, "mean %.3f, max %d", error[0], (int) error[1]), error[1] <= 1);
+    }
+
+    /*
+        {평균 오차, 최대 오차} (8 bit 단위, 채널별)
+     */
+    private static double[] compare(ColorLut lut, PointFilter[] filters) {
+        long sum = 0;
+        long count = 0;
+        int max = 0;
+        for (int r = 0; r < 256; r += COLOR_STEP) {
+            for (int g = 0; g < 256; g += COLOR_STEP) {
+                for (int b = 0; b < 256; b += COLOR_STEP) {
+                    int argb = 0xff000000 | (r << 16) | (g << 8) | b;
+                    int expected = argb;
+                    for (PointFilter filter : filters) {
+                        expected = filter.filterPixel(expected);
+                    }
+                    int actual = lut.filterPixel(argb);
+                    for (int shift = 0; shift <= 16; shift += 8) {
+                        int error = Math.abs(((expected >> shift) & 0xff) - ((actual >> shift) & 0xff));
+                        sum += error;
+                        max = Math.max(max, error);
+                        count++;
+                    }
+                }
+            }
+        }
+        return new double[]{(double) sum / count, max};
+    }
+
+    private static String identityCube(int size) {
+        StringBuilder cube = new StringBuilder();
+        cube.append("# identity\nLUT_3D_SIZE ").append(size).append('\n');
+        cube.append("DOMAIN_MIN 0.0 0.0 0.0\nDOMAIN_MAX 1.0 1.0 1.0\n");
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    cube.append(String.format(Locale.US, "%f %f %f\n",
+                            r / (size - 1f), g / (size - 1f), b / (size - 1f)));
+                }
+            }
+        }
+        return cube.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package cn.nekocode.camerafilter.cpu;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JumpFlood(JFAVoronoiFilter의 기준 구현)를 여러 해상도에서 정확한 최근접 seed와 비교
+ * latency 모드는 한 프레임 만에, throughput 모드는 seed가 멈춘 뒤 두 주기 안에 오차가 기준 이하여야 한다.
+ */
+public class JumpFloodTest {
+    private static final int[][] SIZES = {
+            {17, 13},
+            {64, 64},
+            {160, 90},
+            {270, 480},
+            {540, 960},
+    };
+    // Seed probabilities, the feature detector in voronoi_buf_a typically marks well under 1%
+    private static final float[] DENSITIES = {0.0005f, 0.005f, 0.05f};
+    private static final int MAX_STEPS = 10;
+
+    // Fraction of pixels allowed to end up on a farther seed than the nearest one
+    private static final double MAX_ERROR_RATE = 0.005;
+
+    @Test
+    public void latencyModeConvergesInOneFrame() {
+        Random random = new Random(42);
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            for (float density : DENSITIES) {
+                boolean[] seeds = randomSeeds(width, height, density, random);
+                int[] exact = JumpFlood.bruteForce(seeds, width, height);
+
+                double rate = errorRate(JumpFlood.flood(seeds, width, height, MAX_STEPS), exact, width, height);
+                assertErrorRate(rate, width, height, density);
+            }
+        }
+    }
+
+    @Test
+    public void throughputModeConvergesAfterTwoCycles() {
+        Random random = new Random(42);
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            for (float density : DENSITIES) {
+                boolean[] seeds = randomSeeds(width, height, density, random);
+                int[] exact = JumpFlood.bruteForce(seeds, width, height);
+
+                // Start from an empty field and keep the seeds still for two cycles
+                int frames = 2 * JumpFlood.stepCount(width, height, MAX_STEPS);
+                int[] field = null;
+                for (int frame = 0; frame < frames; frame++) {
+                    field = JumpFlood.refine(seeds, field, width, height, MAX_STEPS, frame);
+                }
+                assertErrorRate(errorRate(field, exact, width, height), width, height, density);
+            }
+        }
+    }
+
+    private static void assertErrorRate(double rate, int width, int height, float density) {
+        assertTrue(String.format(Locale.US, "%dx%d density %s: %.3f%% wrong", width, height, density, rate * 100),
+                rate <= MAX_ERROR_RATE);
+    }
+
+    private static boolean[] randomSeeds(int width, int height, float density, Random random) {
+        boolean[] seeds = new boolean[width * height];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextFloat() < density;
+        }
+        // At least one seed, otherwise every pixel is trivially right
+        seeds[random.nextInt(seeds.length)] = true;
+        return seeds;
+    }
+
+    private static double errorRate(int[] field, int[] exact, int width, int height) {
+        return (double) JumpFlood.countErrors(field, exact, width, height) / (width * height);
+    }
+}
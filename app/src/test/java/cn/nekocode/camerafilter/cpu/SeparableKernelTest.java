@@ -0,0 +1,131 @@
+package cn.nekocode.camerafilter.cpu;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SeparableKernel(NeighborhoodKernel의 기준 구현)을 여러 해상도에서 확인
+ * 두 번의 1D pass로 8 bit씩 저장한 결과가 분리하지 않은 kxk 합과 저장 오차 안에서 같아야 하고,
+ * EdgeDetectionFilter를 작은 tile로 나누어 처리한 결과가 한 번에 처리한 결과와 같아야 한다.
+ */
+public class SeparableKernelTest {
+    private static final int[][] SIZES = {
+            {17, 13},
+            {64, 64},
+            {160, 90},
+            {540, 960},
+    };
+    private static final int TILE_SIZE = 37;
+
+    @Test
+    public void matchesDirectSumWithinStorageError() {
+        Random random = new Random(42);
+        SeparableKernel kernel = SeparableKernel.SOBEL;
+
+        // Rounding of the stored horizontal values times the vertical weights, plus the final rounding
+        float tolerance = maxError(kernel) + 1e-4f;
+
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            int[] image = testImage(width, height, random);
+
+            for (boolean half : new boolean[]{false, true}) {
+                int lumaWidth = SeparableKernel.luminanceSize(width, half);
+                int lumaHeight = SeparableKernel.luminanceSize(height, half);
+                int[] luma = SeparableKernel.luminance(image, width, height, half);
+                int[] result = kernel.apply(luma, lumaWidth, lumaHeight);
+
+                float maxError = 0f;
+                for (int y = 0; y < lumaHeight; y++) {
+                    for (int x = 0; x < lumaWidth; x++) {
+                        float[] direct = kernel.applyDirect(luma, lumaWidth, lumaHeight, x, y);
+                        int texel = result[y * lumaWidth + x];
+                        maxError = Math.max(maxError, Math.abs(kernel.vertical.decodeR(texel) - clampR(kernel, direct[0])));
+                        maxError = Math.max(maxError, Math.abs(kernel.vertical.decodeG(texel) - clampG(kernel, direct[1])));
+                    }
+                }
+                assertTrue(width + "x" + height + " half " + half + ": max error " + maxError + " > " + tolerance,
+                        maxError <= tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void tiledEdgeDetectionMatchesWholeImage() {
+        Random random = new Random(42);
+        EdgeDetectionFilter filter = new EdgeDetectionFilter();
+
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            int[] image = testImage(width, height, random);
+
+            int[] whole = new int[image.length];
+            filter.filterTile(image, whole, width, height, 0, 0, width, height);
+
+            int[] tiled = new int[image.length];
+            for (int y = 0; y < height; y += TILE_SIZE) {
+                for (int x = 0; x < width; x += TILE_SIZE) {
+                    filter.filterTile(image, tiled, width, height, x, y,
+                            Math.min(width, x + TILE_SIZE), Math.min(height, y + TILE_SIZE));
+                }
+            }
+            assertArrayEquals(width + "x" + height, whole, tiled);
+        }
+    }
+
+    private static float maxError(SeparableKernel kernel) {
+        SeparableKernel.Pass h = kernel.horizontal;
+        SeparableKernel.Pass v = kernel.vertical;
+        float step = 0.5f / 255f;
+        float errorR = step / h.scaleR * sumAbs(v.weightsR) + step / v.scaleR;
+        float errorG = step / h.scaleG * sumAbs(v.weightsG) + step / v.scaleG;
+        return Math.max(errorR, errorG);
+    }
+
+    private static float sumAbs(float[] weights) {
+        float sum = 0f;
+        for (float weight : weights) {
+            sum += Math.abs(weight);
+        }
+        return sum;
+    }
+
+    // The stored range is [-bias / scale, (1 - bias) / scale]
+    private static float clampR(SeparableKernel kernel, float value) {
+        SeparableKernel.Pass v = kernel.vertical;
+        return Math.max(-v.biasR / v.scaleR, Math.min((1f - v.biasR) / v.scaleR, value));
+    }
+
+    private static float clampG(SeparableKernel kernel, float value) {
+        SeparableKernel.Pass v = kernel.vertical;
+        return Math.max(-v.biasG / v.scaleG, Math.min((1f - v.biasG) / v.scaleG, value));
+    }
+
+    /*
+        부드러운 그라데이션 위에 선명한 사각형과 잡음을 얹은 이미지
+     */
+    private static int[] testImage(int width, int height, Random random) {
+        int[] image = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int base = (x * 255 / Math.max(1, width - 1) + y * 128 / Math.max(1, height - 1)) / 2;
+                boolean inside = x > width / 4 && x < width * 3 / 4 && y > height / 3 && y < height * 2 / 3;
+                int r = clamp((inside ? 220 : base) + random.nextInt(17) - 8);
+                int g = clamp((inside ? 40 : base) + random.nextInt(17) - 8);
+                int b = clamp(base + random.nextInt(17) - 8);
+                image[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
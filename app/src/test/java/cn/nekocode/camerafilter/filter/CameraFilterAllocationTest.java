@@ -0,0 +1,129 @@
+package cn.nekocode.camerafilter.filter;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.opengl.GLES20;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 매 프레임 draw 경로(CameraFilter.draw, setupShaderInputs, ShaderProgram setter)가 객체를 만들지 않는지 확인
+ * unit test의 android.jar는 GL 호출이 아무 일도 하지 않고 기본값을 반환하므로(returnDefaultValues)
+ * GPU 없이 draw loop를 돌리며 스레드가 할당한 byte 수를 잰다.
+ */
+public class CameraFilterAllocationTest {
+    private static final int WARMUP_FRAMES = 200;
+    private static final int MEASURED_FRAMES = 1000;
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 1280;
+    private static final int CAMERA_TEX_ID = 1;
+
+    private Context context;
+    private com.sun.management.ThreadMXBean threads;
+
+    /**
+     * 두 채널을 읽는 단일 pass 필터
+     * 모든 uniform location이 0(존재함)으로 조회되므로 모든 setter 경로를 지난다.
+     */
+    static class TestFilter extends CameraFilter {
+        private final ShaderProgram program;
+        int drawCount = 0;
+
+        TestFilter(Context context) {
+            super(context);
+            program = registerProgram(new ShaderProgram(1));
+        }
+
+        @Override
+        void onDraw(int cameraTexId, int canvasWidth, int canvasHeight) {
+            ShaderProgram active = setupShaderInputs(program, canvasWidth, canvasHeight, cameraTexId, 2);
+            GLES20.glUniform1f(active.getUniformLocation("iStrength"), 0.5f);
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+            drawCount++;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        context = new ContextWrapper(null) {
+            @Override
+            public Context getApplicationContext() {
+                return this;
+            }
+        };
+        // Built from res/raw on a device, the fake GL doesn't need the sources
+        CameraFilter.PROGRAM = new ShaderProgram(1);
+        CameraFilter.COPY_PROGRAM = new ShaderProgram(1);
+    }
+
+    @After
+    public void tearDown() {
+        CameraFilter.release();
+        RenderBufferPool.getInstance().clear();
+    }
+
+    @Test
+    public void singlePassFrameAllocatesNothing() {
+        TestFilter filter = new TestFilter(context);
+        filter.onAttach();
+
+        assertEquals(0, allocatedBytesPerFrame(filter, false));
+        assertEquals(WARMUP_FRAMES + MEASURED_FRAMES, filter.drawCount);
+    }
+
+    @Test
+    public void scaledFrameAllocatesNothing() {
+        TestFilter filter = new TestFilter(context);
+        filter.setRenderScale(0.5f);
+        filter.onAttach();
+
+        assertEquals(0, allocatedBytesPerFrame(filter, true));
+    }
+
+    @Test
+    public void chainFrameAllocatesNothing() {
+        TestFilter first = new TestFilter(context);
+        TestFilter second = new TestFilter(context);
+        FilterChain chain = new FilterChain(context, first, second);
+        chain.onAttach();
+
+        assertEquals(0, allocatedBytesPerFrame(chain, false));
+        assertTrue(first.drawCount > 0 && first.drawCount == second.drawCount);
+    }
+
+    /*
+        warm-up 후 MEASURED_FRAMES 프레임 동안 프레임당 할당된 byte 수
+        할당량 조회 자체가 만드는 배열은 빼고 센다.
+        객체 하나는 16 byte 이상이므로 프레임마다 할당하면 0이 될 수 없고, JIT 등이 가끔 만드는 몇 백 byte는 무시된다.
+     */
+    private long allocatedBytesPerFrame(CameraFilter filter, boolean facingFront) {
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            filter.draw(CAMERA_TEX_ID, WIDTH, HEIGHT, facingFront);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            filter.draw(CAMERA_TEX_ID, WIDTH, HEIGHT, facingFront);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        return (allocated - overhead) / MEASURED_FRAMES;
+    }
+}
@@ -0,0 +1,165 @@
+package cn.nekocode.camerafilter.filter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import cn.nekocode.camerafilter.util.ResRawSources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ShaderFusion의 point-wise 판별과 합친 소스 확인
+ * 앱과 같이 include가 풀린 res/raw shader를 사용한다.
+ */
+public class ShaderFusionTest {
+    private static final String[] POINT_WISE = {
+            "black_white", "black_white_bright", "black_white_dark", "blue_orange", "contrast",
+    };
+    private static final String[] NOT_POINT_WISE = {
+            // Neighbours, other channels, multi-pass internals, no mainImage
+            "pixelize", "chromatic_aberration", "mapping", "refraction", "voronoi_jfa_step", "original",
+    };
+
+    @Test
+    public void recognisesPointWiseRawShaders() throws IOException {
+        for (String name : POINT_WISE) {
+            assertTrue(name, ShaderFusion.isPointWise(ResRawSources.get(name)));
+        }
+        for (String name : NOT_POINT_WISE) {
+            assertFalse(name, ShaderFusion.isPointWise(ResRawSources.get(name)));
+        }
+    }
+
+    @Test
+    public void acceptsMinimalShader() {
+        assertTrue(ShaderFusion.isPointWise(shader("", "fragColor = texture2D(iChannel0, fragCoord).bgra;")));
+        // Sampling through a local alias of the coordinate
+        assertTrue(ShaderFusion.isPointWise(shader("",
+                "vec2 uv = texCoord; fragColor = texture2D(iChannel0, uv) * 0.5;")));
+    }
+
+    @Test
+    public void rejectsPreprocessorDirectives() {
+        assertFalse(ShaderFusion.isPointWise("#define GAIN 2.0\n"
+                + shader("", "fragColor = texture2D(iChannel0, fragCoord) * GAIN;")));
+        // Unresolved #include lines are directives too
+        assertFalse(ShaderFusion.isPointWise(shader("", "fragColor = texture2D(iChannel0, fragCoord);")
+                .replace("uniform sampler2D iChannel0;", "#include \"shadertoy_inputs.glsl\"")));
+    }
+
+    @Test
+    public void rejectsDerivatives() {
+        assertFalse(ShaderFusion.isPointWise(shader("",
+                "vec4 c = texture2D(iChannel0, fragCoord); fragColor = vec4(dFdx(c.r));")));
+        assertFalse(ShaderFusion.isPointWise(shader("",
+                "vec4 c = texture2D(iChannel0, fragCoord); fragColor = vec4(fwidth(c.g));")));
+    }
+
+    @Test
+    public void rejectsOtherChannels() {
+        assertFalse(ShaderFusion.isPointWise(shader("uniform sampler2D iChannel1;\n",
+                "fragColor = texture2D(iChannel0, fragCoord) * texture2D(iChannel1, fragCoord);")));
+        assertFalse(ShaderFusion.isPointWise(shader("uniform vec3 iChannelResolution[2];\n",
+                "fragColor = texture2D(iChannel0, fragCoord) * iChannelResolution[0].x;")));
+    }
+
+    @Test
+    public void rejectsOtherSamplePositions() {
+        assertFalse(ShaderFusion.isPointWise(shader("",
+                "fragColor = texture2D(iChannel0, fragCoord + vec2(0.01, 0.0));")));
+        // The sampler escapes into a function that may read anywhere
+        assertFalse(ShaderFusion.isPointWise(shader(
+                "vec4 read(sampler2D s, vec2 p) { return texture2D(s, p); }\n",
+                "fragColor = texture2D(iChannel0, fragCoord) + read(iChannel0, fragCoord);")));
+    }
+
+    @Test
+    public void fusesRawShadersInOrder() throws IOException {
+        String fused = ShaderFusion.fuse(Arrays.asList(
+                ResRawSources.get("contrast"),
+                ResRawSources.get("blue_orange"),
+                ResRawSources.get("black_white_bright")));
+
+        // contrast asks for highp, the fused shader keeps it
+        assertTrue(fused.startsWith("precision highp float;"));
+        assertEquals(1, count(fused, "uniform sampler2D iChannel0;"));
+        assertEquals(1, count(fused, "varying vec2 texCoord;"));
+
+        // Every stage's globals get their own suffix
+        assertEquals(0, count(fused, "remap("));
+        assertEquals(2, count(fused, "remap_s0("));
+        for (int stage = 0; stage < 3; stage++) {
+            assertEquals(1, count(fused, "void mainImage_s" + stage + "("));
+        }
+        assertEquals(0, count(fused, "void mainImage("));
+
+        // Only the first stage reads the input, later ones call the previous stage at their own coordinate
+        assertEquals(1, count(fused, "texture2D(iChannel0"));
+        assertEquals(1, count(fused, "fusionInput_s1(uv)"));
+        assertEquals(1, count(fused, "fusionInput_s2(texCoord)"));
+        assertEquals(0, count(fused, "fusionInput_s0"));
+
+        // Intermediate colours are clamped like the RGBA8 buffers between separate passes
+        assertEquals(2, count(fused, "return clamp(color, 0.0, 1.0);"));
+
+        assertEquals(1, count(fused, "void main()"));
+        assertTrue(fused.endsWith("void main() {\n    mainImage_s2(gl_FragColor, texCoord);\n}\n"));
+    }
+
+    @Test
+    public void renamesGlobalsOfRepeatedStage() {
+        String source = shader("const float c_gain = 1.5;\nfloat gain(float v) { return v * c_gain; }\n",
+                "vec4 c = texture2D(iChannel0, fragCoord); fragColor = vec4(gain(c.r));");
+        String fused = ShaderFusion.fuse(Arrays.asList(source, source));
+
+        assertEquals(1, count(fused, "const float c_gain_s0 = 1.5;"));
+        assertEquals(1, count(fused, "const float c_gain_s1 = 1.5;"));
+        assertEquals(1, count(fused, "float gain_s0(float v) { return v * c_gain_s0; }"));
+        assertEquals(1, count(fused, "float gain_s1(float v) { return v * c_gain_s1; }"));
+        assertEquals(1, count(fused, "vec4 c = fusionInput_s1(fragCoord); fragColor = vec4(gain_s1(c.r));"));
+        assertTrue(fused.startsWith("precision mediump float;"));
+    }
+
+    @Test
+    public void singleStageIsKept() throws IOException {
+        String fused = ShaderFusion.fuse(Collections.singletonList(ResRawSources.get("black_white")));
+        assertEquals(1, count(fused, "texture2D( iChannel0, texCoord )"));
+        assertEquals(0, count(fused, "fusionInput"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesNeighbourhoodStage() throws IOException {
+        ShaderFusion.fuse(Arrays.asList(ResRawSources.get("contrast"), ResRawSources.get("pixelize")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesEmptyList() {
+        ShaderFusion.fuse(Collections.<String>emptyList());
+    }
+
+    private static String shader(String globals, String body) {
+        return "precision mediump float;\n"
+                + "uniform sampler2D iChannel0;\n"
+                + "varying vec2 texCoord;\n"
+                + globals
+                + "void mainImage(out vec4 fragColor, in vec2 fragCoord) {\n"
+                + "    " + body + "\n"
+                + "}\n"
+                + "void main() {\n"
+                + "    mainImage(gl_FragColor, texCoord);\n"
+                + "}\n";
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + part.length())) {
+            count++;
+        }
+        return count;
+    }
+}
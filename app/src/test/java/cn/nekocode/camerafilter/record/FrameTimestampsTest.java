@@ -0,0 +1,66 @@
+package cn.nekocode.camerafilter.record;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FrameTimestamps의 presentation time 계산과 중복 프레임 건너뛰기 확인
+ */
+public class FrameTimestampsTest {
+    private static final long FRAME = 33333333L;
+    private static final long CAMERA_START = 5000000000000L;
+    private static final long CLOCK_START = 7000000000L;
+
+    @Test
+    public void startsAtZeroAndFollowsCameraClock() {
+        FrameTimestamps timestamps = new FrameTimestamps();
+
+        assertEquals(0, timestamps.next(CAMERA_START, CLOCK_START));
+        // The fallback clock is ignored while the camera gives timestamps
+        assertEquals(FRAME, timestamps.next(CAMERA_START + FRAME, CLOCK_START + 5 * FRAME));
+        assertEquals(3 * FRAME, timestamps.next(CAMERA_START + 3 * FRAME, CLOCK_START + 6 * FRAME));
+        assertEquals(0, timestamps.getSkippedFrames());
+    }
+
+    @Test
+    public void skipsRedrawnCameraFrames() {
+        FrameTimestamps timestamps = new FrameTimestamps();
+
+        assertEquals(0, timestamps.next(CAMERA_START, CLOCK_START));
+        // An animated filter redraws the same camera frame
+        assertEquals(-1, timestamps.next(CAMERA_START, CLOCK_START + FRAME));
+        assertEquals(FRAME, timestamps.next(CAMERA_START + FRAME, CLOCK_START + 2 * FRAME));
+        assertEquals(-1, timestamps.next(CAMERA_START + FRAME, CLOCK_START + 3 * FRAME));
+        // Going back in time is skipped too
+        assertEquals(-1, timestamps.next(CAMERA_START, CLOCK_START + 4 * FRAME));
+        assertEquals(2 * FRAME, timestamps.next(CAMERA_START + 2 * FRAME, CLOCK_START + 5 * FRAME));
+        assertEquals(3, timestamps.getSkippedFrames());
+    }
+
+    @Test
+    public void fallsBackWhenCameraGivesNoTimestamps() {
+        FrameTimestamps timestamps = new FrameTimestamps();
+
+        assertEquals(0, timestamps.next(0, CLOCK_START));
+        assertEquals(FRAME, timestamps.next(0, CLOCK_START + FRAME));
+        // Decided on the first frame, a later camera timestamp doesn't switch clocks
+        assertEquals(2 * FRAME, timestamps.next(CAMERA_START, CLOCK_START + 2 * FRAME));
+        assertEquals(-1, timestamps.next(0, CLOCK_START + 2 * FRAME));
+        assertEquals(1, timestamps.getSkippedFrames());
+    }
+
+    @Test
+    public void resetStartsOver() {
+        FrameTimestamps timestamps = new FrameTimestamps();
+        timestamps.next(0, CLOCK_START);
+        timestamps.next(0, CLOCK_START);
+        assertEquals(1, timestamps.getSkippedFrames());
+
+        timestamps.reset();
+        assertEquals(0, timestamps.getSkippedFrames());
+        // The next recording may use the camera clock again
+        assertEquals(0, timestamps.next(CAMERA_START, CLOCK_START + FRAME));
+        assertEquals(FRAME, timestamps.next(CAMERA_START + FRAME, CLOCK_START + FRAME));
+    }
+}
@@ -0,0 +1,323 @@
+package cn.nekocode.camerafilter.record;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 가짜 Encoder, Muxer로 RecordingSession이 encoder 출력을 muxer로 옮기는 순서 확인
+ */
+public class RecordingSessionTest {
+    private static final String FORMAT = "video/avc 720x1280";
+
+    /**
+     * 정해 둔 순서대로 출력을 내보내는 encoder
+     * signalEndOfInputStream 뒤에는 afterEndOfInput의 출력이 이어진다.
+     */
+    private static class FakeEncoder implements Encoder<String> {
+        // Either an Integer INFO_* value or an EncodedSample
+        final ArrayDeque<Object> outputs = new ArrayDeque<>();
+        final List<Object> afterEndOfInput = new ArrayList<>();
+        final List<Integer> releasedIndices = new ArrayList<>();
+        int dequeueCount = 0;
+        int nextIndex = 0;
+        boolean endOfInputSignaled = false;
+        boolean released = false;
+
+        FakeEncoder info(int info) {
+            outputs.add(info);
+            return this;
+        }
+
+        FakeEncoder sample(long presentationTimeUs, int flags) {
+            outputs.add(newSample(presentationTimeUs, flags));
+            return this;
+        }
+
+        FakeEncoder sampleAfterEndOfInput(long presentationTimeUs, int flags) {
+            afterEndOfInput.add(newSample(presentationTimeUs, flags));
+            return this;
+        }
+
+        private static EncodedSample newSample(long presentationTimeUs, int flags) {
+            EncodedSample sample = new EncodedSample();
+            sample.set(ByteBuffer.allocate(16), 0, 16, presentationTimeUs, flags);
+            return sample;
+        }
+
+        @Override
+        public int dequeueOutput(EncodedSample sample, long timeoutUs) {
+            dequeueCount++;
+            Object output = outputs.poll();
+            if (output == null) {
+                return INFO_TRY_AGAIN_LATER;
+            }
+            if (output instanceof Integer) {
+                return (Integer) output;
+            }
+            EncodedSample next = (EncodedSample) output;
+            sample.set(next.data, next.offset, next.size, next.presentationTimeUs, next.flags);
+            return nextIndex++;
+        }
+
+        @Override
+        public String getOutputFormat() {
+            return FORMAT;
+        }
+
+        @Override
+        public void releaseOutput(int index) {
+            releasedIndices.add(index);
+        }
+
+        @Override
+        public void signalEndOfInputStream() {
+            endOfInputSignaled = true;
+            outputs.addAll(afterEndOfInput);
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    /**
+     * 받은 호출을 기록하는 muxer
+     * MediaMuxer처럼 시작 전의 writeSample은 IllegalStateException이다.
+     */
+    private static class FakeMuxer implements Muxer<String> {
+        String trackFormat;
+        boolean started = false;
+        boolean stopped = false;
+        boolean released = false;
+        final List<Long> presentationTimes = new ArrayList<>();
+        final List<Integer> flags = new ArrayList<>();
+
+        @Override
+        public int addTrack(String format) {
+            trackFormat = format;
+            return 7;
+        }
+
+        @Override
+        public void start() {
+            started = true;
+        }
+
+        @Override
+        public void writeSample(int track, ByteBuffer data, int offset, int size, long presentationTimeUs, int flags) {
+            if (!started || stopped) {
+                throw new IllegalStateException("Muxer is not started");
+            }
+            assertEquals(7, track);
+            presentationTimes.add(presentationTimeUs);
+            this.flags.add(flags);
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    @Test
+    public void startsMuxerOnlyAfterOutputFormatChanged() {
+        FakeEncoder encoder = new FakeEncoder();
+        FakeMuxer muxer = new FakeMuxer();
+        RecordingSession<String> session = new RecordingSession<>(encoder, muxer);
+
+        session.drain();
+        assertFalse(muxer.started);
+        assertNull(muxer.trackFormat);
+
+        encoder.info(Encoder.INFO_OUTPUT_FORMAT_CHANGED).sample(0, EncodedSample.FLAG_KEY_FRAME);
+        session.drain();
+        assertTrue(muxer.started);
+        assertEquals(FORMAT, muxer.trackFormat);
+        assertEquals(Arrays.asList(0L), muxer.presentationTimes);
+        assertEquals(1, session.getWrittenSamples());
+    }
+
+    @Test
+    public void dropsSamplesBeforeOutputFormat() {
+        FakeEncoder encoder = new FakeEncoder()
+                .sample(0, 0)
+                .info(Encoder.INFO_OUTPUT_FORMAT_CHANGED)
+                .sample(33000, 0);
+        FakeMuxer muxer = new FakeMuxer();
+        RecordingSession<String> session = new RecordingSession<>(encoder, muxer);
+
+        session.drain();
+        assertEquals(Arrays.asList(33000L), muxer.presentationTimes);
+        // Every dequeued buffer goes back to the encoder, written or not
+        assertEquals(Arrays.asList(0, 1), encoder.releasedIndices);
+    }
+
+    @Test
+    public void skipsCodecConfigSamples() {
+        FakeEncoder encoder = new FakeEncoder()
+                .info(Encoder.INFO_OUTPUT_FORMAT_CHANGED)
+                .sample(0, EncodedSample.FLAG_CODEC_CONFIG)
+                .sample(0, EncodedSample.FLAG_KEY_FRAME)
+                .sample(33000, 0);
+        FakeMuxer muxer = new FakeMuxer();
+        RecordingSession<String> session = new RecordingSession<>(encoder, muxer);
+
+        session.drain();
+        assertEquals(Arrays.asList(0L, 33000L), muxer.presentationTimes);
+        assertEquals(Arrays.asList(EncodedSample.FLAG_KEY_FRAME, 0), muxer.flags);
+        assertEquals(Arrays.asList(0, 1, 2), encoder.releasedIndices);
+        assertEquals(2, session.getWrittenSamples());
+    }
+
+    @Test
+    public void bumpsNonIncreasingPresentationTimes() {
+        FakeEncoder encoder = new FakeEncoder()
+                .info(Encoder.INFO_OUTPUT_FORMAT_CHANGED)
+                .sample(1000, 0)
+                .sample(1000, 0)
+                .sample(900, 0)
+                .sample(2000, 0);
+        FakeMuxer muxer = new FakeMuxer();
+        RecordingSession<String> session = new RecordingSession<>(encoder, muxer);
+
+        session.drain();
+        assertEquals(Arrays.asList(1000L, 1001L, 1002L, 2000L), muxer.presentationTimes);
+        assertEquals(2, session.getAdjustedSamples());
+        assertEquals(4, session.getWrittenSamples());
+    }
+
+    @Test
+    public void drainDoesNotWait() {
+        FakeEncoder encoder = new FakeEncoder().info(Encoder.INFO_OUTPUT_FORMAT_CHANGED).sample(0, 0);
+        RecordingSession<String> session = new RecordingSession<>(encoder, new FakeMuxer());
+
+        session.drain();
+        // Format, sample, then the first empty poll ends it
+        assertEquals(3, encoder.dequeueCount);
+    }
+
+    @Test
+    public void finishStopsAtEndOfStream() throws IOException {
+        FakeEncoder encoder = new FakeEncoder()
+                .info(Encoder.INFO_OUTPUT_FORMAT_CHANGED)
+                .sample(0, EncodedSample.FLAG_KEY_FRAME)
+                .sampleAfterEndOfInput(33000, 0)
+                .sampleAfterEndOfInput(66000, EncodedSample.FLAG_END_OF_STREAM)
+                .sampleAfterEndOfInput(99000, 0);
+        FakeMuxer muxer = new FakeMuxer();
+        RecordingSession<String> session = new RecordingSession<>(encoder, muxer);
+
+        session.drain();
+        session.finish();
+
+        assertTrue(encoder.endOfInputSignaled);
+        // The end-of-stream buffer carries the last frame, nothing after it is read
+        assertEquals(Arrays.asList(0L, 33000L, 66000L), muxer.presentationTimes);
+        assertEquals(1, encoder.outputs.size());
+        assertTrue(muxer.stopped);
+        assertTrue(muxer.released);
+        assertTrue(encoder.released);
+
+        // Finishing twice does nothing
+        int dequeued = encoder.dequeueCount;
+        session.finish();
+        assertEquals(dequeued, encoder.dequeueCount);
+    }
+
+    @Test
+    public void finishGivesUpOnMissingEndOfStream() throws IOException {
+        FakeEncoder encoder = new FakeEncoder()
+                .info(Encoder.INFO_OUTPUT_FORMAT_CHANGED)
+                .sample(0, 0);
+        FakeMuxer muxer = new FakeMuxer();
+        RecordingSession<String> session = new RecordingSession<>(encoder, muxer);
+
+        session.finish();
+        assertEquals(Arrays.asList(0L), muxer.presentationTimes);
+        assertTrue(muxer.stopped);
+        assertTrue(encoder.released);
+    }
+
+    @Test
+    public void finishWithoutSamplesThrows() {
+        FakeEncoder encoder = new FakeEncoder()
+                .info(Encoder.INFO_OUTPUT_FORMAT_CHANGED)
+                .sample(0, EncodedSample.FLAG_CODEC_CONFIG)
+                .sampleAfterEndOfInput(0, EncodedSample.FLAG_END_OF_STREAM);
+        // An empty end-of-stream buffer is not a frame
+        ((EncodedSample) encoder.afterEndOfInput.get(0)).size = 0;
+        FakeMuxer muxer = new FakeMuxer();
+        RecordingSession<String> session = new RecordingSession<>(encoder, muxer);
+
+        try {
+            session.finish();
+            fail("Finished without frames");
+        } catch (IOException e) {
+            assertEquals(0, session.getWrittenSamples());
+        }
+        assertTrue(muxer.started);
+        assertFalse(muxer.stopped);
+        assertTrue(muxer.released);
+        assertTrue(encoder.released);
+    }
+
+    @Test
+    public void finishWithoutOutputFormatThrows() {
+        FakeEncoder encoder = new FakeEncoder().sampleAfterEndOfInput(0, EncodedSample.FLAG_END_OF_STREAM);
+        FakeMuxer muxer = new FakeMuxer();
+        RecordingSession<String> session = new RecordingSession<>(encoder, muxer);
+
+        try {
+            session.finish();
+            fail("Finished without an output format");
+        } catch (IOException expected) {
+        }
+        assertFalse(muxer.started);
+        assertTrue(muxer.released);
+        assertTrue(encoder.released);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsSecondOutputFormat() {
+        FakeEncoder encoder = new FakeEncoder()
+                .info(Encoder.INFO_OUTPUT_FORMAT_CHANGED)
+                .info(Encoder.INFO_OUTPUT_FORMAT_CHANGED);
+        new RecordingSession<>(encoder, new FakeMuxer()).drain();
+    }
+
+    @Test
+    public void abortReleasesWithoutStopping() throws IOException {
+        FakeEncoder encoder = new FakeEncoder().info(Encoder.INFO_OUTPUT_FORMAT_CHANGED).sample(0, 0);
+        FakeMuxer muxer = new FakeMuxer();
+        RecordingSession<String> session = new RecordingSession<>(encoder, muxer);
+
+        session.drain();
+        session.abort();
+        assertFalse(encoder.endOfInputSignaled);
+        assertFalse(muxer.stopped);
+        assertTrue(muxer.released);
+        assertTrue(encoder.released);
+
+        // Already released, finish must not touch them again
+        session.finish();
+        assertFalse(muxer.stopped);
+    }
+}
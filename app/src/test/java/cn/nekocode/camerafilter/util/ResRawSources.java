@@ -0,0 +1,42 @@
+package cn.nekocode.camerafilter.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 모듈의 src/main/res/raw 파일을 이름(확장자 제외)으로 여는 SourceProvider
+ * 앱과 같은 shader 소스를 JVM test에서 읽을 때 쓴다. (gradle은 모듈 디렉토리에서 test를 실행한다)
+ */
+public class ResRawSources implements ShaderSourceRepository.SourceProvider {
+    public static final File RAW_DIR = new File("src/main/res/raw");
+
+    private int openCount = 0;
+
+    /*
+        include까지 풀린 res/raw 소스 하나
+     */
+    public static String get(String name) throws IOException {
+        return new ShaderSourceRepository(new ResRawSources()).get(name);
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        File[] files = RAW_DIR.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (ShaderSourceRepository.normalize(file.getName()).equals(name)) {
+                    openCount++;
+                    return new FileInputStream(file);
+                }
+            }
+        }
+        throw new FileNotFoundException("No raw resource named " + name);
+    }
+
+    public int getOpenCount() {
+        return openCount;
+    }
+}
@@ -0,0 +1,229 @@
+package cn.nekocode.camerafilter.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ShaderSourceRepository의 #include 처리, UTF-8 변환, 캐시 확인
+ */
+public class ShaderSourceRepositoryTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 메모리의 소스를 여는 provider, 연 횟수를 센다.
+     */
+    private static class MapSources implements ShaderSourceRepository.SourceProvider {
+        final Map<String, String> sources = new HashMap<>();
+        int openCount = 0;
+
+        MapSources put(String name, String source) {
+            sources.put(name, source);
+            return this;
+        }
+
+        @Override
+        public InputStream open(String name) throws IOException {
+            String source = sources.get(name);
+            if (source == null) {
+                throw new FileNotFoundException(name);
+            }
+            openCount++;
+            return new ByteArrayInputStream(source.getBytes(UTF_8));
+        }
+    }
+
+    /**
+     * 한 번에 1 byte씩만 돌려주는 stream (available은 0)
+     */
+    private static class TrickleInputStream extends InputStream {
+        private final byte[] data;
+        private int position = 0;
+
+        TrickleInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= data.length) {
+                return -1;
+            }
+            buffer[offset] = data[position++];
+            return 1;
+        }
+    }
+
+    @Test
+    public void expandsIncludes() throws IOException {
+        MapSources sources = new MapSources()
+                .put("main", "precision mediump float;\n#include \"inputs.glsl\"\nvoid main() {}\n")
+                .put("inputs", "uniform vec3 iResolution;\n");
+        ShaderSourceRepository repository = new ShaderSourceRepository(sources);
+
+        assertEquals("precision mediump float;\nuniform vec3 iResolution;\n\nvoid main() {}\n",
+                repository.get("main"));
+    }
+
+    @Test
+    public void expandsNestedIncludesOnce() throws IOException {
+        MapSources sources = new MapSources()
+                .put("main", "#include \"a.glsl\"\n#include \"b.glsl\"\nmain\n")
+                .put("a", "#include \"common.glsl\"\na\n")
+                .put("b", "#include \"common.glsl\"\nb\n")
+                .put("common", "common\n");
+        ShaderSourceRepository repository = new ShaderSourceRepository(sources);
+
+        // common is pulled in by a, b leaves its second copy out, the include lines' newlines stay
+        assertEquals("common\n\na\n\n\nb\n\nmain\n", repository.get("main"));
+        assertEquals(4, repository.getReadCount());
+        assertEquals(4, sources.openCount);
+    }
+
+    @Test
+    public void acceptsIndentedCrlfAndPathIncludes() throws IOException {
+        MapSources sources = new MapSources()
+                .put("main", "  #  include \"shaders/inputs.glsl\"\r\nvoid main() {}\r\n")
+                .put("inputs", "inputs");
+        ShaderSourceRepository repository = new ShaderSourceRepository(sources);
+
+        assertEquals("inputs\r\nvoid main() {}\r\n", repository.get("main.fsh"));
+    }
+
+    @Test
+    public void leavesOtherDirectivesAlone() throws IOException {
+        String source = "#define GAIN 2.0\n// #include \"commented.glsl\" is not at the line start\nvoid main() {}\n";
+        ShaderSourceRepository repository = new ShaderSourceRepository(new MapSources().put("main", source));
+
+        String resolved = repository.get("main");
+        assertEquals(source, resolved);
+        assertSame(resolved, repository.get("main"));
+    }
+
+    @Test
+    public void rejectsCircularIncludes() throws IOException {
+        MapSources sources = new MapSources()
+                .put("a", "#include \"b.glsl\"\n")
+                .put("b", "#include \"c.glsl\"\n")
+                .put("c", "#include \"a.glsl\"\n");
+        ShaderSourceRepository repository = new ShaderSourceRepository(sources);
+
+        try {
+            repository.get("a");
+            fail("Circular include accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("[a, b, c] -> a"));
+        }
+    }
+
+    @Test
+    public void reportsMissingIncludes() throws IOException {
+        ShaderSourceRepository repository = new ShaderSourceRepository(
+                new MapSources().put("main", "#include \"missing.glsl\"\n"));
+
+        try {
+            repository.get("main");
+            fail("Missing include accepted");
+        } catch (FileNotFoundException e) {
+            assertEquals("missing", e.getMessage());
+        }
+        // Nothing half resolved is cached
+        try {
+            repository.get("main");
+            fail("Missing include accepted on the second try");
+        } catch (FileNotFoundException e) {
+            assertEquals("missing", e.getMessage());
+        }
+    }
+
+    @Test
+    public void decodesUtf8SplitAcrossReads() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        // Multi-byte characters land on both sides of the 8 KB buffer boundary
+        while (builder.length() < 12000) {
+            builder.append("// 밝기 ✓ 𝛼\n");
+        }
+        String text = builder.toString();
+        byte[] bytes = text.getBytes(UTF_8);
+        assertTrue(bytes.length > 16 * 1024);
+
+        assertEquals(text, ShaderSourceRepository.readFully(new TrickleInputStream(bytes)));
+        assertEquals(text, ShaderSourceRepository.readFully(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void resolvesEveryRawShader() throws IOException {
+        ShaderSourceRepository repository = new ShaderSourceRepository(new ResRawSources());
+        File[] files = ResRawSources.RAW_DIR.listFiles();
+        assertTrue(files != null && files.length > 0);
+
+        int shaders = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(".fsh") && !name.endsWith(".vsh")) {
+                continue;
+            }
+            shaders++;
+            String source = repository.get(name);
+            assertFalse(name, source.contains("#include"));
+            assertEquals(name, 1, count(source, "void main()"));
+            // The shared header is pulled in once even where a shader adds its own inputs
+            assertTrue(name, count(source, "varying vec2                texCoord;") <= 1);
+            assertTrue(name, count(source, "uniform sampler2D           iChannel0;") <= 1);
+        }
+        assertTrue(shaders > 30);
+    }
+
+    @Test
+    public void sharesRawSourcesAcrossShaders() throws IOException {
+        ResRawSources sources = new ResRawSources();
+        ShaderSourceRepository repository = new ShaderSourceRepository(sources);
+
+        String vertex = repository.get("vertext");
+        assertSame(vertex, repository.get("vertext"));
+        assertSame(vertex, repository.get("vertext.vsh"));
+        assertTrue(vertex.contains("attribute vec2  vPosition;"));
+
+        String blackWhite = repository.get("black_white");
+        String contrast = repository.get("contrast");
+        assertFalse(blackWhite.contains("#include"));
+        assertFalse(contrast.contains("#include"));
+        assertTrue(contrast.contains("uniform sampler2D           iChannel0;"));
+        assertTrue(contrast.contains("mainImage(gl_FragColor, texCoord);"));
+
+        // vertext, black_white, contrast and the two shared includes
+        assertEquals(5, sources.getOpenCount());
+        assertEquals(5, repository.getReadCount());
+
+        repository.clear();
+        String reread = repository.get("vertext");
+        assertEquals(vertex, reread);
+        assertEquals(6, repository.getReadCount());
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + part.length())) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,95 @@
+package cn.nekocode.camerafilter.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 배치 처리 명령줄 도구 (Linux 서버 등 GPU와 화면이 없는 환경용)
+ * java cn.nekocode.camerafilter.batch.BatchMain --filter filter_contrast --in photos --out photos_out
+ *     [--threads 4] [--tile 0x1024]
+ * 타일 크기의 기본값은 JPEG을 빠르게 읽도록 가로 전체, 세로 1024줄이다.
+ */
+public class BatchMain {
+    private static final int DEFAULT_TILE_WIDTH = 0;
+    private static final int DEFAULT_TILE_HEIGHT = 1024;
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseOptions(args);
+        String filterId = options.get("filter");
+        String in = options.get("in");
+        String out = options.get("out");
+        if (filterId == null || in == null || out == null || !BatchFilters.contains(filterId)) {
+            printUsage();
+            System.exit(2);
+            return;
+        }
+
+        BatchProcessor processor = new BatchProcessor(filterId, new File(in), new File(out), new ImageIOCodec());
+        try {
+            if (options.containsKey("threads")) {
+                processor.setFileParallelism(Integer.parseInt(options.get("threads")));
+            }
+            int[] tile = options.containsKey("tile")
+                    ? parseSize(options.get("tile")) : new int[]{DEFAULT_TILE_WIDTH, DEFAULT_TILE_HEIGHT};
+            processor.setTileSize(tile[0], tile[1]);
+        } catch (NumberFormatException e) {
+            printUsage();
+            System.exit(2);
+            return;
+        }
+
+        processor.setListener(new BatchProcessor.Listener() {
+            @Override
+            public void onFileProcessed(File input, File output, BatchStats stats) {
+                System.out.println(String.format(Locale.US, "[%d] %s (%.2f files/s, %.1f MP/s)",
+                        stats.getProcessedFiles(), input.getName(),
+                        stats.getFilesPerSecond(), stats.getMegapixelsPerSecond()));
+            }
+
+            @Override
+            public void onFileFailed(File input, Exception e, BatchStats stats) {
+                System.err.println("Failed " + input.getName() + ": " + e);
+            }
+        });
+
+        BatchStats stats;
+        try {
+            stats = processor.run();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println(stats.toDisplayString());
+        System.exit(stats.getFailedFiles() > 0 ? 1 : 0);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("--")) {
+                options.put(args[i].substring(2), args[i + 1]);
+            }
+        }
+        return options;
+    }
+
+    /*
+        "WxH" 형식
+     */
+    private static int[] parseSize(String size) {
+        String[] parts = size.toLowerCase(Locale.US).split("x");
+        if (parts.length != 2) {
+            throw new NumberFormatException(size);
+        }
+        return new int[]{Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())};
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: --filter <id> --in <input dir> --out <output dir> [--threads n] [--tile WxH]");
+        System.err.println("Filters: " + BatchFilters.getFilterIds());
+    }
+}
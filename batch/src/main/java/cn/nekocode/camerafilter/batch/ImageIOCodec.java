@@ -0,0 +1,144 @@
+package cn.nekocode.camerafilter.batch;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * javax.imageio로 이미지를 읽고 쓰는 ImageCodec (JVM, headless)
+ * ImageReadParam의 source region으로 필요한 영역만 메모리에 올린다.
+ * JPEG은 앞에서부터 순서대로만 압축을 풀 수 있어 영역마다 처음부터 다시 읽으므로,
+ * 가로 전체 띠(타일 너비 0)로 나누는 편이 빠르다.
+ */
+public class ImageIOCodec implements ImageCodec {
+    private static final float JPEG_QUALITY = 0.95f;
+
+    @Override
+    public boolean canRead(File file) {
+        return formatOf(file.getName()) != null;
+    }
+
+    @Override
+    public Reader openReader(File file) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException("Can't open " + file);
+        }
+        Iterator<javax.imageio.ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("No reader for " + file);
+        }
+        javax.imageio.ImageReader reader = readers.next();
+        reader.setInput(input, false, true);
+        return new RegionReader(reader, input);
+    }
+
+    @Override
+    public Writer createWriter(String fileName, int width, int height) throws IOException {
+        String format = formatOf(fileName);
+        if (format == null) {
+            throw new IOException("Unsupported format " + fileName);
+        }
+        // JPEG has no alpha channel
+        int type = format.equals("jpeg") ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        return new BufferedImageWriter(new BufferedImage(width, height, type), format);
+    }
+
+    private static String formatOf(String fileName) {
+        String name = fileName.toLowerCase(Locale.US);
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            return "jpeg";
+        } else if (name.endsWith(".png")) {
+            return "png";
+        }
+        return null;
+    }
+
+    private static class RegionReader implements Reader {
+        private final javax.imageio.ImageReader reader;
+        private final ImageInputStream input;
+        private final ImageReadParam param;
+        private final int width, height;
+
+        RegionReader(javax.imageio.ImageReader reader, ImageInputStream input) throws IOException {
+            this.reader = reader;
+            this.input = input;
+            param = reader.getDefaultReadParam();
+            width = reader.getWidth(0);
+            height = reader.getHeight(0);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public void read(int x, int y, int width, int height, int[] pixels) throws IOException {
+            param.setSourceRegion(new Rectangle(x, y, width, height));
+            BufferedImage region = reader.read(0, param);
+            region.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.dispose();
+            input.close();
+        }
+    }
+
+    private static class BufferedImageWriter implements Writer {
+        private final BufferedImage image;
+        private final String format;
+
+        BufferedImageWriter(BufferedImage image, String format) {
+            this.image = image;
+            this.format = format;
+        }
+
+        @Override
+        public void write(int x, int y, int width, int height, int[] pixels, int offset, int stride) {
+            image.setRGB(x, y, width, height, pixels, offset, stride);
+        }
+
+        @Override
+        public void finish(OutputStream out) throws IOException {
+            javax.imageio.ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+            ImageOutputStream output = ImageIO.createImageOutputStream(out);
+            try {
+                writer.setOutput(output);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (param.canWriteCompressed() && format.equals("jpeg")) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(JPEG_QUALITY);
+                }
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+                output.close();
+            }
+        }
+
+        @Override
+        public void abort() {
+            // Nothing to release, the image is garbage collected
+        }
+    }
+}
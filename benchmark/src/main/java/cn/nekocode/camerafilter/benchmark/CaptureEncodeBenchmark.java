@@ -0,0 +1,104 @@
+package cn.nekocode.camerafilter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 캡쳐 저장 단계(압축 + 파일 출력) 시간
+ * Android의 Bitmap.compress 대신 ImageIO로 같은 흐름을 재현한다.
+ * viaByteArray는 예전 CameraPresenter처럼 메모리에 압축한 뒤 파일에 쓰고,
+ * streamToFile은 CaptureQueue처럼 파일로 바로 압축한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaptureEncodeBenchmark {
+    @Param({"png", "jpeg"})
+    public String format;
+
+    @Param({"720p", "1080p"})
+    public String resolution;
+
+    private BufferedImage image;
+    private File outFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int[] size = Resolutions.parse(resolution);
+        // Captures are portrait
+        int width = size[1];
+        int height = size[0];
+
+        // Smooth gradient plus noise, closer to a photo than pure noise
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(16)) & 0xff;
+                int g = (y * 255 / height + random.nextInt(16)) & 0xff;
+                int b = ((x + y) * 255 / (width + height) + random.nextInt(16)) & 0xff;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+
+        outFile = File.createTempFile("capture", "." + format);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        outFile.delete();
+    }
+
+    @Benchmark
+    public long viaByteArray() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ImageIO.write(image, format, stream);
+        byte[] imgData = stream.toByteArray();
+
+        FileOutputStream out = new FileOutputStream(outFile);
+        try {
+            out.write(imgData);
+            out.flush();
+        } finally {
+            out.close();
+        }
+        return outFile.length();
+    }
+
+    @Benchmark
+    public long streamToFile() throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile), 64 * 1024);
+        try {
+            ImageIO.write(image, format, out);
+        } finally {
+            out.close();
+        }
+        return outFile.length();
+    }
+}
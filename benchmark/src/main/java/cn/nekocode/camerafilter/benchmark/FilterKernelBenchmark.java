@@ -0,0 +1,100 @@
+package cn.nekocode.camerafilter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cn.nekocode.camerafilter.cpu.BlackWhiteFilter;
+import cn.nekocode.camerafilter.cpu.BlueorangeFilter;
+import cn.nekocode.camerafilter.cpu.ContrastFilter;
+import cn.nekocode.camerafilter.cpu.CpuFilter;
+import cn.nekocode.camerafilter.cpu.CpuFilterEngine;
+import cn.nekocode.camerafilter.cpu.EdgeDetectionFilter;
+import cn.nekocode.camerafilter.cpu.PixelizeFilter;
+import cn.nekocode.camerafilter.cpu.TileMosaicFilter;
+
+/**
+ * CPU 필터 한 장 처리 시간
+ * threads가 0이면 모든 코어를 사용하며, 1과 비교하여 병렬 처리 효율을 확인한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterKernelBenchmark {
+    @Param({"BlackWhite", "Contrast", "Blueorange", "EdgeDetection", "Pixelize", "TileMosaic"})
+    public String filter;
+
+    @Param({"720p", "1080p", "4K"})
+    public String resolution;
+
+    @Param({"1", "0"})
+    public int threads;
+
+    private CpuFilterEngine engine;
+    private CpuFilter cpuFilter;
+    private int[] src, dst;
+    private int width, height;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] size = Resolutions.parse(resolution);
+        width = size[0];
+        height = size[1];
+
+        src = new int[width * height];
+        dst = new int[width * height];
+        Random random = new Random(42);
+        for (int i = 0; i < src.length; i++) {
+            src[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+
+        engine = threads > 0 ? new CpuFilterEngine(threads) : new CpuFilterEngine();
+        cpuFilter = createFilter(filter);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public int[] apply() {
+        engine.apply(cpuFilter, src, dst, width, height);
+        return dst;
+    }
+
+    private static CpuFilter createFilter(String name) {
+        switch (name) {
+            case "BlackWhite":
+                return new BlackWhiteFilter();
+            case "Contrast":
+                return new ContrastFilter();
+            case "Blueorange":
+                return new BlueorangeFilter();
+            case "EdgeDetection":
+                return new EdgeDetectionFilter();
+            case "Pixelize":
+                return new PixelizeFilter();
+            case "TileMosaic":
+                return new TileMosaicFilter();
+            default:
+                throw new IllegalArgumentException("Unknown filter " + name);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package cn.nekocode.camerafilter.benchmark;
+
+/**
+ * 벤치마크 해상도 이름을 (width, height)로 변환
+ */
+final class Resolutions {
+    private Resolutions() {
+    }
+
+    static int[] parse(String name) {
+        switch (name) {
+            case "720p":
+                return new int[]{1280, 720};
+            case "1080p":
+                return new int[]{1920, 1080};
+            case "4K":
+                return new int[]{3840, 2160};
+            default:
+                throw new IllegalArgumentException("Unknown resolution " + name);
+        }
+    }
+}
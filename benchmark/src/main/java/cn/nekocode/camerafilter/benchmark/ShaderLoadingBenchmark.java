@@ -0,0 +1,160 @@
+package cn.nekocode.camerafilter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.nekocode.camerafilter.util.ShaderSourceRepository;
+
+/**
+ * res/raw의 shader 소스(.fsh, .vsh, .glsl) 전체를 읽는 시간
+ * byteAtATime은 예전 MyGLUtils.getStringFromRaw와 같이 한 바이트씩 읽고,
+ * buffered는 버퍼 단위로 읽어 UTF-8로 변환한다.
+ * repository는 앱과 같이 ShaderSourceRepository로 모든 shader의 include를 풀며 각 파일을 한 번씩 읽고,
+ * repositoryCached는 이미 읽은 저장소에서 다시 가져오는 시간(필터를 다시 만들 때)이다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShaderLoadingBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Relative to the benchmark module, where the jmh task runs
+    @Param({"../app/src/main/res/raw"})
+    public String rawDir;
+
+    private static final String[] SHADER_EXTENSIONS = {".fsh", ".vsh", ".glsl"};
+
+    private File[] files;
+    // Files by resource name (without extension), as the app opens them
+    private final Map<String, File> filesByName = new HashMap<>();
+    // Shaders the filters load, the .glsl files are only included
+    private final List<String> shaderNames = new ArrayList<>();
+    private ShaderSourceRepository cachedRepository;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        // res/raw also holds the filters' textures, those are not shader sources
+        files = new File(rawDir).listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                for (String extension : SHADER_EXTENSIONS) {
+                    if (file.getName().endsWith(extension)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        if (files == null || files.length == 0) {
+            throw new IllegalStateException("No shader sources in " + new File(rawDir).getAbsolutePath());
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            String fileName = file.getName();
+            String name = fileName.substring(0, fileName.lastIndexOf('.'));
+            filesByName.put(name, file);
+            if (!fileName.endsWith(".glsl")) {
+                shaderNames.add(name);
+            }
+        }
+
+        cachedRepository = new ShaderSourceRepository(fileProvider);
+        for (String name : shaderNames) {
+            cachedRepository.get(name);
+        }
+    }
+
+    private final ShaderSourceRepository.SourceProvider fileProvider = new ShaderSourceRepository.SourceProvider() {
+        @Override
+        public InputStream open(String name) throws IOException {
+            File file = filesByName.get(name);
+            if (file == null) {
+                throw new FileNotFoundException(name);
+            }
+            return new FileInputStream(file);
+        }
+    };
+
+    @Benchmark
+    public void byteAtATime(Blackhole blackhole) throws IOException {
+        for (File file : files) {
+            InputStream is = new FileInputStream(file);
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                int i = is.read();
+                while (i != -1) {
+                    baos.write(i);
+                    i = is.read();
+                }
+                blackhole.consume(baos.toString());
+            } finally {
+                is.close();
+            }
+        }
+    }
+
+    @Benchmark
+    public void buffered(Blackhole blackhole) throws IOException {
+        char[] buffer = new char[8192];
+        for (File file : files) {
+            Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+            try {
+                StringBuilder builder = new StringBuilder((int) file.length());
+                int count;
+                while ((count = reader.read(buffer)) != -1) {
+                    builder.append(buffer, 0, count);
+                }
+                blackhole.consume(builder.toString());
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Benchmark
+    public void repository(Blackhole blackhole) throws IOException {
+        ShaderSourceRepository repository = new ShaderSourceRepository(fileProvider);
+        for (String name : shaderNames) {
+            blackhole.consume(repository.get(name));
+        }
+    }
+
+    @Benchmark
+    public void repositoryCached(Blackhole blackhole) throws IOException {
+        for (String name : shaderNames) {
+            blackhole.consume(cachedRepository.get(name));
+        }
+    }
+}